@@ -0,0 +1,216 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.access;
+
+import io.mapsmessaging.security.SubjectHelper;
+import io.mapsmessaging.security.access.mapping.GroupIdMap;
+import io.mapsmessaging.security.access.mapping.UserIdMap;
+import io.mapsmessaging.security.identity.GroupEntry;
+import io.mapsmessaging.security.identity.IdentityEntry;
+import io.mapsmessaging.security.passwords.PasswordHandler;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.security.auth.Subject;
+import lombok.Getter;
+
+/**
+ * Non-blocking facade over an {@link IdentityAccessManager}.
+ *
+ * <p>Every call is dispatched to an executor and returns a {@link CompletableFuture}, so callers on
+ * I/O threads are never held up by file rewrites, directory searches, remote identity providers or
+ * password hashing. Mutations share a single queue and run one at a time in submission order, since
+ * they update shared group entries and rewrite the same files. Reads run in parallel with each other
+ * but never while a mutation is in progress. The first login of a user that is not yet in the id maps
+ * adds it to them, so that one is queued as a mutation too.
+ *
+ * <p>If no executor is supplied, a virtual thread per task executor is used when the JVM provides
+ * one, otherwise a daemon thread pool sized to the number of processors. An executor created here is
+ * shut down by {@link #close()}; a supplied executor is left to its owner. Once closed, new mutations
+ * fail with a {@link RejectedExecutionException}, as do queued ones the executor no longer accepts.
+ */
+public class AsyncIdentityAccessManager implements AutoCloseable {
+
+  @Getter private final IdentityAccessManager identityAccessManager;
+  private final Executor executor;
+  private final boolean ownsExecutor;
+  private final ReadWriteLock lock;
+  private CompletableFuture<?> mutationTail;
+  private boolean closed;
+
+  public AsyncIdentityAccessManager(IdentityAccessManager identityAccessManager) {
+    this(identityAccessManager, createDefaultExecutor(), true);
+  }
+
+  public AsyncIdentityAccessManager(IdentityAccessManager identityAccessManager, Executor executor) {
+    this(identityAccessManager, executor, false);
+  }
+
+  private AsyncIdentityAccessManager(IdentityAccessManager identityAccessManager, Executor executor, boolean ownsExecutor) {
+    this.identityAccessManager = identityAccessManager;
+    this.executor = executor;
+    this.ownsExecutor = ownsExecutor;
+    lock = new ReentrantReadWriteLock();
+    mutationTail = CompletableFuture.completedFuture(null);
+  }
+
+  public CompletableFuture<Subject> updateSubjectAsync(Subject subject) {
+    String username = SubjectHelper.getUsername(subject);
+    return read(() -> {
+      if (identityAccessManager.getUser(username) != null) {
+        return CompletableFuture.completedFuture(identityAccessManager.updateSubject(subject));
+      }
+      if (identityAccessManager.getUserIdentity(username) == null) {
+        return CompletableFuture.<Subject>completedFuture(null);
+      }
+      // Mapping the user writes the id maps, so concurrent first logins must not both do it
+      return mutate(() -> identityAccessManager.updateSubject(subject));
+    }).thenCompose(Function.identity());
+  }
+
+  public CompletableFuture<IdentityEntry> getUserIdentityAsync(String username) {
+    return read(() -> identityAccessManager.getUserIdentity(username));
+  }
+
+  public CompletableFuture<UserIdMap> getUserAsync(String username) {
+    return read(() -> identityAccessManager.getUser(username));
+  }
+
+  public CompletableFuture<GroupIdMap> getGroupAsync(String groupName) {
+    return read(() -> identityAccessManager.getGroup(groupName));
+  }
+
+  public CompletableFuture<GroupEntry> getGroupDetailsAsync(String groupName) {
+    return read(() -> identityAccessManager.getGroupDetails(groupName));
+  }
+
+  public CompletableFuture<List<UserIdMap>> getAllUsersAsync() {
+    return read(identityAccessManager::getAllUsers);
+  }
+
+  public CompletableFuture<List<GroupIdMap>> getAllGroupsAsync() {
+    return read(identityAccessManager::getAllGroups);
+  }
+
+  public CompletableFuture<UserIdMap> createUserAsync(String username, String hash) {
+    return mutate(() -> identityAccessManager.createUser(username, hash));
+  }
+
+  public CompletableFuture<Boolean> updateUserPasswordAsync(String username, String hash, PasswordHandler passwordHasher) {
+    return mutate(() -> identityAccessManager.updateUserPassword(username, hash, passwordHasher));
+  }
+
+  public CompletableFuture<Boolean> deleteUserAsync(String username) {
+    return mutate(() -> identityAccessManager.deleteUser(username));
+  }
+
+  public CompletableFuture<Boolean> addUserToGroupAsync(String username, String group) {
+    return mutate(() -> identityAccessManager.addUserToGroup(username, group));
+  }
+
+  public CompletableFuture<Boolean> removeUserFromGroupAsync(String username, String group) {
+    return mutate(() -> identityAccessManager.removeUserFromGroup(username, group));
+  }
+
+  public CompletableFuture<GroupIdMap> createGroupAsync(String groupName) {
+    return mutate(() -> identityAccessManager.createGroup(groupName));
+  }
+
+  public CompletableFuture<Boolean> deleteGroupAsync(String groupName) {
+    return mutate(() -> identityAccessManager.deleteGroup(groupName));
+  }
+
+  @Override
+  public void close() {
+    synchronized (this) {
+      closed = true;
+    }
+    if (ownsExecutor) {
+      ((ExecutorService) executor).shutdown();
+    }
+  }
+
+  private <T> CompletableFuture<T> read(Supplier<T> supplier) {
+    return CompletableFuture.supplyAsync(() -> {
+      lock.readLock().lock();
+      try {
+        return supplier.get();
+      } finally {
+        lock.readLock().unlock();
+      }
+    }, executor);
+  }
+
+  // Chains the task behind the previous mutation, regardless of how that one completed
+  private synchronized <T> CompletableFuture<T> mutate(IdentityTask<T> task) {
+    CompletableFuture<T> scheduled = new CompletableFuture<>();
+    if (closed) {
+      scheduled.completeExceptionally(new RejectedExecutionException("Identity access manager is closed"));
+      return scheduled;
+    }
+    mutationTail.whenComplete((value, error) -> dispatch(task, scheduled));
+    mutationTail = scheduled;
+    return scheduled;
+  }
+
+  // Runs on whichever thread completed the previous mutation, so a rejection must end up in the future
+  private <T> void dispatch(IdentityTask<T> task, CompletableFuture<T> scheduled) {
+    try {
+      executor.execute(() -> run(task, scheduled));
+    } catch (RejectedExecutionException e) {
+      scheduled.completeExceptionally(e);
+    }
+  }
+
+  private <T> boolean run(IdentityTask<T> task, CompletableFuture<T> future) {
+    lock.writeLock().lock();
+    try {
+      return future.complete(task.call());
+    } catch (IOException | GeneralSecurityException | RuntimeException e) {
+      return future.completeExceptionally(e);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private static Executor createDefaultExecutor() {
+    try {
+      Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) method.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      // Pre virtual thread JVM, fall back to a platform thread pool
+    }
+    AtomicInteger counter = new AtomicInteger();
+    return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+      Thread thread = new Thread(runnable, "identity-access-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @FunctionalInterface
+  private interface IdentityTask<T> {
+    T call() throws IOException, GeneralSecurityException;
+  }
+}
@@ -22,6 +22,11 @@ import io.mapsmessaging.security.access.mapping.GroupMapManagement;
 import io.mapsmessaging.security.access.mapping.UserIdMap;
 import io.mapsmessaging.security.access.mapping.UserMapManagement;
 import io.mapsmessaging.security.access.mapping.store.MapStore;
+import io.mapsmessaging.security.cache.ExpiringCache;
+import io.mapsmessaging.security.events.IdentityChangeEvent;
+import io.mapsmessaging.security.events.IdentityChangeListener;
+import io.mapsmessaging.security.events.IdentityChangeType;
+import io.mapsmessaging.security.events.IdentityEventBus;
 import io.mapsmessaging.security.identity.GroupEntry;
 import io.mapsmessaging.security.identity.IdentityEntry;
 import io.mapsmessaging.security.identity.IdentityLookup;
@@ -34,21 +39,28 @@ import io.mapsmessaging.security.passwords.PasswordHandlerFactory;
 import io.mapsmessaging.security.passwords.ciphers.EncryptedPasswordCipher;
 import io.mapsmessaging.security.uuid.UuidGenerator;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.security.GeneralSecurityException;
 import java.security.Principal;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import javax.security.auth.Subject;
 import lombok.Getter;
 import lombok.Setter;
 
 public class IdentityAccessManager {
 
+  private static final int DEFAULT_SUBJECT_CACHE_SIZE = 10000;
+  private static final long DEFAULT_SUBJECT_CACHE_TIME = 60000;
+
   @Getter private final IdentityLookup identityLookup;
   private final GroupMapManagement groupMapManagement;
   private final UserMapManagement userMapManagement;
+  private final ExpiringCache<String, ResolvedPrincipals> subjectCache;
+  private final int hashParallelism;
+  private final IdentityEventBus eventBus;
 
   @Getter @Setter private PasswordHandler passwordHandler;
 
@@ -60,6 +72,14 @@ public class IdentityAccessManager {
     identityLookup = IdentityLookupFactory.getInstance().get(identity, config);
     groupMapManagement = new GroupMapManagement(groupStore);
     userMapManagement = new UserMapManagement(userStore);
+    int cacheSize = getNumber(config, "subjectCacheSize", DEFAULT_SUBJECT_CACHE_SIZE).intValue();
+    long cacheTime = getNumber(config, "subjectCacheTime", DEFAULT_SUBJECT_CACHE_TIME).longValue();
+    subjectCache = cacheSize > 0 ? new ExpiringCache<>(cacheSize, cacheTime) : null;
+    hashParallelism = getNumber(config, "hashParallelism", Runtime.getRuntime().availableProcessors()).intValue();
+    eventBus = IdentityEventBus.getInstance();
+    if (subjectCache != null) {
+      eventBus.addListener(new SubjectCacheInvalidator(this));
+    }
     for (IdentityEntry entry : identityLookup.getEntries()) {
       mapUser(entry);
     }
@@ -87,6 +107,37 @@ public class IdentityAccessManager {
 
   public Subject updateSubject(Subject subject) {
     String username = SubjectHelper.getUsername(subject);
+    ResolvedPrincipals resolved = subjectCache != null ? subjectCache.get(username) : null;
+    if (resolved == null) {
+      // Taken before resolving, so principals resolved before a change are not cached after it
+      long generation = subjectCache != null ? subjectCache.generation() : 0;
+      resolved = resolvePrincipals(username);
+      if (resolved == null) {
+        return null;
+      }
+      if (subjectCache != null) {
+        subjectCache.putIfUnchanged(username, resolved, generation);
+      }
+    }
+    Set<Principal> principalSet = subject.getPrincipals();
+    principalSet.add(resolved.uniqueIdentifier);
+    principalSet.add(resolved.groupIds);
+    return subject;
+  }
+
+  public void invalidateSubjectCache(String username) {
+    if (subjectCache != null) {
+      subjectCache.invalidate(username);
+    }
+  }
+
+  public void invalidateSubjectCache() {
+    if (subjectCache != null) {
+      subjectCache.invalidateAll();
+    }
+  }
+
+  private ResolvedPrincipals resolvePrincipals(String username) {
     IdentityEntry identityEntry = identityLookup.findEntry(username);
     if (identityEntry == null) {
       return null;
@@ -98,8 +149,6 @@ public class IdentityAccessManager {
       userMapManagement.save();
       groupMapManagement.save();
     }
-    Set<Principal> principalSet = subject.getPrincipals();
-    principalSet.add(new UniqueIdentifierPrincipal(userIdMap.getAuthId()));
     List<GroupIdMap> groups = new ArrayList<>();
     for (GroupEntry groupEntry : identityEntry.getGroups()) {
       String gKey = identityLookup.getDomain() + ":" + groupEntry.getName();
@@ -108,9 +157,7 @@ public class IdentityAccessManager {
         groups.add(groupIdMap);
       }
     }
-
-    principalSet.add(new GroupIdPrincipal(groups));
-    return subject;
+    return new ResolvedPrincipals(new UniqueIdentifierPrincipal(userIdMap.getAuthId()), new GroupIdPrincipal(List.copyOf(groups)));
   }
 
   public GroupIdMap createGroup(String groupName) throws IOException {
@@ -121,6 +168,7 @@ public class IdentityAccessManager {
     }
     if (groupEntry == null) {
       identityLookup.createGroup(groupName);
+      publish(IdentityChangeEvent.group(IdentityChangeType.GROUP_CREATED, identityLookup.getDomain(), groupName));
     }
     if (groupIdMap == null) {
       groupIdMap = new GroupIdMap(UuidGenerator.getInstance().generate(), groupName, identityLookup.getDomain());
@@ -136,6 +184,8 @@ public class IdentityAccessManager {
       identityLookup.deleteGroup(groupName);
       groupMapManagement.delete(identityLookup.getDomain() + ":" + groupName);
       groupMapManagement.save();
+      invalidateSubjectCache();
+      publish(IdentityChangeEvent.group(IdentityChangeType.GROUP_DELETED, identityLookup.getDomain(), groupName));
       return true;
     }
     return false;
@@ -162,6 +212,7 @@ public class IdentityAccessManager {
     }
     if (entry == null) {
       identityLookup.createUser(username, hash, passwordHandler);
+      publish(IdentityChangeEvent.user(IdentityChangeType.USER_CREATED, identityLookup.getDomain(), username));
     }
     if (idMap == null) {
       idMap = new UserIdMap(UuidGenerator.getInstance().generate(), username, identityLookup.getDomain());
@@ -171,11 +222,91 @@ public class IdentityAccessManager {
     return idMap;
   }
 
+  /**
+   * Creates many users at once. Passwords are hashed in parallel on a pool limited to
+   * {@code hashParallelism} threads, then all new users are written to the identity store and the
+   * user map is saved in a single pass each.
+   *
+   * <p>Users that already exist are reported with {@code created} false. Where a username appears more
+   * than once, only the first request is used.
+   *
+   * @return one result per distinct username, in request order
+   * @throws IOException if the identity store or user map could not be written
+   */
+  public List<UserCreationResult> createUsers(Collection<UserCreationRequest> requests) throws IOException {
+    Map<String, UserCreationResult> results = new LinkedHashMap<>();
+    Map<String, String> pending = new LinkedHashMap<>();
+    for (UserCreationRequest request : requests) {
+      String username = request.getUsername();
+      if (!results.containsKey(username)) {
+        results.put(username, null);
+        if (identityLookup.findEntry(username) != null) {
+          results.put(username, new UserCreationResult(username, getOrCreateUserMap(username), false, null));
+        } else {
+          pending.put(username, request.getPassword());
+        }
+      }
+    }
+
+    Map<String, String> hashed = hashPasswords(pending, results);
+    if (!hashed.isEmpty()) {
+      identityLookup.addHashedUsers(hashed);
+      for (String username : hashed.keySet()) {
+        results.put(username, new UserCreationResult(username, getOrCreateUserMap(username), true, null));
+        publish(IdentityChangeEvent.user(IdentityChangeType.USER_CREATED, identityLookup.getDomain(), username));
+      }
+    }
+    userMapManagement.save();
+    return new ArrayList<>(results.values());
+  }
+
+  private Map<String, String> hashPasswords(Map<String, String> pending, Map<String, UserCreationResult> results) {
+    Map<String, String> hashed = new LinkedHashMap<>();
+    if (pending.isEmpty()) {
+      return hashed;
+    }
+    PasswordHandler handler = passwordHandler;
+    ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(hashParallelism, pending.size())));
+    try {
+      Map<String, Future<String>> futures = new LinkedHashMap<>();
+      for (Map.Entry<String, String> entry : pending.entrySet()) {
+        String password = entry.getValue();
+        futures.put(entry.getKey(), pool.submit(() -> identityLookup.hashPassword(password, handler)));
+      }
+      for (Map.Entry<String, Future<String>> entry : futures.entrySet()) {
+        String username = entry.getKey();
+        try {
+          hashed.put(username, entry.getValue().get());
+        } catch (ExecutionException e) {
+          Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+          results.put(username, new UserCreationResult(username, null, false, cause));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          results.put(username, new UserCreationResult(username, null, false, e));
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    return hashed;
+  }
+
+  private UserIdMap getOrCreateUserMap(String username) {
+    UserIdMap idMap = userMapManagement.get(identityLookup.getDomain() + ":" + username);
+    if (idMap == null) {
+      idMap = new UserIdMap(UuidGenerator.getInstance().generate(), username, identityLookup.getDomain());
+      userMapManagement.add(idMap);
+    }
+    return idMap;
+  }
+
   public boolean updateUserPassword(String username, String hash, PasswordHandler passwordHasher)
       throws IOException, GeneralSecurityException {
     if (identityLookup.findEntry(username) != null) {
       identityLookup.deleteUser(username);
       identityLookup.createUser(username, hash, passwordHasher);
+      invalidateSubjectCache(username);
+      publish(IdentityChangeEvent.user(IdentityChangeType.PASSWORD_CHANGED, identityLookup.getDomain(), username));
       return true;
     }
     return false;
@@ -188,19 +319,29 @@ public class IdentityAccessManager {
   public boolean deleteUser(String username) throws IOException {
     if (identityLookup.findEntry(username) != null) {
       identityLookup.deleteUser(username);
+      invalidateSubjectCache(username);
       userMapManagement.delete(identityLookup.getDomain() + ":" + username);
       userMapManagement.save();
-      for (GroupEntry groupEntry : identityLookup.getGroups()) {
-        if (groupEntry.isInGroup(username)) {
+      List<GroupEntry> updatedGroups = new ArrayList<>();
+      List<String> deletedGroups = new ArrayList<>();
+      for (GroupEntry group : identityLookup.getGroups()) {
+        if (group.isInGroup(username)) {
+          GroupEntry groupEntry = group.copy();
           groupEntry.removeUser(username);
           if (groupEntry.getUserCount() == 0) {
-            identityLookup.deleteGroup(groupEntry.getName());
-            groupMapManagement.delete(groupEntry.getName());
+            deletedGroups.add(groupEntry.getName());
+            groupMapManagement.delete(identityLookup.getDomain() + ":" + groupEntry.getName());
+          } else {
+            updatedGroups.add(groupEntry);
           }
-          identityLookup.updateGroup(groupEntry);
         }
       }
+      identityLookup.updateGroups(updatedGroups, deletedGroups);
       groupMapManagement.save();
+      publish(IdentityChangeEvent.user(IdentityChangeType.USER_DELETED, identityLookup.getDomain(), username));
+      for (String groupName : deletedGroups) {
+        publish(IdentityChangeEvent.group(IdentityChangeType.GROUP_DELETED, identityLookup.getDomain(), groupName));
+      }
       return true;
     }
     return false;
@@ -211,16 +352,19 @@ public class IdentityAccessManager {
     if (identityEntry == null) {
       return false;
     }
-    GroupEntry groupEntry = identityLookup.findGroup(group);
-    if (groupEntry == null) {
+    GroupEntry current = identityLookup.findGroup(group);
+    if (current == null) {
       return false;
     }
-    if (identityEntry.isInGroup(groupEntry.getName())) {
+    if (identityEntry.isInGroup(current.getName())) {
       return false;
     }
-    identityEntry.addGroup(groupEntry);
+    GroupEntry groupEntry = current.copy();
     groupEntry.addUser(username);
+    identityEntry.addGroup(groupEntry);
     identityLookup.updateGroup(groupEntry);
+    invalidateSubjectCache(username);
+    publish(IdentityChangeEvent.membership(identityLookup.getDomain(), username, groupEntry.getName()));
     return true;
   }
 
@@ -229,20 +373,24 @@ public class IdentityAccessManager {
     if (identityEntry == null) {
       return false;
     }
-    GroupEntry groupEntry = identityLookup.findGroup(group);
-    if (groupEntry == null) {
+    GroupEntry current = identityLookup.findGroup(group);
+    if (current == null) {
       return false;
     }
-    if (!identityEntry.isInGroup(groupEntry.getName())) {
+    if (!identityEntry.isInGroup(current.getName())) {
       return false;
     }
-    identityEntry.removeGroup(groupEntry);
+    GroupEntry groupEntry = current.copy();
     groupEntry.removeUser(username);
+    identityEntry.removeGroup(groupEntry);
     identityLookup.updateGroup(groupEntry);
+    invalidateSubjectCache(username);
+    publish(IdentityChangeEvent.membership(identityLookup.getDomain(), username, groupEntry.getName()));
     if (groupEntry.getUserCount() == 0) {
       identityLookup.deleteGroup(groupEntry.getName());
-      groupMapManagement.delete(groupEntry.getName());
+      groupMapManagement.delete(identityLookup.getDomain() + ":" + groupEntry.getName());
       groupMapManagement.save();
+      publish(IdentityChangeEvent.group(IdentityChangeType.GROUP_DELETED, identityLookup.getDomain(), groupEntry.getName()));
     }
     return true;
 
@@ -262,4 +410,71 @@ public class IdentityAccessManager {
     }
     return userIdMap;
   }
+
+  private void publish(IdentityChangeEvent event) {
+    eventBus.publish(event);
+  }
+
+  private void identityChanged(Collection<IdentityChangeEvent> events) {
+    String domain = identityLookup.getDomain();
+    for (IdentityChangeEvent event : events) {
+      if (!event.appliesTo(domain)
+          || event.getType() == IdentityChangeType.ACL_CHANGED
+          || event.getType() == IdentityChangeType.GROUP_CREATED) {
+        continue;
+      }
+      if (event.getUsername() == null) {
+        // Group deleted or store reloaded, any cached user may be affected
+        invalidateSubjectCache();
+        return;
+      }
+      invalidateSubjectCache(event.getUsername());
+    }
+  }
+
+  private static Number getNumber(Map<String, Object> config, String key, Number defaultValue) {
+    Object value = config.get(key);
+    if (value instanceof Number) {
+      return (Number) value;
+    }
+    if (value != null) {
+      try {
+        return Long.parseLong(value.toString().trim());
+      } catch (NumberFormatException e) {
+        // fall through to the default
+      }
+    }
+    return defaultValue;
+  }
+
+  // Immutable principals derived from the identity lookup, shared between subjects of the same user
+  private static final class ResolvedPrincipals {
+    private final UniqueIdentifierPrincipal uniqueIdentifier;
+    private final GroupIdPrincipal groupIds;
+
+    private ResolvedPrincipals(UniqueIdentifierPrincipal uniqueIdentifier, GroupIdPrincipal groupIds) {
+      this.uniqueIdentifier = uniqueIdentifier;
+      this.groupIds = groupIds;
+    }
+  }
+
+  // Holds the manager weakly so the shared event bus does not keep discarded managers alive
+  private static final class SubjectCacheInvalidator implements IdentityChangeListener {
+
+    private final WeakReference<IdentityAccessManager> manager;
+
+    private SubjectCacheInvalidator(IdentityAccessManager manager) {
+      this.manager = new WeakReference<>(manager);
+    }
+
+    @Override
+    public void identityChanged(Collection<IdentityChangeEvent> events) {
+      IdentityAccessManager identityAccessManager = manager.get();
+      if (identityAccessManager == null) {
+        IdentityEventBus.getInstance().removeListener(this);
+      } else {
+        identityAccessManager.identityChanged(events);
+      }
+    }
+  }
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.access;
+
+import io.mapsmessaging.security.access.mapping.UserIdMap;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Outcome of a single user within a bulk {@link IdentityAccessManager#createUsers} call.
+ *
+ * <p>{@code created} is false when the user already existed, in which case the existing mapping is
+ * returned. If the user could not be created, {@code userIdMap} is null and {@code error} holds the
+ * cause.
+ */
+@Getter
+@AllArgsConstructor
+public class UserCreationResult {
+  private final String username;
+  private final UserIdMap userIdMap;
+  private final boolean created;
+  private final Exception error;
+
+  public boolean isSuccess() {
+    return error == null;
+  }
+}
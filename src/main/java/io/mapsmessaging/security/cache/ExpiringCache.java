@@ -0,0 +1,240 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent, size bounded cache where every entry expires a fixed time after it was written.
+ *
+ * <p>Reads are lock free. Every write is also queued in write order, which, since all entries live
+ * for the same time, is the order they expire in. Each write drops the expired entries from the head
+ * of that queue and, while the cache is over its size, the oldest entries, so the cost of a write stays
+ * constant on average however full the cache is. Concurrent writes may briefly take the cache past
+ * its size. Writes that have since been replaced are skipped when they reach the head, and are
+ * cleared out in one pass should they come to outnumber the entries.
+ *
+ * <p>A caller that loads a value before caching it can take the {@link #generation()} first and store
+ * the value with {@link #putIfUnchanged}, so a load that raced with an invalidation is not cached.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class ExpiringCache<K, V> {
+
+  private final Map<K, CacheEntry<V>> entries;
+  private final Queue<Write<K, V>> writeOrder;
+  private final AtomicInteger queued;
+  private final AtomicLong invalidations;
+  private final ReentrantLock evictionLock;
+  private final int maxSize;
+  private final long maxQueued;
+  private final long timeToLive;
+
+  /**
+   * @param maxSize    maximum number of entries held, must be greater than 0
+   * @param timeToLive time in milliseconds an entry remains valid after being written
+   */
+  public ExpiringCache(int maxSize, long timeToLive) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("Cache size must be greater than 0");
+    }
+    this.maxSize = maxSize;
+    this.timeToLive = timeToLive;
+    maxQueued = 2L * maxSize + 16;
+    entries = new ConcurrentHashMap<>();
+    writeOrder = new ConcurrentLinkedQueue<>();
+    queued = new AtomicInteger();
+    invalidations = new AtomicLong();
+    evictionLock = new ReentrantLock();
+  }
+
+  public V get(K key) {
+    CacheEntry<V> entry = getEntry(key);
+    return entry != null ? entry.value : null;
+  }
+
+  public void put(K key, V value) {
+    long now = System.currentTimeMillis();
+    CacheEntry<V> entry = new CacheEntry<>(value, now + timeToLive);
+    entries.put(key, entry);
+    written(key, entry, now);
+  }
+
+  /**
+   * @return a value that changes whenever an entry is invalidated, to be passed to {@link #putIfUnchanged}
+   */
+  public long generation() {
+    return invalidations.get();
+  }
+
+  /**
+   * Caches the value only if nothing was invalidated since the generation was taken. The value is
+   * written first and withdrawn if an invalidation got in meanwhile, since that invalidation may have
+   * run before the write and so not removed it.
+   *
+   * @return true if the value was cached
+   */
+  public boolean putIfUnchanged(K key, V value, long generation) {
+    if (invalidations.get() != generation) {
+      return false;
+    }
+    long now = System.currentTimeMillis();
+    CacheEntry<V> entry = new CacheEntry<>(value, now + timeToLive);
+    entries.put(key, entry);
+    written(key, entry, now);
+    if (invalidations.get() != generation) {
+      entries.remove(key, entry);
+      return false;
+    }
+    return true;
+  }
+
+  public void invalidate(K key) {
+    invalidations.incrementAndGet();
+    entries.remove(key);
+  }
+
+  public void invalidateAll() {
+    invalidations.incrementAndGet();
+    entries.clear();
+    writeOrder.clear();
+    queued.set(0);
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return a snapshot of the values that have not yet expired
+   */
+  public List<V> values() {
+    long now = System.currentTimeMillis();
+    List<V> values = new ArrayList<>(entries.size());
+    for (CacheEntry<V> entry : entries.values()) {
+      if (entry.expiryTime >= now) {
+        values.add(entry.value);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Replaces the entry for the key only if it is still the given one, so a value loaded from an older
+   * entry can not undo an invalidation or a newer write made while it was loading.
+   */
+  boolean replace(K key, CacheEntry<V> expected, V value) {
+    long now = System.currentTimeMillis();
+    CacheEntry<V> entry = new CacheEntry<>(value, now + timeToLive);
+    if (!entries.replace(key, expected, entry)) {
+      return false;
+    }
+    written(key, entry, now);
+    return true;
+  }
+
+  boolean remove(K key, CacheEntry<V> expected) {
+    return entries.remove(key, expected);
+  }
+
+  CacheEntry<V> getEntry(K key) {
+    CacheEntry<V> entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.expiryTime < System.currentTimeMillis()) {
+      entries.remove(key, entry);
+      return null;
+    }
+    return entry;
+  }
+
+  private void written(K key, CacheEntry<V> entry, long now) {
+    writeOrder.add(new Write<>(key, entry));
+    if (queued.incrementAndGet() > maxQueued) {
+      dropReplacedWrites();
+    }
+    evict(now);
+  }
+
+  // Each write is dropped from the queue once, so over many writes this does constant work per write.
+  // Should another write be evicting, it is left to that one, and any excess is caught up on the next
+  private void evict(long now) {
+    if (!evictionLock.tryLock()) {
+      return;
+    }
+    try {
+      Write<K, V> head;
+      while ((head = writeOrder.peek()) != null) {
+        CacheEntry<V> current = entries.get(head.key);
+        boolean live = current == head.entry;
+        if (live && current.expiryTime >= now && entries.size() <= maxSize) {
+          return;
+        }
+        writeOrder.poll();
+        queued.decrementAndGet();
+        if (live) {
+          entries.remove(head.key, head.entry);
+        }
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  // Rewriting the same keys leaves replaced writes queued behind entries that have not yet expired
+  private void dropReplacedWrites() {
+    evictionLock.lock();
+    try {
+      if (queued.get() > maxQueued) {
+        writeOrder.removeIf(write -> entries.get(write.key) != write.entry);
+        queued.set(writeOrder.size());
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  static final class CacheEntry<V> {
+    final V value;
+    final long expiryTime;
+
+    private CacheEntry(V value, long expiryTime) {
+      this.value = value;
+      this.expiryTime = expiryTime;
+    }
+  }
+
+  private static final class Write<K, V> {
+    private final K key;
+    private final CacheEntry<V> entry;
+
+    private Write(K key, CacheEntry<V> entry) {
+      this.key = key;
+      this.entry = entry;
+    }
+  }
+}
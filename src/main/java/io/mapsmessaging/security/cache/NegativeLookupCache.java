@@ -0,0 +1,93 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.cache;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Remembers keys that recently failed to resolve, in bounded memory.
+ *
+ * <p>Keys are held in two bloom filters, a current and a previous generation. Every half of the time
+ * to live the current generation becomes the previous one and the oldest is dropped, so a recorded
+ * key is reported as missing for between half and the whole of the time to live. Being bloom filter
+ * based, a key that was never recorded may occasionally be reported as missing; callers that cannot
+ * tolerate that must confirm a positive answer before acting on it.
+ */
+public class NegativeLookupCache {
+
+  private final int expectedInsertions;
+  private final double falsePositiveRate;
+  private final long rotationTime;
+  private final AtomicReference<Generations> generations;
+
+  /**
+   * @param expectedInsertions number of misses expected within half the time to live
+   * @param falsePositiveRate  acceptable false positive probability per generation
+   * @param timeToLive         time in milliseconds a recorded miss is remembered for
+   */
+  public NegativeLookupCache(int expectedInsertions, double falsePositiveRate, long timeToLive) {
+    this.expectedInsertions = expectedInsertions;
+    this.falsePositiveRate = falsePositiveRate;
+    rotationTime = Math.max(1, timeToLive / 2);
+    generations = new AtomicReference<>(newGenerations(new BloomFilter(expectedInsertions, falsePositiveRate)));
+  }
+
+  public boolean isMissing(String key) {
+    Generations current = currentGenerations();
+    return current.current.mightContain(key) || current.previous.mightContain(key);
+  }
+
+  public void recordMissing(String key) {
+    currentGenerations().current.add(key);
+  }
+
+  public void clear() {
+    generations.set(newGenerations(new BloomFilter(expectedInsertions, falsePositiveRate)));
+  }
+
+  private Generations currentGenerations() {
+    Generations current = generations.get();
+    long now = System.currentTimeMillis();
+    if (current.rotateAt <= now) {
+      // If a whole interval has passed unobserved, the current generation is already too old to keep
+      BloomFilter previous = now - current.rotateAt < rotationTime ? current.current : new BloomFilter(expectedInsertions, falsePositiveRate);
+      // Only one thread wins the rotation, the others pick up the generation it published
+      generations.compareAndSet(current, newGenerations(previous));
+      current = generations.get();
+    }
+    return current;
+  }
+
+  private Generations newGenerations(BloomFilter previous) {
+    return new Generations(
+        new BloomFilter(expectedInsertions, falsePositiveRate),
+        previous,
+        System.currentTimeMillis() + rotationTime);
+  }
+
+  private static final class Generations {
+    private final BloomFilter current;
+    private final BloomFilter previous;
+    private final long rotateAt;
+
+    private Generations(BloomFilter current, BloomFilter previous, long rotateAt) {
+      this.current = current;
+      this.previous = previous;
+      this.rotateAt = rotateAt;
+    }
+  }
+}
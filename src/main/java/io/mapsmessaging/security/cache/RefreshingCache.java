@@ -0,0 +1,102 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.cache;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * An {@link ExpiringCache} that reloads entries in the background shortly before they expire.
+ *
+ * <p>A read that finds an entry within the refresh window of its expiry returns the cached value
+ * immediately and queues a single reload of that key on the supplied executor. Entries that are read
+ * regularly are therefore replaced before they expire and never cost the caller a synchronous load,
+ * while entries that are not read simply expire. If the loader returns null the entry is removed; if
+ * it fails the current value is kept until it expires, so stale data is still bounded by the time to
+ * live. A reload only takes effect if the entry it started from is still cached, so a key invalidated
+ * or rewritten while it was loading is not brought back with the older data.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class RefreshingCache<K, V> extends ExpiringCache<K, V> {
+
+  private final long refreshWindow;
+  private final Loader<K, V> loader;
+  private final Executor executor;
+  private final Set<K> refreshing;
+
+  /**
+   * @param maxSize       maximum number of entries held, must be greater than 0
+   * @param timeToLive    time in milliseconds an entry remains valid after being written
+   * @param refreshWindow time in milliseconds before expiry within which a read triggers a reload
+   * @param loader        reloads the value for a key
+   * @param executor      runs the reloads
+   */
+  public RefreshingCache(int maxSize, long timeToLive, long refreshWindow, Loader<K, V> loader, Executor executor) {
+    super(maxSize, timeToLive);
+    this.refreshWindow = Math.min(Math.max(0, refreshWindow), timeToLive);
+    this.loader = loader;
+    this.executor = executor;
+    refreshing = ConcurrentHashMap.newKeySet();
+  }
+
+  @Override
+  public V get(K key) {
+    CacheEntry<V> entry = getEntry(key);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.expiryTime - System.currentTimeMillis() <= refreshWindow && refreshing.add(key)) {
+      try {
+        executor.execute(() -> refresh(key, entry));
+      } catch (RejectedExecutionException e) {
+        refreshing.remove(key);
+      }
+    }
+    return entry.value;
+  }
+
+  /**
+   * Returns the cached value without counting as a read, so it never triggers a reload.
+   */
+  public V peek(K key) {
+    return super.get(key);
+  }
+
+  private void refresh(K key, CacheEntry<V> entry) {
+    try {
+      V value = loader.load(key);
+      if (value != null) {
+        replace(key, entry, value);
+      } else {
+        remove(key, entry);
+      }
+    } catch (Exception e) {
+      // Keep serving the current value until it expires
+    } finally {
+      refreshing.remove(key);
+    }
+  }
+
+  @FunctionalInterface
+  public interface Loader<K, V> {
+    V load(K key) throws Exception;
+  }
+}
@@ -16,11 +16,16 @@
 
 package io.mapsmessaging.security.cipher;
 
+import io.mapsmessaging.security.cache.ExpiringCache;
 import io.mapsmessaging.security.certificates.CertificateManager;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.security.*;
 import java.security.cert.Certificate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.crypto.*;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
@@ -49,6 +54,15 @@ import lombok.*;
  * using the provided methods for encrypting or decrypting data. The class handles all aspects of the
  * cryptographic process, including key generation, IV generation, and the application of compression algorithms.
  *
+ * <p>An instance caches the key material it unwraps, so it should be kept and reused. Private keys are
+ * unlocked once, and AES keys recovered with RSA are remembered by alias and encrypted form, so repeated
+ * decryption with the same key costs only the AES step. A cached AES key is only returned to a caller
+ * whose password matches the one that unlocked the alias's private key. When encrypting, an instance wraps one AES data
+ * key per alias with RSA and reuses it, with a fresh IV outside the RSA block for every buffer, so data
+ * it encrypts shares one RSA operation when decrypted. Buffers written with a key and IV per buffer
+ * can still be decrypted. Cached keys expire after an hour, and a data key is replaced after about a
+ * million buffers.
+ *
  * @author Matthew Buckton
  */
 
@@ -60,32 +74,36 @@ public class BufferCipher {
   private static final int AES_KEY_SIZE = 256;
   private static final int AES_BLOCK_SIZE = 16;
   private static final int HEADER_SIZE = 4;
+  private static final int SHARED_KEY_FORMAT = -1;
+  private static final int MAX_DATA_KEY_USES = 1 << 20;
+  private static final int KEY_CACHE_SIZE = 4096;
+  private static final long KEY_CACHE_TIME = TimeUnit.HOURS.toMillis(1);
 
   private final CertificateManager certManager;
+  private final ExpiringCache<String, UnlockedKey> privateKeys;
+  private final ExpiringCache<WrappedKey, RsaPartition> unwrappedKeys;
+  private final Map<String, DataKey> dataKeys;
 
   public BufferCipher(CertificateManager certManager) {
     this.certManager = certManager;
+    privateKeys = new ExpiringCache<>(16, KEY_CACHE_TIME);
+    unwrappedKeys = new ExpiringCache<>(KEY_CACHE_SIZE, KEY_CACHE_TIME);
+    dataKeys = new ConcurrentHashMap<>();
   }
 
   public byte[] encrypt(String alias, byte[] data) throws GeneralSecurityException, IOException {
-    Certificate cert = certManager.getCertificate(alias);
-    PublicKey publicKey = cert.getPublicKey();
-
-    KeyGenerator keyGenerator = KeyGenerator.getInstance(KEY_GENERATOR_ALGORITHM);
-    keyGenerator.init(AES_KEY_SIZE);
-    SecretKey aesKey = keyGenerator.generateKey();
+    DataKey dataKey = getDataKey(alias);
     byte[] iv = generateIV();
 
-    Cipher aesCipher = initCipher(Cipher.ENCRYPT_MODE, aesKey, iv);
+    Cipher aesCipher = initCipher(Cipher.ENCRYPT_MODE, dataKey.aesKey, iv);
     byte[] encryptedData = aesCipher.doFinal(Compressor.compress(data));
 
-    RsaPartition rsaPartition = new RsaPartition(aesKey, iv);
-    byte[] encryptedKeyAndIv = encryptRsaPartition(rsaPartition, publicKey);
-
-    // Prepend the length of the encrypted key and IV
-    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + encryptedKeyAndIv.length + encryptedData.length);
-    buffer.putInt(encryptedKeyAndIv.length);
-    buffer.put(encryptedKeyAndIv);
+    // Mark the format, then the length of the wrapped data key, the key, the IV and the data
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE * 2 + dataKey.wrapped.length + iv.length + encryptedData.length);
+    buffer.putInt(SHARED_KEY_FORMAT);
+    buffer.putInt(dataKey.wrapped.length);
+    buffer.put(dataKey.wrapped);
+    buffer.put(iv);
     buffer.put(encryptedData);
 
     return buffer.array();
@@ -93,26 +111,83 @@ public class BufferCipher {
 
   public byte[] decrypt(String alias, byte[] data, char[] password)
       throws GeneralSecurityException, IOException {
-    PrivateKey privateKey = certManager.getKey(alias, password);
     ByteBuffer buffer = ByteBuffer.wrap(data);
 
-    // Extract the length of the key and IV
+    // Extract the length of the key and IV, or of the shared data key
     int lengthOfKeyAndIv = buffer.getInt();
+    boolean sharedKey = lengthOfKeyAndIv == SHARED_KEY_FORMAT;
+    if (sharedKey) {
+      lengthOfKeyAndIv = buffer.getInt();
+    }
     byte[] encryptedKeyAndIv = new byte[lengthOfKeyAndIv];
     buffer.get(encryptedKeyAndIv);
 
+    // Decrypt the AES key, and IV if it is held with the key
+    RsaPartition rsaPartition = unwrap(alias, encryptedKeyAndIv, password);
+    byte[] iv = rsaPartition.iv;
+    if (sharedKey) {
+      iv = new byte[AES_BLOCK_SIZE];
+      buffer.get(iv);
+    }
+
     // The remaining data is the encrypted data
     byte[] encryptedData = new byte[buffer.remaining()];
     buffer.get(encryptedData);
 
-    // Decrypt the AES key and IV
-    RsaPartition rsaPartition = decryptRsaPartition(encryptedKeyAndIv, privateKey);
-
     // Decrypt the data
-    Cipher aesCipher = initCipher(Cipher.DECRYPT_MODE, rsaPartition.aesKey, rsaPartition.iv);
+    Cipher aesCipher = initCipher(Cipher.DECRYPT_MODE, rsaPartition.aesKey, iv);
     return Decompressor.decompress(aesCipher.doFinal(encryptedData));
   }
 
+  // The password is checked against the unlocked private key before any cached AES key is handed out
+  private RsaPartition unwrap(String alias, byte[] encryptedKeyAndIv, char[] password) throws GeneralSecurityException {
+    PrivateKey privateKey = getPrivateKey(alias, password);
+    WrappedKey cacheKey = new WrappedKey(alias, encryptedKeyAndIv);
+    RsaPartition rsaPartition = unwrappedKeys.get(cacheKey);
+    if (rsaPartition == null) {
+      rsaPartition = decryptRsaPartition(encryptedKeyAndIv, privateKey);
+      unwrappedKeys.put(cacheKey, rsaPartition);
+    }
+    return rsaPartition;
+  }
+
+  private PrivateKey getPrivateKey(String alias, char[] password) throws GeneralSecurityException {
+    UnlockedKey unlocked = privateKeys.get(alias);
+    if (unlocked == null || !isEqual(unlocked.password, password)) {
+      unlocked = new UnlockedKey(password.clone(), certManager.getKey(alias, password));
+      privateKeys.put(alias, unlocked);
+    }
+    return unlocked.privateKey;
+  }
+
+  // A race may create two data keys for an alias, which is harmless since each buffer carries its key
+  private DataKey getDataKey(String alias) throws GeneralSecurityException {
+    DataKey dataKey = dataKeys.get(alias);
+    if (dataKey == null || dataKey.uses.incrementAndGet() > MAX_DATA_KEY_USES) {
+      Certificate cert = certManager.getCertificate(alias);
+      KeyGenerator keyGenerator = KeyGenerator.getInstance(KEY_GENERATOR_ALGORITHM);
+      keyGenerator.init(AES_KEY_SIZE);
+      SecretKey aesKey = keyGenerator.generateKey();
+      byte[] wrapped = encryptRsaPartition(new RsaPartition(aesKey, new byte[0]), cert.getPublicKey());
+      dataKey = new DataKey(aesKey, wrapped);
+      dataKeys.put(alias, dataKey);
+      unwrappedKeys.put(new WrappedKey(alias, wrapped), new RsaPartition(aesKey, new byte[0]));
+    }
+    return dataKey;
+  }
+
+  // Compares in time that depends only on the lengths, not on where the passwords differ
+  private static boolean isEqual(char[] expected, char[] actual) {
+    if (actual == null || expected.length != actual.length) {
+      return false;
+    }
+    int difference = 0;
+    for (int x = 0; x < expected.length; x++) {
+      difference |= expected[x] ^ actual[x];
+    }
+    return difference == 0;
+  }
+
   private byte[] generateIV() {
     SecureRandom random = new SecureRandom();
     byte[] iv = new byte[AES_BLOCK_SIZE]; // AES block size in bytes
@@ -152,6 +227,26 @@ public class BufferCipher {
     return new RsaPartition(aesKey, iv);
   }
 
+  @AllArgsConstructor
+  private static class UnlockedKey {
+    private final char[] password;
+    private final PrivateKey privateKey;
+  }
+
+  @AllArgsConstructor
+  @EqualsAndHashCode
+  private static class WrappedKey {
+    private final String alias;
+    private final byte[] wrapped;
+  }
+
+  @RequiredArgsConstructor
+  private static class DataKey {
+    private final SecretKey aesKey;
+    private final byte[] wrapped;
+    private final AtomicInteger uses = new AtomicInteger(1);
+  }
+
   @AllArgsConstructor
   private static class RsaPartition {
     private SecretKey aesKey;
@@ -0,0 +1,73 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.events;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Describes a single change to an identity store, user, group or access control list.
+ *
+ * <p>The source names the access control list or file behind an ACL change or reload. Fields that do
+ * not apply to the change are null; a null domain means the change may affect any domain, for
+ * example a store that was reloaded from disk. Events are value objects so that repeated
+ * changes to the same user or group coalesce while waiting to be delivered.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public class IdentityChangeEvent {
+
+  private final IdentityChangeType type;
+  private final String domain;
+  private final String username;
+  private final String groupName;
+  private final String source;
+
+  public IdentityChangeEvent(IdentityChangeType type, String domain, String username, String groupName, String source) {
+    this.type = type;
+    this.domain = domain;
+    this.username = username;
+    this.groupName = groupName;
+    this.source = source;
+  }
+
+  public static IdentityChangeEvent user(IdentityChangeType type, String domain, String username) {
+    return new IdentityChangeEvent(type, domain, username, null, null);
+  }
+
+  public static IdentityChangeEvent group(IdentityChangeType type, String domain, String groupName) {
+    return new IdentityChangeEvent(type, domain, null, groupName, null);
+  }
+
+  public static IdentityChangeEvent membership(String domain, String username, String groupName) {
+    return new IdentityChangeEvent(IdentityChangeType.GROUP_MEMBERSHIP_CHANGED, domain, username, groupName, null);
+  }
+
+  public static IdentityChangeEvent aclChanged(String name) {
+    return new IdentityChangeEvent(IdentityChangeType.ACL_CHANGED, null, null, null, name);
+  }
+
+  public static IdentityChangeEvent reloaded(String source) {
+    return new IdentityChangeEvent(IdentityChangeType.STORE_RELOADED, null, null, null, source);
+  }
+
+  public boolean appliesTo(String domainName) {
+    return domain == null || domain.equals(domainName);
+  }
+}
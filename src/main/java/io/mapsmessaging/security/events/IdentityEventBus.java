@@ -0,0 +1,140 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.events;
+
+import static io.mapsmessaging.security.logging.AuthLogMessages.IDENTITY_EVENT_LISTENER_FAILURE;
+
+import io.mapsmessaging.logging.Logger;
+import io.mapsmessaging.logging.LoggerFactory;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Announces changes to users, groups and access control lists so that caches built on this library
+ * can invalidate exactly what changed rather than relying on short time to live values.
+ *
+ * <p>Publishing never blocks on listeners. Each listener has its own queue of pending events that is
+ * drained on the executor; identical events published before the listener gets to run are delivered
+ * once, in the position of the latest of them so the batch still ends in the most recent state, and
+ * a listener is never called concurrently with itself.
+ */
+@SuppressWarnings("java:S6548") // yes it is a singleton
+public class IdentityEventBus {
+
+  private static class Holder {
+    static final IdentityEventBus INSTANCE = new IdentityEventBus(createDefaultExecutor());
+  }
+
+  public static IdentityEventBus getInstance() {
+    return Holder.INSTANCE;
+  }
+
+  private final Logger logger = LoggerFactory.getLogger(IdentityEventBus.class);
+  private final Executor executor;
+  private final List<Subscription> subscriptions;
+
+  public IdentityEventBus(Executor executor) {
+    this.executor = executor;
+    subscriptions = new CopyOnWriteArrayList<>();
+  }
+
+  public void addListener(IdentityChangeListener listener) {
+    subscriptions.add(new Subscription(listener));
+  }
+
+  public void removeListener(IdentityChangeListener listener) {
+    subscriptions.removeIf(subscription -> subscription.listener == listener);
+  }
+
+  public void publish(IdentityChangeEvent event) {
+    for (Subscription subscription : subscriptions) {
+      subscription.offer(event);
+    }
+  }
+
+  private static Executor createDefaultExecutor() {
+    AtomicInteger counter = new AtomicInteger();
+    return Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "identity-events-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  private final class Subscription implements Runnable {
+
+    private final IdentityChangeListener listener;
+    private Set<IdentityChangeEvent> pending;
+    private boolean scheduled;
+
+    private Subscription(IdentityChangeListener listener) {
+      this.listener = listener;
+      pending = new LinkedHashSet<>();
+    }
+
+    private void offer(IdentityChangeEvent event) {
+      boolean schedule;
+      synchronized (this) {
+        // Moved to the end, a repeat must not be delivered ahead of the events published before it
+        pending.remove(event);
+        pending.add(event);
+        schedule = !scheduled;
+        scheduled = true;
+      }
+      if (schedule) {
+        dispatch();
+      }
+    }
+
+    private void dispatch() {
+      try {
+        executor.execute(this);
+      } catch (RejectedExecutionException e) {
+        // Leave the events pending, the next publish will try again
+        synchronized (this) {
+          scheduled = false;
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      Set<IdentityChangeEvent> batch;
+      synchronized (this) {
+        batch = pending;
+        pending = new LinkedHashSet<>();
+      }
+      try {
+        listener.identityChanged(Collections.unmodifiableSet(batch));
+      } catch (RuntimeException e) {
+        logger.log(IDENTITY_EVENT_LISTENER_FAILURE, listener.getClass().getName(), e);
+      }
+      boolean again;
+      synchronized (this) {
+        again = !pending.isEmpty();
+        scheduled = again;
+      }
+      if (again) {
+        dispatch();
+      }
+    }
+  }
+}
@@ -52,11 +52,14 @@ import lombok.Getter;
  * String groupName = group.getName();
  * }</pre>
  *
+ * <p>Groups handed out by a store may be shared with other threads and must not be changed.
+ * Change a {@link #copy()} and pass it back to the store instead.
+ *
  * @see Comparable
  */
-public class GroupEntry {
+public class GroupEntry implements Cloneable {
 
-  protected final Set<String> userSet;
+  protected Set<String> userSet;
 
   @Getter
   protected String name;
@@ -91,6 +94,17 @@ public class GroupEntry {
     return userSet.size();
   }
 
+  /** Returns a copy of this group with its own set of members, which can be changed freely. */
+  public GroupEntry copy() {
+    try {
+      GroupEntry copy = (GroupEntry) super.clone();
+      copy.userSet = new TreeSet<>(userSet);
+      return copy;
+    } catch (CloneNotSupportedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
   public String toString() {
     StringBuilder sb = new StringBuilder(name).append(":");
     boolean isFirst = true;
@@ -64,24 +64,52 @@ import lombok.Getter;
  */
 public class IdentityEntry {
 
-  protected final Map<String, GroupEntry> groupList = new LinkedHashMap<>();
+  // Replaced rather than changed, so readers never see a partly built list of groups
+  protected volatile Map<String, GroupEntry> groupList = Collections.emptyMap();
   @Getter
   protected String username;
-  @Getter
-  protected PasswordHandler passwordHasher;
+  protected volatile PasswordHandler passwordHasher;
 
   protected String password;
 
+  /**
+   * Returns the handler for this entry's password. Entries that do not set it when constructed create
+   * it here on first use, so that hashes nobody authenticates against are never decoded.
+   */
+  public PasswordHandler getPasswordHasher() {
+    PasswordHandler handler = passwordHasher;
+    if (handler == null) {
+      handler = createPasswordHasher();
+      passwordHasher = handler;
+    }
+    return handler;
+  }
+
+  protected PasswordHandler createPasswordHasher() {
+    return null;
+  }
+
   public boolean isInGroup(String group) {
     return groupList.containsKey(group);
   }
 
-  public void addGroup(GroupEntry group) {
-    groupList.put(group.name, group);
+  public synchronized void addGroup(GroupEntry group) {
+    Map<String, GroupEntry> next = new LinkedHashMap<>(groupList);
+    next.put(group.name, group);
+    groupList = Collections.unmodifiableMap(next);
+  }
+
+  public synchronized void clearGroups() {
+    groupList = Collections.emptyMap();
   }
 
-  public void clearGroups() {
-    groupList.clear();
+  /** Replaces the groups of this entry in a single step. */
+  public synchronized void setGroups(Collection<GroupEntry> groups) {
+    Map<String, GroupEntry> next = new LinkedHashMap<>();
+    for (GroupEntry group : groups) {
+      next.put(group.name, group);
+    }
+    groupList = Collections.unmodifiableMap(next);
   }
 
   public List<GroupEntry> getGroups() {
@@ -107,8 +135,10 @@ public class IdentityEntry {
     return username + ":" + password;
   }
 
-  public void removeGroup(GroupEntry groupEntry) {
-    groupList.remove(groupEntry.getName());
+  public synchronized void removeGroup(GroupEntry groupEntry) {
+    Map<String, GroupEntry> next = new LinkedHashMap<>(groupList);
+    next.remove(groupEntry.getName());
+    groupList = Collections.unmodifiableMap(next);
   }
 
   @SuppressWarnings("java:S1130") // They are thrown by inherited classes
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import org.apache.commons.lang3.NotImplementedException;
 
 public interface IdentityLookup {
@@ -57,6 +58,25 @@ public interface IdentityLookup {
     throw new NotImplementedException("Unable to add users to an LDAP server");
   }
 
+  /**
+   * Produces the stored form of a password, as {@link #createUser} would. Implementations must be safe
+   * to call concurrently since bulk creation hashes on multiple threads.
+   */
+  default String hashPassword(String password, PasswordHandler passwordHasher)
+      throws IOException, GeneralSecurityException {
+    throw new NotImplementedException("Unable to hash passwords for this identity store");
+  }
+
+  /**
+   * Adds users whose passwords have already been through {@link #hashPassword}, persisting them in a
+   * single pass.
+   *
+   * @param usernameHashes username to stored password, in the order they should be written
+   */
+  default void addHashedUsers(Map<String, String> usernameHashes) throws IOException {
+    throw new NotImplementedException("Unable to add users to this identity store");
+  }
+
   default boolean deleteUser(String username) throws IOException {
     throw new NotImplementedException("Unable to delete users to an LDAP server");
   }
@@ -64,4 +84,20 @@ public interface IdentityLookup {
   default void updateGroup(GroupEntry groupEntry) throws IOException {
     throw new NotImplementedException("Unable to delete users to an LDAP server");
   }
+
+  /**
+   * Applies a set of group changes together. Implementations backed by files should persist all of
+   * the changes with a single write per file rather than one per group.
+   *
+   * @param updatedGroups groups whose membership has changed
+   * @param deletedGroups names of groups to remove
+   */
+  default void updateGroups(List<GroupEntry> updatedGroups, List<String> deletedGroups) throws IOException {
+    for (String groupName : deletedGroups) {
+      deleteGroup(groupName);
+    }
+    for (GroupEntry groupEntry : updatedGroups) {
+      updateGroup(groupEntry);
+    }
+  }
 }
@@ -57,9 +57,13 @@ public class IdentityLookupFactory {
   }
 
   public IdentityLookup get(String name, Map<String, Object> config) {
+    return get(name, new ConfigurationProperties(config));
+  }
+
+  public IdentityLookup get(String name, ConfigurationProperties config) {
     for (IdentityLookup identityLookup : identityLookups) {
       if (identityLookup.getName().equalsIgnoreCase(name)) {
-        return identityLookup.create(new ConfigurationProperties(config));
+        return identityLookup.create(config);
       }
     }
     return null;
@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
 import java.util.List;
+import java.util.Map;
 
 public class ApacheBasicAuth implements IdentityLookup {
 
@@ -90,8 +91,12 @@ public class ApacheBasicAuth implements IdentityLookup {
 
   @Override
   public void updateGroup(GroupEntry groupEntry) throws IOException {
-    groupFileManager.deleteEntry(groupEntry.getName());
-    groupFileManager.addEntry(groupEntry.toString());
+    groupFileManager.updateEntries(List.of(groupEntry), List.of());
+  }
+
+  @Override
+  public void updateGroups(List<GroupEntry> updatedGroups, List<String> deletedGroups) throws IOException {
+    groupFileManager.updateEntries(updatedGroups, deletedGroups);
   }
 
   @Override
@@ -122,14 +127,28 @@ public class ApacheBasicAuth implements IdentityLookup {
   @Override
   public boolean createUser(String username, String password, PasswordHandler handler)
       throws IOException, GeneralSecurityException {
+    String hash = hashPassword(password, handler);
+    if (passwdFileManager != null) {
+      passwdFileManager.addEntry(username, hash);
+    }
+    return false;
+  }
+
+  @Override
+  public String hashPassword(String password, PasswordHandler handler)
+      throws IOException, GeneralSecurityException {
     String salt = PasswordGenerator.generateSalt(16);
     byte[] hash =
         handler.transformPassword(
             password.getBytes(StandardCharsets.UTF_8), salt.getBytes(StandardCharsets.UTF_8), 12);
+    return new String(hash);
+  }
+
+  @Override
+  public void addHashedUsers(Map<String, String> usernameHashes) throws IOException {
     if (passwdFileManager != null) {
-      passwdFileManager.addEntry(username, new String(hash));
+      passwdFileManager.addEntries(usernameHashes);
     }
-    return false;
   }
 
   @Override
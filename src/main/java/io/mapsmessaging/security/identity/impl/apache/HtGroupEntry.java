@@ -18,6 +18,7 @@ package io.mapsmessaging.security.identity.impl.apache;
 
 import io.mapsmessaging.security.identity.GroupEntry;
 import io.mapsmessaging.security.identity.IllegalFormatException;
+import java.util.Set;
 import java.util.StringTokenizer;
 
 public class HtGroupEntry extends GroupEntry {
@@ -40,4 +41,8 @@ public class HtGroupEntry extends GroupEntry {
     }
   }
 
+  public HtGroupEntry(String name, Set<String> userSet) {
+    super(name, userSet);
+  }
+
 }
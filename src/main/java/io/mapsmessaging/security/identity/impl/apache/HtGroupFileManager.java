@@ -19,6 +19,7 @@ package io.mapsmessaging.security.identity.impl.apache;
 import io.mapsmessaging.security.identity.GroupEntry;
 import io.mapsmessaging.security.identity.IllegalFormatException;
 import io.mapsmessaging.security.identity.impl.base.FileBaseGroups;
+import java.util.Set;
 
 public class HtGroupFileManager extends FileBaseGroups {
 
@@ -32,4 +33,9 @@ public class HtGroupFileManager extends FileBaseGroups {
     return new HtGroupEntry(line);
   }
 
+  @Override
+  protected GroupEntry withMembers(GroupEntry group, Set<String> members) {
+    return new HtGroupEntry(group.getName(), members);
+  }
+
 }
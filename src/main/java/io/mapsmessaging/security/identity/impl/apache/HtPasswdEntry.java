@@ -17,6 +17,7 @@
 package io.mapsmessaging.security.identity.impl.apache;
 
 import io.mapsmessaging.security.identity.IdentityEntry;
+import io.mapsmessaging.security.passwords.PasswordHandler;
 import io.mapsmessaging.security.passwords.PasswordHandlerFactory;
 
 public class HtPasswdEntry extends IdentityEntry {
@@ -24,7 +25,6 @@ public class HtPasswdEntry extends IdentityEntry {
   public HtPasswdEntry(String username, String password) {
     this.username = username;
     this.password = password;
-    passwordHasher = PasswordHandlerFactory.getInstance().parse(password);
   }
 
   public HtPasswdEntry(String line) {
@@ -32,7 +32,10 @@ public class HtPasswdEntry extends IdentityEntry {
     username = line.substring(0, usernamePos);
     line = line.substring(usernamePos + 1);
     password = line;
-    passwordHasher = PasswordHandlerFactory.getInstance().parse(password);
   }
 
+  @Override
+  protected PasswordHandler createPasswordHasher() {
+    return PasswordHandlerFactory.getInstance().parse(password);
+  }
 }
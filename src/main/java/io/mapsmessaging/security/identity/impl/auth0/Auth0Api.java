@@ -52,10 +52,18 @@ public class Auth0Api {
   }
 
   public List<String> getUserInGroup(String groupname) throws Auth0Exception {
-    List<String> users = (List<String>) caching.get(USER_IN_GROUP_REQUEST+"(" + groupname + ")");
-    if (users != null) {
-      return users;
-    }
+    return caching.get(USER_IN_GROUP_REQUEST + "(" + groupname + ")", () -> loadUserInGroup(groupname));
+  }
+
+  public List<Role> getGroupList() throws Auth0Exception {
+    return caching.get(LIST_GROUP_REQUEST, this::loadGroupList);
+  }
+
+  public List<User> getUserList() throws Auth0Exception {
+    return caching.get(LIST_USER_REQUEST, this::loadUserList);
+  }
+
+  private List<String> loadUserInGroup(String groupname) throws Auth0Exception {
     List<String> users1 = new ArrayList<>();
     mgmt.roles()
         .listUsers(groupname, null)
@@ -63,15 +71,10 @@ public class Auth0Api {
         .getBody()
         .getItems()
         .forEach(user -> users1.add(user.getEmail()));
-    caching.put(USER_IN_GROUP_REQUEST+"(" + groupname + ")", users1);
     return users1;
   }
 
-  public List<Role> getGroupList() throws Auth0Exception {
-    List<Role> responseList = (List<Role>) caching.get(LIST_GROUP_REQUEST);
-    if (responseList != null) {
-      return responseList;
-    }
+  private List<Role> loadGroupList() throws Auth0Exception {
     int start = 0;
     int limit = 100;
     mgmt.roles().list(new RolesFilter().withPage(start, limit));
@@ -79,7 +82,7 @@ public class Auth0Api {
         mgmt.roles().list(new RolesFilter().withPage(start, limit)).execute().getBody();
     List<Role> roleList = rolesPage.getItems();
     start = start + roleList.size();
-    responseList = new ArrayList<>(roleList);
+    List<Role> responseList = new ArrayList<>(roleList);
     if (rolesPage.getTotal() != null && rolesPage.getTotal() > start) {
       while (rolesPage.getTotal() > start) {
         rolesPage = mgmt.roles().list(new RolesFilter().withPage(start, limit)).execute().getBody();
@@ -88,22 +91,17 @@ public class Auth0Api {
         responseList.addAll(roleList);
       }
     }
-    caching.put(LIST_GROUP_REQUEST, responseList);
     return responseList;
   }
 
-  public List<User> getUserList() throws Auth0Exception {
-    List<User> responseList = (List<User>) caching.get(LIST_USER_REQUEST);
-    if (responseList != null) {
-      return responseList;
-    }
+  private List<User> loadUserList() throws Auth0Exception {
     int start = 0;
     int limit = 100;
     Request<UsersPage> request = mgmt.users().list(null);
     UsersPage usersPage = request.execute().getBody();
     List<User> userList = usersPage.getItems();
     start += userList.size();
-    responseList = new ArrayList<>(userList);
+    List<User> responseList = new ArrayList<>(userList);
     if (usersPage.getTotal() != null && usersPage.getTotal() > start) {
       while (usersPage.getTotal() > start) {
         request = mgmt.users().list(new UserFilter().withPage(start, limit));
@@ -113,11 +111,8 @@ public class Auth0Api {
         responseList.addAll(userList);
       }
     }
-    responseList =
-        responseList.stream()
-            .filter(user -> (user.isBlocked() == null || !user.isBlocked()))
-            .collect(Collectors.toList());
-    caching.put(LIST_USER_REQUEST, responseList);
-    return responseList;
+    return responseList.stream()
+        .filter(user -> (user.isBlocked() == null || !user.isBlocked()))
+        .collect(Collectors.toList());
   }
 }
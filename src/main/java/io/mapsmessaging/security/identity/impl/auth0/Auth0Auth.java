@@ -36,8 +36,8 @@ import lombok.Getter;
 import java.util.ArrayList;
 import java.util.List;
 
-import static io.mapsmessaging.security.logging.AuthLogMessages.AUTH0_FAILURE;
 import static io.mapsmessaging.security.logging.AuthLogMessages.AUTH0_REQUEST_FAILURE;
+import static io.mapsmessaging.security.logging.AuthLogMessages.AUTH0_USER_WITHOUT_EMAIL;
 
 public class Auth0Auth extends CachingIdentityLookup<Auth0IdentityEntry> {
 
@@ -53,6 +53,7 @@ public class Auth0Auth extends CachingIdentityLookup<Auth0IdentityEntry> {
   @Getter
   private final String auth0Domain;
 
+  @Getter
   private long cacheTime = 30000;
 
   public Auth0Auth() {
@@ -65,6 +66,17 @@ public class Auth0Auth extends CachingIdentityLookup<Auth0IdentityEntry> {
     mgmt = null;
   }
 
+  Auth0Auth(Auth0Api auth0Api, long cacheTime) {
+    auth0Domain = "";
+    clientId = "";
+    clientSecret = "";
+    apiToken = "";
+    authAPI = null;
+    mgmt = null;
+    this.auth0Api = auth0Api;
+    this.cacheTime = cacheTime;
+  }
+
   public Auth0Auth(ConfigurationProperties config) {
     auth0Domain = config.getProperty("domain");
     clientId = config.getProperty("clientId");
@@ -115,66 +127,41 @@ public class Auth0Auth extends CachingIdentityLookup<Auth0IdentityEntry> {
   @Override
   public List<IdentityEntry> getEntries() {
     loadUsers();
-    return new ArrayList<>(identityEntries);
+    return new ArrayList<>(getDirectory().getIdentityEntries());
   }
 
   @Override
   public GroupEntry findGroup(String groupName) {
-    return groupEntryMap.get(groupName);
+    return getDirectory().getGroupEntryMap().get(groupName);
   }
 
   @Override
   public List<GroupEntry> getGroups() {
-    return new ArrayList<>(groupEntryMap.values());
+    return new ArrayList<>(getDirectory().getGroupEntryMap().values());
   }
 
+  // Users log in with their email, so users without one, such as some social or phone logins, are skipped
   @Override
-  protected void loadGroups(Auth0IdentityEntry identityEntry) {
-    loadGroups();
-  }
-
-  private void loadGroups() {
-    if (auth0Api.isGroupCacheValid()) {
-      return;
-    }
-    groupEntryMap.clear();
-    try {
-      List<Role> roles = auth0Api.getGroupList();
-      for (Role role : roles) {
-        Auth0GroupEntry groupEntry = new Auth0GroupEntry(role.getName());
-
-        List<String> users = auth0Api.getUserInGroup(role.getId());
-        for (String user : users) {
-          Auth0IdentityEntry identityEntry = identityEntryMap.get(user);
-          if (identityEntry != null) {
-            groupEntry.addUser(user);
-            identityEntry.addGroup(groupEntry);
-          }
-        }
-        groupEntryMap.put(role.getName(), groupEntry);
+  protected void loadDirectory(Directory<Auth0IdentityEntry> next) throws Auth0Exception {
+    for (User user : auth0Api.getUserList()) {
+      if (user.getEmail() == null) {
+        logger.log(AUTH0_USER_WITHOUT_EMAIL, user.getId());
+        continue;
       }
-    } catch (Auth0Exception e) {
-      logger.log(AUTH0_FAILURE, e);
-    }
-  }
-
-  @Override
-  protected void loadUsers() {
-    if (auth0Api.isUserCacheValid()) {
-      return;
+      Auth0IdentityEntry entry = new Auth0IdentityEntry(this, user.getEmail());
+      next.getIdentityEntryMap().put(user.getEmail(), entry);
+      next.getIdentityEntries().add(entry);
     }
-    identityEntryMap.clear();
-    identityEntries.clear();
-    try {
-      List<User> response = auth0Api.getUserList();
-      for (User user : response) {
-        Auth0IdentityEntry entry = new Auth0IdentityEntry(this, user.getEmail());
-        identityEntryMap.put(user.getEmail(), entry);
-        identityEntries.add(entry);
+    for (Role role : auth0Api.getGroupList()) {
+      Auth0GroupEntry groupEntry = new Auth0GroupEntry(role.getName());
+      for (String user : auth0Api.getUserInGroup(role.getId())) {
+        Auth0IdentityEntry identityEntry = user != null ? next.getIdentityEntryMap().get(user) : null;
+        if (identityEntry != null) {
+          groupEntry.addUser(user);
+          identityEntry.addGroup(groupEntry);
+        }
       }
-    } catch (Exception ex) {
-      logger.log(AUTH0_FAILURE,ex);
+      next.getGroupEntryMap().put(role.getName(), groupEntry);
     }
-    loadGroups();
   }
 }
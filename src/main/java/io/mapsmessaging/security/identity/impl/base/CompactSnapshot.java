@@ -0,0 +1,203 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.base;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Immutable set of named entries held in file order, stored as the raw lines they were loaded from.
+ *
+ * <p>The lines live in a {@link StringTable} and an entry is only created from its line when it is
+ * looked up by name. It is then kept, so later lookups return the same entry. Entries reached by
+ * iterating {@link #getEntries()} are not kept, which lets callers walk every entry without pulling
+ * the whole store onto the heap as objects.
+ *
+ * <p>Changes are held in a small overlay of added, replaced and removed entries on top of the table,
+ * so a change copies the overlay rather than the store. Once the overlay grows past the square root
+ * of the table size, the table is rebuilt with the changes folded in, which keeps both the cost of a
+ * single change and the amortised cost of the rebuilds at roughly the square root of the size.
+ *
+ * <p>Like {@link EntrySnapshot}, a replaced entry keeps its position and an added one goes to the end.
+ */
+final class CompactSnapshot<T> {
+
+  private static final int MIN_OVERLAY = 64;
+
+  private final StringTable table;
+  private final Function<String, T> loader;
+  private final Function<T, String> lineOf;
+  private final AtomicReferenceArray<T> views;
+  private final Map<String, T> updates;
+  private final Set<String> removed;
+  private volatile List<T> entries;
+
+  private CompactSnapshot(StringTable table, Function<String, T> loader, Function<T, String> lineOf,
+      AtomicReferenceArray<T> views, Map<String, T> updates, Set<String> removed) {
+    this.table = table;
+    this.loader = loader;
+    this.lineOf = lineOf;
+    this.views = views;
+    this.updates = updates;
+    this.removed = removed;
+  }
+
+  static <T> CompactSnapshot<T> of(List<String> lines, Function<String, T> loader, Function<T, String> lineOf) {
+    StringTable table = StringTable.of(lines);
+    return new CompactSnapshot<>(table, loader, lineOf, new AtomicReferenceArray<>(table.size()),
+        Collections.emptyMap(), Collections.emptySet());
+  }
+
+  T get(String name) {
+    T entry = updates.get(name);
+    if (entry != null || removed.contains(name)) {
+      return entry;
+    }
+    int row = table.find(name);
+    if (row < 0) {
+      return null;
+    }
+    entry = views.get(row);
+    if (entry == null) {
+      views.compareAndSet(row, null, loader.apply(table.get(row)));
+      entry = views.get(row);
+    }
+    return entry;
+  }
+
+  boolean contains(String name) {
+    return updates.containsKey(name) || (!removed.contains(name) && table.find(name) >= 0);
+  }
+
+  /** Returns an unmodifiable view of the entries, in file order. */
+  List<T> getEntries() {
+    List<T> list = entries;
+    if (list == null) {
+      list = updates.isEmpty() && removed.isEmpty() ? new TableView() : new OverlayView();
+      entries = list;
+    }
+    return list;
+  }
+
+  /** Returns a copy of this snapshot with the removals applied, then the updates added or replaced. */
+  CompactSnapshot<T> with(Map<String, T> changes, Collection<String> removals) {
+    Map<String, T> nextUpdates = new LinkedHashMap<>(updates);
+    Set<String> nextRemoved = new HashSet<>(removed);
+    for (String name : removals) {
+      nextUpdates.remove(name);
+      if (table.find(name) >= 0) {
+        nextRemoved.add(name);
+      }
+    }
+    nextUpdates.putAll(changes);
+    CompactSnapshot<T> next = new CompactSnapshot<>(table, loader, lineOf, views, nextUpdates, nextRemoved);
+    if (nextUpdates.size() + nextRemoved.size() > Math.max(MIN_OVERLAY, Math.sqrt(table.size()))) {
+      next = next.rebuild();
+    }
+    return next;
+  }
+
+  // Folds the overlay into a new table, keeping the entries already created. Keys are unique, so rows follow the list
+  private CompactSnapshot<T> rebuild() {
+    OverlayView current = (OverlayView) getEntries();
+    List<String> lines = new ArrayList<>(current.size());
+    for (int position : current.order) {
+      lines.add(position >= 0 ? table.get(position) : lineOf.apply(current.appended.get(-position - 1)));
+    }
+    StringTable rebuilt = StringTable.of(lines);
+    AtomicReferenceArray<T> rebuiltViews = new AtomicReferenceArray<>(rebuilt.size());
+    for (int row = 0; row < rebuilt.size(); row++) {
+      int position = current.order[row];
+      rebuiltViews.set(row, position >= 0 ? views.get(position) : current.appended.get(-position - 1));
+    }
+    return new CompactSnapshot<>(rebuilt, loader, lineOf, rebuiltViews, Collections.emptyMap(), Collections.emptySet());
+  }
+
+  private T view(int row) {
+    T entry = views.get(row);
+    return entry != null ? entry : loader.apply(table.get(row));
+  }
+
+  private final class TableView extends AbstractList<T> implements RandomAccess {
+
+    @Override
+    public T get(int index) {
+      Objects.checkIndex(index, table.size());
+      return view(index);
+    }
+
+    @Override
+    public int size() {
+      return table.size();
+    }
+  }
+
+  // Positions of at least 0 are table rows, negative positions index the appended entries
+  private final class OverlayView extends AbstractList<T> implements RandomAccess {
+
+    private final int[] order;
+    private final List<T> appended;
+
+    private OverlayView() {
+      BitSet skipped = new BitSet(table.size());
+      BitSet replacedRows = new BitSet(table.size());
+      Map<Integer, T> replaced = new HashMap<>();
+      for (String name : removed) {
+        skipped.set(table.find(name));
+      }
+      List<T> added = new ArrayList<>();
+      for (Map.Entry<String, T> update : updates.entrySet()) {
+        int row = removed.contains(update.getKey()) ? -1 : table.find(update.getKey());
+        if (row >= 0) {
+          replacedRows.set(row);
+          replaced.put(row, update.getValue());
+        } else {
+          added.add(update.getValue());
+        }
+      }
+
+      appended = new ArrayList<>(replaced.size() + added.size());
+      int[] positions = new int[table.size() + added.size()];
+      int size = 0;
+      for (int row = 0; row < table.size(); row++) {
+        if (replacedRows.get(row)) {
+          appended.add(replaced.get(row));
+          positions[size++] = -appended.size();
+        } else if (!skipped.get(row)) {
+          positions[size++] = row;
+        }
+      }
+      for (T entry : added) {
+        appended.add(entry);
+        positions[size++] = -appended.size();
+      }
+      order = Arrays.copyOf(positions, size);
+    }
+
+    @Override
+    public T get(int index) {
+      int position = order[index];
+      return position >= 0 ? view(position) : appended.get(-position - 1);
+    }
+
+    @Override
+    public int size() {
+      return order.length;
+    }
+  }
+}
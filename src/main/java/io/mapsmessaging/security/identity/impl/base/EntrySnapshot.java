@@ -0,0 +1,72 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.base;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Immutable set of named entries held in file order.
+ *
+ * <p>Stores publish a snapshot through a volatile field and replace it on every change, so readers
+ * need no locking and always see a complete, consistent set of entries. The entry list is built once
+ * per snapshot and can be handed to callers without copying.
+ */
+final class EntrySnapshot<T> {
+
+  private final Map<String, T> byName;
+  private final List<T> entries;
+
+  private EntrySnapshot(Map<String, T> byName) {
+    this.byName = byName;
+    entries = List.copyOf(byName.values());
+  }
+
+  static <T> EntrySnapshot<T> empty() {
+    return new EntrySnapshot<>(new LinkedHashMap<>());
+  }
+
+  static <T> EntrySnapshot<T> of(List<T> entries, Function<T, String> nameOf) {
+    Map<String, T> map = new LinkedHashMap<>();
+    for (T entry : entries) {
+      map.put(nameOf.apply(entry), entry);
+    }
+    return new EntrySnapshot<>(map);
+  }
+
+  T get(String name) {
+    return byName.get(name);
+  }
+
+  boolean contains(String name) {
+    return byName.containsKey(name);
+  }
+
+  List<T> getEntries() {
+    return entries;
+  }
+
+  /** Returns a copy of this snapshot with the removals applied, then the updates added or replaced. */
+  EntrySnapshot<T> with(Map<String, T> updates, Collection<String> removals) {
+    Map<String, T> map = new LinkedHashMap<>(byName);
+    for (String name : removals) {
+      map.remove(name);
+    }
+    map.putAll(updates);
+    return new EntrySnapshot<>(map);
+  }
+}
@@ -21,55 +21,139 @@ import io.mapsmessaging.security.identity.IdentityEntry;
 import io.mapsmessaging.security.identity.IllegalFormatException;
 import io.mapsmessaging.security.identity.impl.apache.HtGroupEntry;
 import java.io.IOException;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
-public abstract class FileBaseGroups extends FileLoader {
+public abstract class FileBaseGroups extends FileLoader<GroupEntry> {
 
-  private final Map<String, GroupEntry> groups;
+  private volatile GroupSnapshot snapshot;
 
   protected FileBaseGroups(String filename) {
     super(filename);
-    groups = new LinkedHashMap<>();
+    snapshot = index(List.of());
   }
 
   protected abstract GroupEntry load(String line) throws IllegalFormatException;
 
-  public void parse(String line) throws IllegalFormatException {
-    GroupEntry group = load(line);
-    groups.put(group.getName(), group);
+  @Override
+  protected GroupEntry parse(String line) throws IllegalFormatException {
+    return load(line);
+  }
+
+  /**
+   * Returns a copy of the group that holds the given members in place of its own. The members share
+   * one table of usernames across the file, so overriding this keeps large groups compact. By default
+   * the group is kept as it is.
+   */
+  protected GroupEntry withMembers(GroupEntry group, Set<String> members) {
+    return group;
+  }
+
+  @Override
+  protected void replaceEntries(List<GroupEntry> entries) {
+    snapshot = index(entries);
   }
 
   public GroupEntry findGroup(String name) {
-    return groups.get(name);
+    return snapshot.groups.get(name);
   }
 
+  /**
+   * Replaces the identity's groups with those it is a member of. The groups are collected first and
+   * set in one step, so concurrent readers of a shared entry see either the old or the new groups.
+   */
   public void loadGroups(IdentityEntry identityEntry) {
-    identityEntry.clearGroups();
-    for (GroupEntry groupEntry : groups.values()) {
-      if (groupEntry.isInGroup(identityEntry.getUsername())) {
-        identityEntry.addGroup(groupEntry);
+    identityEntry.setGroups(findMemberships(identityEntry.getUsername()));
+  }
+
+  /** Returns the groups that list the user as a member, in time proportional to its memberships. */
+  public List<GroupEntry> findMemberships(String username) {
+    GroupSnapshot current = snapshot;
+    List<GroupEntry> groups = new ArrayList<>();
+    for (String groupName : current.index.groupsOf(username)) {
+      GroupEntry groupEntry = current.groups.get(groupName);
+      if (groupEntry != null) {
+        groups.add(groupEntry);
       }
     }
+    return groups;
   }
 
+  /** Returns an unmodifiable view of the current groups, in file order. */
   public List<GroupEntry> getGroups() {
-    return List.copyOf(groups.values());
+    return snapshot.groups.getEntries();
   }
 
-  public void addEntry(String groupConfig) throws IOException {
+  public synchronized void addEntry(String groupConfig) throws IOException {
     GroupEntry groupEntry = new HtGroupEntry(groupConfig);
-    groups.put(groupEntry.getName(), groupEntry);
     add(groupEntry.toString());
+    update(List.of(groupEntry), Collections.emptyList());
+  }
+
+  public synchronized void updateEntries(List<GroupEntry> updatedGroups, List<String> deletedGroups) throws IOException {
+    Map<String, String> replacements = new LinkedHashMap<>();
+    for (String groupName : deletedGroups) {
+      replacements.put(groupName, null);
+    }
+    for (GroupEntry groupEntry : updatedGroups) {
+      replacements.put(groupEntry.getName(), groupEntry.toString());
+    }
+    if (!replacements.isEmpty()) {
+      rewrite(replacements);
+      update(updatedGroups, deletedGroups);
+    }
   }
 
-  public void deleteEntry(String groupName) throws IOException {
-    GroupEntry entry = groups.get(groupName);
-    if (entry != null) {
-      groups.remove(groupName);
+  public synchronized void deleteEntry(String groupName) throws IOException {
+    if (snapshot.groups.contains(groupName)) {
       delete(groupName);
+      update(Collections.emptyList(), List.of(groupName));
     }
+  }
+
+  // Stores read-only copies, so the caller's groups can be changed again without affecting readers
+  private void update(List<GroupEntry> updatedGroups, List<String> deletedGroups) {
+    Map<String, GroupEntry> updates = new LinkedHashMap<>();
+    for (GroupEntry groupEntry : updatedGroups) {
+      updates.put(groupEntry.getName(), withMembers(groupEntry, Collections.unmodifiableSortedSet(new TreeSet<>(groupEntry.getUsers()))));
+    }
+    GroupSnapshot current = snapshot;
+    EntrySnapshot<GroupEntry> groups = current.groups.with(updates, deletedGroups);
+    GroupIndex index = current.index.with(updates.values(), deletedGroups);
+    snapshot = index.overlaySize() > GroupIndex.MAX_OVERLAY ? index(groups.getEntries()) : new GroupSnapshot(groups, index);
+  }
+
+  // Moves the members of every group into one shared table of usernames and indexes them by user
+  private GroupSnapshot index(List<GroupEntry> entries) {
+    Set<String> usernames = new TreeSet<>();
+    List<Set<String>> memberSets = new ArrayList<>(entries.size());
+    for (GroupEntry groupEntry : entries) {
+      Set<String> members = groupEntry.getUsers();
+      memberSets.add(members);
+      usernames.addAll(members);
+    }
+    StringTable names = StringTable.of(new ArrayList<>(usernames));
 
+    List<GroupEntry> compacted = new ArrayList<>(entries.size());
+    List<String> groupNames = new ArrayList<>(entries.size());
+    List<int[]> members = new ArrayList<>(entries.size());
+    for (int index = 0; index < entries.size(); index++) {
+      int[] rows = memberSets.get(index).stream().mapToInt(names::find).filter(row -> row >= 0).sorted().toArray();
+      memberSets.set(index, null);
+      GroupEntry groupEntry = entries.get(index);
+      compacted.add(withMembers(groupEntry, new MemberSet(names, rows)));
+      groupNames.add(groupEntry.getName());
+      members.add(rows);
+    }
+    return new GroupSnapshot(EntrySnapshot.of(compacted, GroupEntry::getName), GroupIndex.of(names, groupNames, members));
+  }
+
+  private static final class GroupSnapshot {
+    private final EntrySnapshot<GroupEntry> groups;
+    private final GroupIndex index;
+
+    private GroupSnapshot(EntrySnapshot<GroupEntry> groups, GroupIndex index) {
+      this.groups = groups;
+      this.index = index;
+    }
   }
-}
\ No newline at end of file
+}
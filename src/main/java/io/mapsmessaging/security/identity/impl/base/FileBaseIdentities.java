@@ -24,27 +24,28 @@ import io.mapsmessaging.security.identity.IdentityEntry;
 import io.mapsmessaging.security.identity.NoSuchUserFoundException;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
-public abstract class FileBaseIdentities extends FileLoader {
+/**
+ * Base class for password files. Entries are held compactly as their lines and only created when a
+ * user is looked up, so very large files cost little more heap than their size on disk.
+ */
+public abstract class FileBaseIdentities extends FileLoader<String> {
 
   private final Logger logger = LoggerFactory.getLogger(FileBaseIdentities.class);
-  private final Map<String, IdentityEntry> usernamePasswordMap;
+  private volatile CompactSnapshot<IdentityEntry> snapshot;
 
   protected FileBaseIdentities(String filepath) {
     super(filepath);
-    usernamePasswordMap = new LinkedHashMap<>();
+    snapshot = CompactSnapshot.of(List.of(), this::load, IdentityEntry::toString);
   }
 
   public IdentityEntry findEntry(String username) {
-    return usernamePasswordMap.get(username);
+    return snapshot.get(username);
   }
 
   public char[] getPasswordHash(String username) throws IOException, GeneralSecurityException {
-    IdentityEntry identityEntry = usernamePasswordMap.get(username);
+    IdentityEntry identityEntry = snapshot.get(username);
     if (identityEntry == null) {
       logger.log(NO_SUCH_USER_FOUND, username);
       throw new NoSuchUserFoundException("User: " + username + " not found");
@@ -52,29 +53,50 @@ public abstract class FileBaseIdentities extends FileLoader {
     return identityEntry.getPassword().toCharArray();
   }
 
+  /**
+   * Returns an unmodifiable view of the current entries, in file order. Entries that have not been
+   * looked up are created as they are read and are not retained.
+   */
   public List<IdentityEntry> getEntries() {
-    return new ArrayList<>(usernamePasswordMap.values());
+    return snapshot.getEntries();
   }
 
   protected abstract IdentityEntry load(String line);
 
   protected abstract IdentityEntry create(String username, String hash);
-  public void parse(String line) {
-    IdentityEntry identityEntry = load(line);
-    usernamePasswordMap.put(identityEntry.getUsername(), identityEntry);
+
+  // Lines are parsed once to reject malformed entries, but only the line is kept
+  @Override
+  protected String parse(String line) {
+    load(line);
+    return line;
+  }
+
+  @Override
+  protected void replaceEntries(List<String> lines) {
+    snapshot = CompactSnapshot.of(lines, this::load, IdentityEntry::toString);
   }
 
-  public void addEntry(String username, String passwordHash) throws IOException {
-    IdentityEntry identityEntry = create(username, passwordHash);
-    usernamePasswordMap.put(username, identityEntry);
-    add(identityEntry.toString());
+  public synchronized void addEntry(String username, String passwordHash) throws IOException {
+    addEntries(Collections.singletonMap(username, passwordHash));
+  }
+
+  public synchronized void addEntries(Map<String, String> usernameHashes) throws IOException {
+    Map<String, IdentityEntry> updates = new LinkedHashMap<>();
+    List<String> lines = new ArrayList<>(usernameHashes.size());
+    for (Map.Entry<String, String> entry : usernameHashes.entrySet()) {
+      IdentityEntry identityEntry = create(entry.getKey(), entry.getValue());
+      updates.put(entry.getKey(), identityEntry);
+      lines.add(identityEntry.toString());
+    }
+    add(lines);
+    snapshot = snapshot.with(updates, Collections.emptyList());
   }
 
-  public void deleteEntry(String username) throws IOException {
-    IdentityEntry entry = usernamePasswordMap.get(username);
-    if (entry != null) {
-      usernamePasswordMap.remove(username);
+  public synchronized void deleteEntry(String username) throws IOException {
+    if (snapshot.contains(username)) {
       delete(username);
+      snapshot = snapshot.with(Collections.emptyMap(), Collections.singletonList(username));
     }
   }
 }
@@ -0,0 +1,201 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.base;
+
+import static io.mapsmessaging.security.logging.AuthLogMessages.FILE_RELOAD_FAILURE;
+import static io.mapsmessaging.security.logging.AuthLogMessages.FILE_WATCH_FAILURE;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import io.mapsmessaging.logging.Logger;
+import io.mapsmessaging.logging.LoggerFactory;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads file based identity stores when their files change on disk.
+ *
+ * <p>A single daemon thread watches the directories of every registered file. Bursts of change
+ * events for a file are collapsed into one reload once the file has been quiet for the debounce
+ * time. Since watch services can miss changes, for example on network file systems, every file is
+ * also checked for a new modification time or size at the poll interval. Reloads run on this thread
+ * and are published by the loader in a single step, so readers keep using the previous entries until
+ * the new ones are complete.
+ *
+ * <p>The debounce time and poll interval, in milliseconds, are read from the
+ * {@code FILE_RELOAD_DEBOUNCE} and {@code FILE_RELOAD_INTERVAL} system properties. A poll interval of
+ * 0 disables polling. Loaders are held weakly and are dropped once no longer referenced.
+ */
+final class FileChangeMonitor implements Runnable {
+
+  private static class Holder {
+    static final FileChangeMonitor INSTANCE = new FileChangeMonitor();
+  }
+
+  static FileChangeMonitor getInstance() {
+    return Holder.INSTANCE;
+  }
+
+  private final Logger logger = LoggerFactory.getLogger(FileChangeMonitor.class);
+  private final long debounceTime;
+  private final long pollInterval;
+  private final WatchService watchService;
+  private final Map<Path, List<WeakReference<FileLoader<?>>>> loaders;
+  private final Set<Path> watchedDirectories;
+  private final Map<Path, Long> pending;
+  private Thread thread;
+
+  private FileChangeMonitor() {
+    debounceTime = Math.max(0, getLongProperty("FILE_RELOAD_DEBOUNCE", 250));
+    pollInterval = Math.max(0, getLongProperty("FILE_RELOAD_INTERVAL", 10000));
+    loaders = new ConcurrentHashMap<>();
+    watchedDirectories = ConcurrentHashMap.newKeySet();
+    pending = new HashMap<>();
+    WatchService service = null;
+    try {
+      service = FileSystems.getDefault().newWatchService();
+    } catch (IOException | UnsupportedOperationException e) {
+      logger.log(FILE_WATCH_FAILURE, FileSystems.getDefault().toString(), e);
+    }
+    watchService = service;
+  }
+
+  void watch(FileLoader<?> loader, File file) {
+    Path path = file.toPath().toAbsolutePath().normalize();
+    Path directory = path.getParent();
+    if (directory == null || !Files.isDirectory(directory)) {
+      return;
+    }
+    loaders.computeIfAbsent(path, key -> new CopyOnWriteArrayList<>()).add(new WeakReference<>(loader));
+    if (watchService != null && watchedDirectories.add(directory)) {
+      try {
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+      } catch (IOException | UnsupportedOperationException e) {
+        logger.log(FILE_WATCH_FAILURE, directory.toString(), e);
+      }
+    }
+    start();
+  }
+
+  private synchronized void start() {
+    if (thread == null && (watchService != null || pollInterval > 0)) {
+      thread = new Thread(this, "identity-file-monitor");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  @Override
+  public void run() {
+    long nextPoll = System.currentTimeMillis() + pollInterval;
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        long now = System.currentTimeMillis();
+        long wait = pollInterval > 0 ? Math.max(1, nextPoll - now) : TimeUnit.MINUTES.toMillis(1);
+        for (long deadline : pending.values()) {
+          wait = Math.max(1, Math.min(wait, deadline - now));
+        }
+        if (watchService != null) {
+          WatchKey key = watchService.poll(wait, TimeUnit.MILLISECONDS);
+          if (key != null) {
+            processEvents(key);
+          }
+        } else {
+          Thread.sleep(wait);
+        }
+
+        now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, Long>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+          Map.Entry<Path, Long> entry = iterator.next();
+          if (entry.getValue() <= now) {
+            iterator.remove();
+            reload(entry.getKey());
+          }
+        }
+        if (pollInterval > 0 && now >= nextPoll) {
+          for (Path path : loaders.keySet()) {
+            reload(path);
+          }
+          nextPoll = now + pollInterval;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ClosedWatchServiceException e) {
+        return;
+      }
+    }
+  }
+
+  private void processEvents(WatchKey key) {
+    Path directory = (Path) key.watchable();
+    long deadline = System.currentTimeMillis() + debounceTime;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == OVERFLOW) {
+        for (Path path : loaders.keySet()) {
+          if (directory.equals(path.getParent())) {
+            pending.put(path, deadline);
+          }
+        }
+      } else {
+        Path path = directory.resolve((Path) event.context());
+        if (loaders.containsKey(path)) {
+          pending.put(path, deadline);
+        }
+      }
+    }
+    key.reset();
+  }
+
+  private void reload(Path path) {
+    List<WeakReference<FileLoader<?>>> references = loaders.get(path);
+    if (references == null) {
+      return;
+    }
+    for (WeakReference<FileLoader<?>> reference : references) {
+      FileLoader<?> loader = reference.get();
+      if (loader == null) {
+        references.remove(reference);
+      } else {
+        try {
+          loader.load();
+        } catch (RuntimeException | Error e) {
+          // Errors are caught too, since this thread reloads every file and must outlive a bad one
+          logger.log(FILE_RELOAD_FAILURE, path.toString(), e);
+        }
+      }
+    }
+    loaders.computeIfPresent(path, (key, value) -> value.isEmpty() ? null : value);
+  }
+
+  static long getLongProperty(String name, long defaultValue) {
+    String value = System.getProperty(name);
+    if (value != null) {
+      try {
+        return Long.parseLong(value.trim());
+      } catch (NumberFormatException e) {
+        // ignore
+      }
+    }
+    return defaultValue;
+  }
+}
@@ -20,85 +20,333 @@ import static io.mapsmessaging.security.logging.AuthLogMessages.*;
 
 import io.mapsmessaging.logging.Logger;
 import io.mapsmessaging.logging.LoggerFactory;
+import io.mapsmessaging.security.events.IdentityChangeEvent;
+import io.mapsmessaging.security.events.IdentityEventBus;
 import io.mapsmessaging.security.identity.IllegalFormatException;
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Function;
+import lombok.Getter;
 
-public abstract class FileLoader {
+/**
+ * Base class for identity stores held in a text file of {@code name:...} lines.
+ *
+ * <p>New entries are appended to the file. Updates and deletes are appended to a change journal
+ * alongside it, {@code <file>.journal}, as replacement lines and tombstones, so the cost of a change
+ * is proportional to the change rather than to the file. Loading applies the journal on top of the
+ * file, and the journal is periodically compacted into a new copy of the file that atomically replaces
+ * the original, so there is never a moment without a file. The journal records the size and
+ * modification time of the file it was started against. If the file is changed by something else in
+ * the meantime, an error is logged and the journal is still applied, so journalled deletes are never
+ * undone, and it is folded into the changed file before any further changes are journalled.
+ */
+public abstract class FileLoader<T> {
+
+  private static final String JOURNAL_SUFFIX = ".journal";
+  private static final char HEADER = '#';
+  private static final char UPSERT = '+';
+  private static final char TOMBSTONE = '-';
 
   private final Logger logger = LoggerFactory.getLogger(FileLoader.class);
+  @Getter
   private final String filePath;
   private final File file;
+  private final File journal;
+  private int journalRecords;
   private long lastModified;
+  private long lastSize;
+  private long lastJournalModified;
+  private long lastJournalSize;
+  private boolean watching;
+  private ScheduledFuture<?> compaction;
 
   protected FileLoader(String filepath) {
     filePath = filepath;
     file = new File(filePath);
+    journal = new File(filePath + JOURNAL_SUFFIX);
     lastModified = 0;
+    lastSize = 0;
   }
 
-  protected abstract void parse(String line) throws IllegalFormatException;
+  /**
+   * Converts a single line of the file into an entry. Large files are parsed on several threads at
+   * once, so implementations must not modify the loader.
+   */
+  protected abstract T parse(String line) throws IllegalFormatException;
 
-  public void load() {
+  /**
+   * Replaces the loader's entries with those of a freshly parsed file, in file order. The new state
+   * must be built aside and published in a single write so that readers never see a partial load.
+   */
+  protected abstract void replaceEntries(List<T> entries);
+
+  /**
+   * Loads the file if its, or its journal's, modification time or size has changed since it was last
+   * loaded or written by this loader. The first call also registers the file for automatic reloading
+   * when it changes.
+   */
+  public synchronized void load() {
     logger.log(CHECKING_PASSWORD_STORE, filePath);
-    if (file.exists() && lastModified != file.lastModified()) {
+    if (file.exists() && hasChanged()) {
       logger.log(PASSWORD_FILE_CHANGE_DETECTED, filePath);
-      lastModified = file.lastModified();
-      int lineNo = 0;
-      try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-        String line = reader.readLine();
-        lineNo++;
-        while (line != null) {
-          parse(line);
-          line = reader.readLine();
+      boolean reload = lastModified != 0;
+      recordFileState();
+      MappedFileParser<Line<T>> parser = new MappedFileParser<>(line -> new Line<>(nameOf(line), parse(line)),
+          (lineNo, cause) -> logger.log(PASSWORD_FILE_PARSE_FAILURE, filePath, lineNo, cause));
+      try {
+        List<Line<T>> lines = parser.parse(file);
+        Map<String, String> journalled = readJournal();
+        List<T> entries = new ArrayList<>(lines.size());
+        for (Line<T> line : merge(lines, Line::getName, journalled, this::parseJournalled)) {
+          entries.add(line.entry);
+        }
+        replaceEntries(entries);
+        if (reload) {
+          IdentityEventBus.getInstance().publish(IdentityChangeEvent.reloaded(filePath));
         }
       } catch (IOException e) {
-        logger.log(PASSWORD_FILE_LOAD_EXCEPTION, filePath, lineNo, e);
+        logger.log(PASSWORD_FILE_READ_FAILURE, filePath, e);
       }
     }
+    if (!watching && !filePath.isEmpty()) {
+      watching = true;
+      FileChangeMonitor.getInstance().watch(this, file);
+      FileChangeMonitor.getInstance().watch(this, journal);
+    }
+  }
+
+  private boolean hasChanged() {
+    return lastModified != file.lastModified()
+        || lastSize != file.length()
+        || lastJournalModified != journal.lastModified()
+        || lastJournalSize != journal.length();
+  }
+
+  // Our own writes are already reflected in memory, so they must not trigger a reload
+  private void recordFileState() {
+    lastModified = file.lastModified();
+    lastSize = file.length();
+    lastJournalModified = journal.lastModified();
+    lastJournalSize = journal.length();
   }
 
   protected void add(String line) throws IOException {
-    if (!file.exists() && !file.createNewFile()) {
-      logger.log(FAILED_TO_CREATE_FILE, file.getAbsolutePath());
-      throw new IOException("Unable to create new file " + file.getAbsolutePath());
-    }
+    add(List.of(line));
+  }
 
+  protected synchronized void add(List<String> lines) throws IOException {
+    createFile();
+    if (journal.exists()) {
+      // The file must not change under an open journal, and later lines win just as they do when appended
+      Map<String, String> upserts = new LinkedHashMap<>();
+      for (String line : lines) {
+        upserts.put(nameOf(line), line);
+      }
+      appendJournal(upserts);
+      return;
+    }
     try (BufferedWriter bw = new BufferedWriter(new FileWriter(file, true))) {
-      bw.write(line);
-      bw.newLine(); // Add a newline character after each line
+      for (String line : lines) {
+        bw.write(line);
+        bw.newLine(); // Add a newline character after each line
+      }
     }
+    recordFileState();
   }
 
   protected void delete(String name) throws IOException {
+    rewrite(Collections.singletonMap(name, null));
+  }
+
+  /**
+   * Replaces each line whose name (the text before the first ':') is a key in the map with the mapped
+   * line. A null value removes the line, and replacements with no existing line are appended. The
+   * changes are written to the journal and reach the file itself when the journal is compacted.
+   */
+  protected synchronized void rewrite(Map<String, String> replacements) throws IOException {
+    if (replacements.isEmpty()) {
+      return;
+    }
+    createFile();
+    appendJournal(replacements);
+  }
+
+  /** Folds any journalled changes into the file, replacing it atomically, and removes the journal. */
+  public synchronized void compact() throws IOException {
+    if (compaction != null) {
+      compaction.cancel(false);
+      compaction = null;
+    }
+    Map<String, String> journalled = readJournal();
+    if (journalled.isEmpty()) {
+      return;
+    }
+    List<String> lines = new ArrayList<>();
+    if (file.exists()) {
+      try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          lines.add(line);
+        }
+      }
+    }
     File tempFile = new File(file.getAbsolutePath() + ".tmp");
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
+      for (String line : merge(lines, FileLoader::nameOf, journalled, Function.identity())) {
+        writer.write(line);
+        writer.newLine();
+      }
+    }
+    try {
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      logger.log(FAILED_TO_RENAME_FILE, tempFile.getAbsolutePath(), file.getAbsolutePath());
+      throw e;
+    }
+    // The file now holds every journalled change and replaying them leaves it unchanged, so a journal
+    // that cannot be deleted here loses nothing
+    journalRecords = 0;
+    try {
+      Files.deleteIfExists(journal.toPath());
+    } catch (IOException e) {
+      logger.log(FAILED_TO_DELETE_FILE, journal.getAbsolutePath());
+    }
+    recordFileState();
+  }
 
-    try (BufferedReader reader = new BufferedReader(new FileReader(file));
-         BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
+  private void createFile() throws IOException {
+    if (!file.exists() && !file.createNewFile()) {
+      logger.log(FAILED_TO_CREATE_FILE, file.getAbsolutePath());
+      throw new IOException("Unable to create new file " + file.getAbsolutePath());
+    }
+  }
 
-      String lineToRemove = name + ":";
-      String currentLine;
+  private void appendJournal(Map<String, String> changes) throws IOException {
+    if (journal.exists() && !isJournalCurrent()) {
+      // Starting a new journal would truncate this one, so its changes are folded into the file first
+      compact();
+    }
+    boolean start = !journal.exists();
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(journal, !start))) {
+      if (start) {
+        writer.write(HEADER + fileSignature());
+        writer.newLine();
+      }
+      for (Map.Entry<String, String> change : changes.entrySet()) {
+        writer.write(change.getValue() != null ? UPSERT + change.getValue() : TOMBSTONE + change.getKey());
+        writer.newLine();
+      }
+    }
+    journalRecords = (start ? 0 : journalRecords) + changes.size();
+    recordFileState();
+    JournalCompactor compactor = JournalCompactor.getInstance();
+    if (compactor.isImmediate()) {
+      compact();
+    } else {
+      compaction = compactor.schedule(this, journalRecords, compaction);
+    }
+  }
 
-      while ((currentLine = reader.readLine()) != null) {
-        if (!currentLine.startsWith(lineToRemove)) {
-          writer.write(currentLine + System.lineSeparator());
+  // Reads the journal from disk so a loader never replays changes another loader of the file has compacted
+  // or superseded. A journal written against another version of the file is still applied, since
+  // dropping it would bring back deleted entries
+  private Map<String, String> readJournal() throws IOException {
+    Map<String, String> journalled = new LinkedHashMap<>();
+    if (!journal.exists()) {
+      return journalled;
+    }
+    try (BufferedReader reader = new BufferedReader(new FileReader(journal))) {
+      String header = reader.readLine();
+      if (header == null || !header.equals(HEADER + fileSignature())) {
+        logger.log(FILE_JOURNAL_MISMATCH, journal.getAbsolutePath());
+      }
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.length() > 1 && line.charAt(0) == UPSERT) {
+          journalled.put(nameOf(line.substring(1)), line.substring(1));
+        } else if (line.length() > 1 && line.charAt(0) == TOMBSTONE) {
+          journalled.put(line.substring(1), null);
         }
       }
     }
+    return journalled;
+  }
+
+  private boolean isJournalCurrent() throws IOException {
+    if (!journal.exists()) {
+      return false;
+    }
+    try (BufferedReader reader = new BufferedReader(new FileReader(journal))) {
+      return (HEADER + fileSignature()).equals(reader.readLine());
+    }
+  }
 
-    Path path = Paths.get(file.getAbsolutePath());
+  private String fileSignature() {
+    return file.length() + ":" + file.lastModified();
+  }
+
+  private Line<T> parseJournalled(String line) {
     try {
-      Files.delete(path);
-    } catch (IOException e) {
-      logger.log(FAILED_TO_DELETE_FILE, path.toAbsolutePath().toString());
-      throw new IOException("Could not delete original file: " + e.getMessage(), e);
+      return new Line<>(nameOf(line), parse(line));
+    } catch (IllegalFormatException | RuntimeException e) {
+      logger.log(PASSWORD_FILE_PARSE_FAILURE, journal.getPath(), 0, e);
+      return null;
     }
+  }
 
-    if (!tempFile.renameTo(file)) {
-      logger.log(FAILED_TO_RENAME_FILE, tempFile.getAbsolutePath(), file.getAbsolutePath());
-      throw new IOException("Could not rename temporary file");
+  // Applies the journalled changes to the lines of the file, keeping replaced lines in place
+  private static <L> List<L> merge(List<L> lines, Function<L, String> name, Map<String, String> journalled,
+      Function<String, L> fromJournal) {
+    if (journalled.isEmpty()) {
+      return lines;
+    }
+    Map<String, String> remaining = new LinkedHashMap<>(journalled);
+    List<L> merged = new ArrayList<>(lines.size() + remaining.size());
+    for (L line : lines) {
+      String key = name.apply(line);
+      if (key == null || !journalled.containsKey(key)) {
+        merged.add(line);
+      } else if (remaining.containsKey(key)) {
+        addJournalled(merged, remaining.remove(key), fromJournal);
+      }
+    }
+    for (String line : remaining.values()) {
+      addJournalled(merged, line, fromJournal);
+    }
+    return merged;
+  }
+
+  private static <L> void addJournalled(List<L> merged, String line, Function<String, L> fromJournal) {
+    if (line != null) {
+      L entry = fromJournal.apply(line);
+      if (entry != null) {
+        merged.add(entry);
+      }
+    }
+  }
+
+  private static String nameOf(String line) {
+    int index = line.indexOf(':');
+    return index >= 0 ? line.substring(0, index) : null;
+  }
+
+  private static final class Line<T> {
+    private final String name;
+    private final T entry;
+
+    private Line(String name, T entry) {
+      this.name = name;
+      this.entry = entry;
+    }
+
+    private String getName() {
+      return name;
     }
   }
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.base;
+
+import io.mapsmessaging.security.identity.GroupEntry;
+import java.util.*;
+
+/**
+ * Immutable index from username to the names of the groups the user is a member of.
+ *
+ * <p>Memberships are held against the row numbers of the {@link StringTable} of usernames that the
+ * group members share, as one flat array of group numbers with an offset into it for each user.
+ * Groups changed since the index was built are kept in an overlay of their read-only entries and
+ * checked directly, so a change costs no more than copying the overlay. The owner rebuilds the index
+ * once the overlay grows.
+ */
+final class GroupIndex {
+
+  static final int MAX_OVERLAY = 64;
+
+  private final StringTable names;
+  private final String[] groupNames;
+  private final int[] offsets;
+  private final int[] groups;
+  private final Map<String, GroupEntry> changed;
+
+  private GroupIndex(StringTable names, String[] groupNames, int[] offsets, int[] groups, Map<String, GroupEntry> changed) {
+    this.names = names;
+    this.groupNames = groupNames;
+    this.offsets = offsets;
+    this.groups = groups;
+    this.changed = changed;
+  }
+
+  /** Builds an index of the given groups, whose members are the listed rows of the name table. */
+  static GroupIndex of(StringTable names, List<String> groupNames, List<int[]> members) {
+    int[] offsets = new int[names.size() + 1];
+    for (int[] rows : members) {
+      for (int row : rows) {
+        offsets[row + 1]++;
+      }
+    }
+    for (int row = 0; row < names.size(); row++) {
+      offsets[row + 1] += offsets[row];
+    }
+    int[] next = Arrays.copyOf(offsets, names.size());
+    int[] groups = new int[offsets[names.size()]];
+    for (int group = 0; group < members.size(); group++) {
+      for (int row : members.get(group)) {
+        groups[next[row]++] = group;
+      }
+    }
+    return new GroupIndex(names, groupNames.toArray(new String[0]), offsets, groups, Collections.emptyMap());
+  }
+
+  List<String> groupsOf(String username) {
+    List<String> result = new ArrayList<>();
+    int row = names.find(username);
+    if (row >= 0) {
+      for (int index = offsets[row]; index < offsets[row + 1]; index++) {
+        String name = groupNames[groups[index]];
+        if (!changed.containsKey(name)) {
+          result.add(name);
+        }
+      }
+    }
+    for (Map.Entry<String, GroupEntry> entry : changed.entrySet()) {
+      if (entry.getValue() != null && entry.getValue().isInGroup(username)) {
+        result.add(entry.getKey());
+      }
+    }
+    return result;
+  }
+
+  int overlaySize() {
+    return changed.size();
+  }
+
+  /** Returns a copy of this index with the removed groups dropped and the updated groups re-indexed. */
+  GroupIndex with(Collection<GroupEntry> updated, Collection<String> removed) {
+    Map<String, GroupEntry> next = new HashMap<>(changed);
+    for (String groupName : removed) {
+      next.put(groupName, null);
+    }
+    for (GroupEntry group : updated) {
+      next.put(group.getName(), group);
+    }
+    return new GroupIndex(names, groupNames, offsets, groups, next);
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.base;
+
+import static io.mapsmessaging.security.logging.AuthLogMessages.FILE_JOURNAL_COMPACTION_FAILURE;
+
+import io.mapsmessaging.logging.Logger;
+import io.mapsmessaging.logging.LoggerFactory;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Folds the change journals of file based identity stores back into their files in the background.
+ *
+ * <p>A journal is compacted once it is older than the compaction delay, or as soon as it holds the
+ * maximum number of records. Both are read from the {@code FILE_JOURNAL_COMPACT_DELAY} (milliseconds)
+ * and {@code FILE_JOURNAL_COMPACT_SIZE} system properties. A delay of 0 compacts after every change.
+ * A failed compaction leaves the journal in place and is retried after the delay.
+ */
+final class JournalCompactor {
+
+  private static class Holder {
+    static final JournalCompactor INSTANCE = new JournalCompactor();
+  }
+
+  static JournalCompactor getInstance() {
+    return Holder.INSTANCE;
+  }
+
+  private final Logger logger = LoggerFactory.getLogger(JournalCompactor.class);
+  private final long delay;
+  private final long maxRecords;
+  private final ScheduledExecutorService scheduler;
+
+  private JournalCompactor() {
+    delay = Math.max(0, FileChangeMonitor.getLongProperty("FILE_JOURNAL_COMPACT_DELAY", 5000));
+    maxRecords = Math.max(1, FileChangeMonitor.getLongProperty("FILE_JOURNAL_COMPACT_SIZE", 1000));
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "identity-file-compactor");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  boolean isImmediate() {
+    return delay == 0;
+  }
+
+  /**
+   * Returns the compaction to keep for a journal of the given size, replacing the current one if
+   * there is none or if the journal has grown too large to wait for it.
+   */
+  ScheduledFuture<?> schedule(FileLoader<?> loader, int records, ScheduledFuture<?> current) {
+    if (records >= maxRecords) {
+      if (current != null && current.getDelay(TimeUnit.MILLISECONDS) > 0 && current.cancel(false)) {
+        current = null;
+      }
+      if (current == null || current.isDone()) {
+        return scheduler.schedule(() -> compact(loader), 0, TimeUnit.MILLISECONDS);
+      }
+      return current;
+    }
+    if (current == null || current.isDone()) {
+      return scheduler.schedule(() -> compact(loader), delay, TimeUnit.MILLISECONDS);
+    }
+    return current;
+  }
+
+  private void compact(FileLoader<?> loader) {
+    try {
+      loader.compact();
+    } catch (IOException | RuntimeException e) {
+      logger.log(FILE_JOURNAL_COMPACTION_FAILURE, loader.getFilePath(), e);
+      scheduler.schedule(() -> compact(loader), Math.max(delay, 1000), TimeUnit.MILLISECONDS);
+    }
+  }
+}
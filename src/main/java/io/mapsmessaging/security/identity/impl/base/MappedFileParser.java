@@ -0,0 +1,265 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.base;
+
+import io.mapsmessaging.security.identity.IllegalFormatException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parses a line based file by splitting it into chunks at line boundaries and parsing the chunks in
+ * parallel on the common fork join pool. Entries are returned in file order.
+ *
+ * <p>Files up to {@link #MAP_THRESHOLD} bytes are read into the heap. Larger ones are memory mapped,
+ * and the mapping is released as soon as parsing is done, since while it exists some platforms do not
+ * allow the file to be replaced, which the journal compaction and external rewrites rely on. Should a
+ * mapped file be truncated by another process, it is read into memory and parsed from there instead.
+ *
+ * <p>Blank lines are skipped. Lines that fail to parse are skipped and passed to the malformed line
+ * handler, in file order, with their 1-based line number once every chunk has been parsed.
+ */
+final class MappedFileParser<T> {
+
+  private static final int MIN_CHUNK_SIZE = 256 * 1024;
+  private static final int CHUNKS_PER_THREAD = 4;
+  static final long MAP_THRESHOLD = 64L * 1024 * 1024;
+
+  @FunctionalInterface
+  interface LineParser<T> {
+    T parse(String line) throws IllegalFormatException;
+  }
+
+  @FunctionalInterface
+  interface MalformedLineHandler {
+    void malformed(int lineNumber, Exception cause);
+  }
+
+  private final LineParser<T> lineParser;
+  private final MalformedLineHandler malformedLineHandler;
+  private final Charset charset;
+  private final long mapThreshold;
+
+  MappedFileParser(LineParser<T> lineParser, MalformedLineHandler malformedLineHandler) {
+    this(lineParser, malformedLineHandler, MAP_THRESHOLD);
+  }
+
+  MappedFileParser(LineParser<T> lineParser, MalformedLineHandler malformedLineHandler, long mapThreshold) {
+    this.lineParser = lineParser;
+    this.malformedLineHandler = malformedLineHandler;
+    this.mapThreshold = mapThreshold;
+    charset = Charset.defaultCharset();
+  }
+
+  List<T> parse(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size == 0) {
+        return new ArrayList<>();
+      }
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("File " + file.getAbsolutePath() + " is too large to load");
+      }
+      if (size <= mapThreshold) {
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        // A file truncated meanwhile ends early, and only what was read is parsed
+        int read = 0;
+        while (buffer.hasRemaining() && read >= 0) {
+          read = channel.read(buffer);
+        }
+        return parse(buffer, buffer.position());
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      try {
+        return parse(buffer, (int) size);
+      } catch (InternalError e) {
+        // The file was truncated while mapped, which faults the read, so it is read into memory instead
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        return parse(ByteBuffer.wrap(bytes), bytes.length);
+      } finally {
+        Unmapper.unmap(buffer);
+      }
+    }
+  }
+
+  private List<T> parse(ByteBuffer buffer, int size) {
+    if (size == 0) {
+      return new ArrayList<>();
+    }
+    int[] bounds = split(buffer, size);
+    List<Chunk<T>> chunks = new ArrayList<>(bounds.length - 1);
+    if (bounds.length == 2) {
+      chunks.add(parseChunk(buffer, 0, size));
+    } else {
+      List<ForkJoinTask<Chunk<T>>> tasks = new ArrayList<>(bounds.length - 1);
+      for (int x = 0; x < bounds.length - 1; x++) {
+        int start = bounds[x];
+        int end = bounds[x + 1];
+        tasks.add(ForkJoinPool.commonPool().submit(() -> parseChunk(buffer, start, end)));
+      }
+      // Every task is waited for, even after one fails, so none is still reading once the buffer is unmapped
+      Throwable failure = null;
+      for (ForkJoinTask<Chunk<T>> task : tasks) {
+        try {
+          chunks.add(task.join());
+        } catch (RuntimeException | Error e) {
+          if (failure == null) {
+            failure = e;
+          }
+        }
+      }
+      if (failure instanceof Error) {
+        throw (Error) failure;
+      }
+      if (failure != null) {
+        throw (RuntimeException) failure;
+      }
+    }
+    return merge(chunks);
+  }
+
+  // Returns the chunk boundaries, each one the start of a line, with the file size as the last entry
+  private static int[] split(ByteBuffer buffer, int size) {
+    int parallelism = ForkJoinPool.commonPool().getParallelism() * CHUNKS_PER_THREAD;
+    int chunkCount = Math.max(1, Math.min(size / MIN_CHUNK_SIZE, parallelism));
+    int[] bounds = new int[chunkCount + 1];
+    bounds[chunkCount] = size;
+    for (int x = 1; x < chunkCount; x++) {
+      int position = Math.max(bounds[x - 1], (int) ((long) size * x / chunkCount));
+      while (position < size && position > 0 && buffer.get(position - 1) != '\n') {
+        position++;
+      }
+      bounds[x] = position;
+    }
+    return bounds;
+  }
+
+  private Chunk<T> parseChunk(ByteBuffer buffer, int start, int end) {
+    byte[] bytes = new byte[end - start];
+    ByteBuffer view = buffer.duplicate();
+    view.position(start);
+    view.get(bytes);
+
+    Chunk<T> chunk = new Chunk<>();
+    int lineStart = 0;
+    for (int x = 0; x <= bytes.length; x++) {
+      if (x == bytes.length && lineStart == x) {
+        break;
+      }
+      if (x == bytes.length || bytes[x] == '\n') {
+        chunk.lines++;
+        int lineEnd = x;
+        if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r') {
+          lineEnd--;
+        }
+        String line = new String(bytes, lineStart, lineEnd - lineStart, charset);
+        if (!line.trim().isEmpty()) {
+          parseLine(chunk, line);
+        }
+        lineStart = x + 1;
+      }
+    }
+    return chunk;
+  }
+
+  private void parseLine(Chunk<T> chunk, String line) {
+    try {
+      chunk.entries.add(lineParser.parse(line));
+    } catch (IllegalFormatException | RuntimeException e) {
+      chunk.failures.add(new Failure(chunk.lines, e));
+    }
+  }
+
+  private List<T> merge(List<Chunk<T>> chunks) {
+    int total = 0;
+    for (Chunk<T> chunk : chunks) {
+      total += chunk.entries.size();
+    }
+    List<T> entries = new ArrayList<>(total);
+    int lineOffset = 0;
+    for (Chunk<T> chunk : chunks) {
+      entries.addAll(chunk.entries);
+      for (Failure failure : chunk.failures) {
+        malformedLineHandler.malformed(lineOffset + failure.line, failure.cause);
+      }
+      lineOffset += chunk.lines;
+    }
+    return entries;
+  }
+
+  // Releases a mapping without waiting for the buffer to be garbage collected, where the JVM allows it
+  private static final class Unmapper {
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+      Object unsafe = null;
+      Method invokeCleaner = null;
+      try {
+        Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+        Field field = unsafeClass.getDeclaredField("theUnsafe");
+        field.setAccessible(true);
+        unsafe = field.get(null);
+        invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        // Not available, mappings are then released when the buffer is collected
+      }
+      UNSAFE = unsafe;
+      INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private Unmapper() {
+    }
+
+    static void unmap(MappedByteBuffer buffer) {
+      if (INVOKE_CLEANER != null) {
+        try {
+          INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+          // Left to the garbage collector
+        }
+      }
+    }
+  }
+
+  private static final class Chunk<T> {
+    private final List<T> entries = new ArrayList<>();
+    private final List<Failure> failures = new ArrayList<>();
+    private int lines;
+  }
+
+  private static final class Failure {
+    private final int line;
+    private final Exception cause;
+
+    private Failure(int line, Exception cause) {
+      this.line = line;
+      this.cause = cause;
+    }
+  }
+}
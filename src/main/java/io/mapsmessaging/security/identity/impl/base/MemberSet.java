@@ -0,0 +1,71 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.base;
+
+import java.util.*;
+
+/**
+ * Group member set held as sorted row numbers into a {@link StringTable} of usernames shared by every
+ * group in a file, so each username is stored once however many groups it belongs to.
+ *
+ * <p>The table rows are in name order, so iteration matches the {@link TreeSet} that groups normally
+ * use. The set is read-only; a group is changed through a {@code GroupEntry.copy()} of it.
+ */
+final class MemberSet extends AbstractSet<String> {
+
+  private final StringTable names;
+  private final int[] rows;
+
+  MemberSet(StringTable names, int[] rows) {
+    this.names = names;
+    this.rows = rows;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    if (!(o instanceof String)) {
+      return false;
+    }
+    int row = names.find((String) o);
+    return row >= 0 && Arrays.binarySearch(rows, row) >= 0;
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return new Iterator<>() {
+      private int index;
+
+      @Override
+      public boolean hasNext() {
+        return index < rows.length;
+      }
+
+      @Override
+      public String next() {
+        if (index >= rows.length) {
+          throw new NoSuchElementException();
+        }
+        return names.get(rows[index++]);
+      }
+    };
+  }
+
+  @Override
+  public int size() {
+    return rows.length;
+  }
+}
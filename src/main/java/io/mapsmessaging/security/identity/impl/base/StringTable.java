@@ -0,0 +1,140 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.base;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Immutable table of strings packed as UTF-8 into a single byte array.
+ *
+ * <p>Each row is keyed by the text before its first ':', or by the whole string if it has none, and
+ * can be found by key through an open addressing hash index. A table of a million short strings
+ * costs a few tens of megabytes rather than the hundreds taken by as many {@link String} objects and
+ * map entries. Rows are decoded each time they are read, so callers that read a row repeatedly should
+ * keep the result.
+ */
+final class StringTable {
+
+  private static final StringTable EMPTY = of(List.of());
+
+  private final byte[] arena;
+  private final int[] offsets;
+  private final int[] keyLengths;
+  private final int[] hashes;
+  private final int[] slots;
+
+  private StringTable(byte[] arena, int[] offsets, int[] keyLengths, int[] hashes) {
+    this.arena = arena;
+    this.offsets = offsets;
+    this.keyLengths = keyLengths;
+    this.hashes = hashes;
+    int rows = hashes.length;
+    int capacity = Integer.highestOneBit(Math.max(4, rows * 2 - 1)) << 1;
+    slots = new int[capacity];
+    for (int row = 0; row < rows; row++) {
+      int slot = hashes[row] & (capacity - 1);
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & (capacity - 1);
+      }
+      slots[slot] = row + 1;
+    }
+  }
+
+  static StringTable empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Builds a table of the values in order. A value whose key has already been seen replaces the
+   * earlier value in its position.
+   */
+  static StringTable of(List<String> values) {
+    Map<String, Integer> positions = new HashMap<>();
+    List<String> rows = new ArrayList<>(values.size());
+    for (String value : values) {
+      Integer position = positions.putIfAbsent(keyOf(value), rows.size());
+      if (position == null) {
+        rows.add(value);
+      } else {
+        rows.set(position, value);
+      }
+    }
+
+    int[] offsets = new int[rows.size() + 1];
+    int[] keyLengths = new int[rows.size()];
+    int[] hashes = new int[rows.size()];
+    byte[] arena = new byte[Math.max(16, rows.size() * 32)];
+    int length = 0;
+    for (int row = 0; row < rows.size(); row++) {
+      String value = rows.get(row);
+      String key = keyOf(value);
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      if (length + bytes.length > arena.length) {
+        arena = Arrays.copyOf(arena, Math.max(arena.length * 2, length + bytes.length));
+      }
+      System.arraycopy(bytes, 0, arena, length, bytes.length);
+      offsets[row] = length;
+      keyLengths[row] = key.length() == value.length() ? bytes.length : key.getBytes(StandardCharsets.UTF_8).length;
+      hashes[row] = spread(key.hashCode());
+      length += bytes.length;
+    }
+    offsets[rows.size()] = length;
+    return new StringTable(Arrays.copyOf(arena, length), offsets, keyLengths, hashes);
+  }
+
+  int size() {
+    return hashes.length;
+  }
+
+  String get(int row) {
+    return new String(arena, offsets[row], offsets[row + 1] - offsets[row], StandardCharsets.UTF_8);
+  }
+
+  String key(int row) {
+    return new String(arena, offsets[row], keyLengths[row], StandardCharsets.UTF_8);
+  }
+
+  /** Returns the row with the given key, or -1 if there is none. */
+  int find(String key) {
+    int hash = spread(key.hashCode());
+    byte[] bytes = null;
+    int mask = slots.length - 1;
+    for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+      int row = slots[slot] - 1;
+      if (hashes[row] == hash) {
+        if (bytes == null) {
+          bytes = key.getBytes(StandardCharsets.UTF_8);
+        }
+        int start = offsets[row];
+        if (Arrays.equals(arena, start, start + keyLengths[row], bytes, 0, bytes.length)) {
+          return row;
+        }
+      }
+    }
+    return -1;
+  }
+
+  static String keyOf(String value) {
+    int index = value.indexOf(':');
+    return index >= 0 ? value.substring(0, index) : value;
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+}
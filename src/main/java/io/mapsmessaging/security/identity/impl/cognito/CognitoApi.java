@@ -17,55 +17,122 @@
 package io.mapsmessaging.security.identity.impl.cognito;
 
 import io.mapsmessaging.security.identity.impl.external.WebRequestCaching;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.*;
 
+/**
+ * Cached access to the Cognito user pool.
+ *
+ * <p>Every list request follows the pagination token until the last page, so pools larger than a
+ * single page are loaded in full. Requests rejected by Cognito's rate limits are retried with
+ * exponential backoff and jitter. Group members are fetched in parallel, with at most
+ * {@code groupParallelism} requests outstanding at a time.
+ */
 public class CognitoApi {
   private static final String LIST_USER_REQUEST = "ListUsersRequest";
   private static final String LIST_GROUP_REQUEST = "ListGroupRequest";
   private static final String USER_IN_GROUP_REQUEST = "GetUserInGroup";
 
+  private static final int DEFAULT_GROUP_PARALLELISM = 4;
+  private static final int DEFAULT_THROTTLE_RETRIES = 5;
+  private static final long DEFAULT_THROTTLE_RETRY_DELAY = 200;
+  private static final long MAX_THROTTLE_RETRY_DELAY = 10000;
+
   private final CognitoIdentityProviderClient cognitoClient;
   private final WebRequestCaching caching;
   private final String userPoolId;
+  private final int groupParallelism;
+  private final int throttleRetries;
+  private final long throttleRetryDelay;
 
   public CognitoApi(CognitoIdentityProviderClient cognitoClient, String userPoolId, long cacheAge) {
+    this(cognitoClient, userPoolId, cacheAge, DEFAULT_GROUP_PARALLELISM, DEFAULT_THROTTLE_RETRIES, DEFAULT_THROTTLE_RETRY_DELAY);
+  }
+
+  public CognitoApi(CognitoIdentityProviderClient cognitoClient, String userPoolId, long cacheAge,
+      int groupParallelism, int throttleRetries, long throttleRetryDelay) {
     this.cognitoClient = cognitoClient;
     caching = new WebRequestCaching(cacheAge);
     this.userPoolId = userPoolId;
+    this.groupParallelism = Math.max(1, groupParallelism);
+    this.throttleRetries = Math.max(0, throttleRetries);
+    this.throttleRetryDelay = Math.max(1, throttleRetryDelay);
   }
 
   public ListUsersResponse getUserList() {
-    ListUsersResponse response = (ListUsersResponse) caching.get(LIST_USER_REQUEST);
-    if (response == null) {
-      ListUsersRequest usersRequest = ListUsersRequest.builder().userPoolId(userPoolId).build();
-      response = cognitoClient.listUsers(usersRequest);
-      caching.put(LIST_USER_REQUEST, response);
+    return caching.get(LIST_USER_REQUEST, () -> ListUsersResponse.builder().users(listUsers(user -> {})).build());
+  }
+
+  /**
+   * Passes every user in the pool to the consumer. When the list is not cached, users are passed on
+   * as each page arrives rather than once the whole pool has been read.
+   */
+  public void forEachUser(Consumer<UserType> consumer) {
+    AtomicBoolean streamed = new AtomicBoolean();
+    ListUsersResponse response = caching.get(LIST_USER_REQUEST, () -> {
+      streamed.set(true);
+      return ListUsersResponse.builder().users(listUsers(consumer)).build();
+    });
+    if (!streamed.get()) {
+      response.users().forEach(consumer);
     }
-    return response;
   }
 
   public ListUsersInGroupResponse getUsersInGroup(String name) {
-    ListUsersInGroupResponse listUsersInGroupResponse =
-        (ListUsersInGroupResponse) caching.get(USER_IN_GROUP_REQUEST+"(" + name + ")");
-    if (listUsersInGroupResponse == null) {
-      ListUsersInGroupRequest listUsersInGroupRequest =
-          ListUsersInGroupRequest.builder().userPoolId(userPoolId).groupName(name).build();
-      listUsersInGroupResponse = cognitoClient.listUsersInGroup(listUsersInGroupRequest);
-      caching.put(USER_IN_GROUP_REQUEST+"(" + name + ")", listUsersInGroupResponse);
+    return caching.get(USER_IN_GROUP_REQUEST + "(" + name + ")", () -> listUsersInGroup(name));
+  }
+
+  /**
+   * Fetches the members of each group in parallel, returning them in the order the groups were given.
+   */
+  public Map<String, ListUsersInGroupResponse> getUsersInGroups(List<String> names) {
+    Map<String, ListUsersInGroupResponse> result = new LinkedHashMap<>();
+    if (names.size() <= 1 || groupParallelism == 1) {
+      for (String name : names) {
+        result.put(name, getUsersInGroup(name));
+      }
+      return result;
+    }
+    ExecutorService executor = createExecutor(Math.min(groupParallelism, names.size()));
+    try {
+      Map<String, Future<ListUsersInGroupResponse>> pending = new LinkedHashMap<>();
+      for (String name : names) {
+        pending.put(name, executor.submit(() -> getUsersInGroup(name)));
+      }
+      for (Map.Entry<String, Future<ListUsersInGroupResponse>> entry : pending.entrySet()) {
+        result.put(entry.getKey(), entry.getValue().get());
+      }
+      return result;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw SdkException.create("Failed to fetch group members", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw SdkException.create("Interrupted fetching group members", e);
+    } finally {
+      executor.shutdownNow();
     }
-    return listUsersInGroupResponse;
   }
 
   public ListGroupsResponse getGroupList() {
-    ListGroupsResponse response = (ListGroupsResponse) caching.get(LIST_GROUP_REQUEST);
-    if (response == null) {
-      ListGroupsRequest listGroupsRequest =
-          ListGroupsRequest.builder().userPoolId(userPoolId).build();
-      response = cognitoClient.listGroups(listGroupsRequest);
-      caching.put(LIST_GROUP_REQUEST, response);
-    }
-    return response;
+    return caching.get(LIST_GROUP_REQUEST, this::listGroups);
   }
 
   public boolean isUserCacheValid() {
@@ -75,4 +142,74 @@ public class CognitoApi {
   public boolean isGroupCacheValid() {
     return caching.get(LIST_GROUP_REQUEST) != null;
   }
+
+  private List<UserType> listUsers(Consumer<UserType> consumer) {
+    List<UserType> users = new ArrayList<>();
+    String token = null;
+    do {
+      ListUsersRequest request = ListUsersRequest.builder().userPoolId(userPoolId).paginationToken(token).build();
+      ListUsersResponse page = withBackoff(() -> cognitoClient.listUsers(request));
+      for (UserType user : page.users()) {
+        users.add(user);
+        consumer.accept(user);
+      }
+      token = page.paginationToken();
+    } while (token != null && !token.isEmpty());
+    return users;
+  }
+
+  private ListUsersInGroupResponse listUsersInGroup(String name) {
+    List<UserType> users = new ArrayList<>();
+    String token = null;
+    do {
+      ListUsersInGroupRequest request = ListUsersInGroupRequest.builder().userPoolId(userPoolId).groupName(name).nextToken(token).build();
+      ListUsersInGroupResponse page = withBackoff(() -> cognitoClient.listUsersInGroup(request));
+      users.addAll(page.users());
+      token = page.nextToken();
+    } while (token != null && !token.isEmpty());
+    return ListUsersInGroupResponse.builder().users(users).build();
+  }
+
+  private ListGroupsResponse listGroups() {
+    List<GroupType> groups = new ArrayList<>();
+    String token = null;
+    do {
+      ListGroupsRequest request = ListGroupsRequest.builder().userPoolId(userPoolId).nextToken(token).build();
+      ListGroupsResponse page = withBackoff(() -> cognitoClient.listGroups(request));
+      groups.addAll(page.groups());
+      token = page.nextToken();
+    } while (token != null && !token.isEmpty());
+    return ListGroupsResponse.builder().groups(groups).build();
+  }
+
+  // Retries throttled requests, doubling the delay each time with jitter so parallel fetches spread out
+  private <T> T withBackoff(Supplier<T> request) {
+    int attempt = 0;
+    while (true) {
+      try {
+        return request.get();
+      } catch (AwsServiceException e) {
+        if (!e.isThrottlingException() || attempt >= throttleRetries) {
+          throw e;
+        }
+        long ceiling = Math.min(MAX_THROTTLE_RETRY_DELAY, throttleRetryDelay << Math.min(attempt, 16));
+        attempt++;
+        try {
+          Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1));
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+      }
+    }
+  }
+
+  private static ExecutorService createExecutor(int threads) {
+    AtomicInteger counter = new AtomicInteger();
+    return Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "cognito-group-fetch-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
 }
@@ -27,10 +27,13 @@ import lombok.Getter;
 import software.amazon.awssdk.auth.credentials.AwsCredentials;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClientBuilder;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.*;
 
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @Getter
 public class CognitoAuth extends CachingIdentityLookup<CognitoIdentityEntry> {
@@ -70,12 +73,19 @@ public class CognitoAuth extends CachingIdentityLookup<CognitoIdentityEntry> {
     Region region = Region.of(regionName);
 
     AwsCredentials credentials = new CognitoCredentials(accesskeyId, secretAccessKey);
-    cognitoClient = CognitoIdentityProviderClient.
+    CognitoIdentityProviderClientBuilder builder = CognitoIdentityProviderClient.
         builder().
         credentialsProvider(() -> credentials).
-        region(region).
-        build();
-    cognitoApi = new CognitoApi(cognitoClient, userPoolId, cacheTime);
+        region(region);
+    String endpoint = (String) config.getProperty("endpoint");
+    if (endpoint != null && !endpoint.trim().isEmpty()) {
+      builder.endpointOverride(URI.create(endpoint.trim()));
+    }
+    cognitoClient = builder.build();
+    cognitoApi = new CognitoApi(cognitoClient, userPoolId, cacheTime,
+        config.getIntProperty("groupFetchParallelism", 4),
+        config.getIntProperty("throttleRetries", 5),
+        config.getLongProperty("throttleRetryDelay", 200));
   }
 
   @Override
@@ -101,75 +111,70 @@ public class CognitoAuth extends CachingIdentityLookup<CognitoIdentityEntry> {
   @Override
   public List<IdentityEntry> getEntries() {
     loadUsers();
-    return new ArrayList<>(identityEntries);
+    return new ArrayList<>(getDirectory().getIdentityEntries());
   }
 
-  protected void loadUsers() {
-    if (cognitoApi.isUserCacheValid()) {
+  @Override
+  protected void loadDirectory(Directory<CognitoIdentityEntry> next) {
+    cognitoApi.forEachUser(user -> addUser(next, user));
+    loadGroups(next);
+  }
+
+  private void addUser(Directory<CognitoIdentityEntry> next, UserType user) {
+    if (!Boolean.TRUE.equals(user.enabled())) {
       return;
     }
-    identityEntryMap.clear();
-    identityEntries.clear();
-    ListUsersResponse response = cognitoApi.getUserList();
-    List<UserType> userList = response.users();
-    for (UserType user : userList) {
-      if (Boolean.TRUE.equals(user.enabled())) {
-        List<AttributeType> list = user.attributes();
-        AttributeType email = list.stream().filter(attributeType -> attributeType.name().equals("email")).findFirst().orElse(null);
-        AttributeType uuid = list.stream().filter(attributeType -> attributeType.name().equals("sub")).findFirst().orElse(null);
-        AttributeType profile = list.stream().filter(attributeType -> attributeType.name().equals("profile")).findFirst().orElse(null);
-        if (uuid != null) {
-          CognitoIdentityEntry entry = new CognitoIdentityEntry(this, user.username(), uuid.value());
-          if (profile != null) entry.setProfile(profile.value());
-          identityEntryMap.put(user.username(), entry);
-          identityEntries.add(entry);
-          if (email != null) {
-            entry.setEmail(email.value());
-            identityEntryMap.put(email.value(), entry);
-          }
-        }
+    List<AttributeType> list = user.attributes();
+    AttributeType email = list.stream().filter(attributeType -> attributeType.name().equals("email")).findFirst().orElse(null);
+    AttributeType uuid = list.stream().filter(attributeType -> attributeType.name().equals("sub")).findFirst().orElse(null);
+    AttributeType profile = list.stream().filter(attributeType -> attributeType.name().equals("profile")).findFirst().orElse(null);
+    if (uuid != null) {
+      CognitoIdentityEntry entry = new CognitoIdentityEntry(this, user.username(), uuid.value());
+      if (profile != null) entry.setProfile(profile.value());
+      next.getIdentityEntryMap().put(user.username(), entry);
+      next.getIdentityEntries().add(entry);
+      if (email != null) {
+        entry.setEmail(email.value());
+        next.getIdentityEntryMap().put(email.value(), entry);
       }
     }
-    loadGroups();
   }
 
-  private void loadGroups() {
-    if (cognitoApi.isGroupCacheValid()) {
-      return;
+  private void loadGroups(Directory<CognitoIdentityEntry> next) {
+    List<String> groupNames = new ArrayList<>();
+    for (GroupType groupType : cognitoApi.getGroupList().groups()) {
+      groupNames.add(groupType.groupName());
     }
-    groupEntryMap.clear();
-    ListGroupsResponse listGroupsResponse = cognitoApi.getGroupList();
-    for (GroupType groupType : listGroupsResponse.groups()) {
-      CognitoGroupEntry groupEntry = new CognitoGroupEntry(groupType.groupName());
-      ListUsersInGroupResponse listUsersInGroupResponse =
-          cognitoApi.getUsersInGroup(groupType.groupName());
-      for (UserType userType : listUsersInGroupResponse.users()) {
+    Map<String, ListUsersInGroupResponse> members = cognitoApi.getUsersInGroups(groupNames);
+    for (String groupName : groupNames) {
+      CognitoGroupEntry groupEntry = new CognitoGroupEntry(groupName);
+      for (UserType userType : members.get(groupName).users()) {
         String username = userType.username();
-        CognitoIdentityEntry identityEntry = identityEntryMap.get(username);
+        CognitoIdentityEntry identityEntry = next.getIdentityEntryMap().get(username);
         if (identityEntry != null) {
           groupEntry.addUser(userType.username());
           identityEntry.addGroup(groupEntry);
         }
       }
-      groupEntryMap.put(groupType.groupName(), groupEntry);
+      next.getGroupEntryMap().put(groupName, groupEntry);
     }
   }
 
   @Override
   public GroupEntry findGroup(String groupName) {
-    return groupEntryMap.get(groupName);
+    return getDirectory().getGroupEntryMap().get(groupName);
   }
 
   @Override
   public List<GroupEntry> getGroups() {
-    return new ArrayList<>(groupEntryMap.values());
+    return new ArrayList<>(getDirectory().getGroupEntryMap().values());
   }
 
   @Override
   public boolean createGroup(String groupName) {
     CreateGroupResponse response = cognitoClient.createGroup(CreateGroupRequest.builder().groupName(groupName).userPoolId(userPoolId).build());
     if (response.sdkHttpResponse().isSuccessful()) {
-      groupEntryMap.put(groupName, new CognitoGroupEntry(groupName));
+      getDirectory().getGroupEntryMap().put(groupName, new CognitoGroupEntry(groupName));
       return true;
     }
     return false;
@@ -179,7 +184,7 @@ public class CognitoAuth extends CachingIdentityLookup<CognitoIdentityEntry> {
   public boolean deleteGroup(String groupName) {
     DeleteGroupResponse response = cognitoClient.deleteGroup(DeleteGroupRequest.builder().groupName(groupName).userPoolId(userPoolId).build());
     if (response.sdkHttpResponse().isSuccessful()) {
-      groupEntryMap.remove(groupName);
+      getDirectory().getGroupEntryMap().remove(groupName);
       return true;
     }
     return false;
@@ -202,8 +207,9 @@ public class CognitoAuth extends CachingIdentityLookup<CognitoIdentityEntry> {
     AdminCreateUserResponse response = cognitoClient.adminCreateUser(request);
     if (response.sdkHttpResponse().isSuccessful()) {
       CognitoIdentityEntry entry = new CognitoIdentityEntry(this, username, "");
-      identityEntryMap.put(username, entry);
-      identityEntries.add(entry);
+      Directory<CognitoIdentityEntry> current = getDirectory();
+      current.getIdentityEntryMap().put(username, entry);
+      current.getIdentityEntries().add(entry);
       return true;
     }
     return false;
@@ -214,18 +220,14 @@ public class CognitoAuth extends CachingIdentityLookup<CognitoIdentityEntry> {
     AdminDeleteUserRequest deleteUserRequest = AdminDeleteUserRequest.builder().username(username).userPoolId(userPoolId).build();
     AdminDeleteUserResponse response = cognitoClient.adminDeleteUser(deleteUserRequest);
     if (response.sdkHttpResponse().isSuccessful()) {
-      identityEntryMap.remove(username);
-      identityEntries.removeIf(identityEntry -> identityEntry.getUsername().equals(username));
+      Directory<CognitoIdentityEntry> current = getDirectory();
+      current.getIdentityEntryMap().remove(username);
+      current.getIdentityEntries().removeIf(identityEntry -> identityEntry.getUsername().equals(username));
       return true;
     }
     return false;
   }
 
-  @Override
-  protected void loadGroups(CognitoIdentityEntry identityEntry) {
-    loadGroups();
-  }
-
   @Override
   protected IdentityEntry createIdentityEntry(String username) {
     return new CognitoIdentityEntry(this, username, null);
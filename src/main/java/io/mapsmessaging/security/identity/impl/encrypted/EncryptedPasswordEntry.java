@@ -24,31 +24,29 @@ import java.security.GeneralSecurityException;
 
 public class EncryptedPasswordEntry extends IdentityEntry {
 
+  private final PasswordHandler cipher;
+
   public EncryptedPasswordEntry(String line, EncryptedPasswordCipher parser) {
     int usernamePos = line.indexOf(":");
     username = line.substring(0, usernamePos);
     line = line.substring(usernamePos + 1);
     password = line;
-    passwordHasher = parser.create(password);
+    cipher = parser;
   }
 
   public EncryptedPasswordEntry(String username, String password, PasswordHandler parser) {
     this.username = username;
     this.password = password;
-    this.passwordHasher = parser;
+    this.cipher = parser;
   }
 
   @Override
   public String getPassword() throws GeneralSecurityException, IOException {
-    PasswordHandler parser1 = passwordHasher.create(password);
-    return new String(parser1.getPassword());
+    return new String(getPasswordHasher().getPassword());
   }
 
   @Override
-  public PasswordHandler getPasswordHasher() {
-    EncryptedPasswordCipher base = (EncryptedPasswordCipher) passwordHasher;
-    EncryptedPasswordCipher response = (EncryptedPasswordCipher) passwordHasher.create(password);
-    response.setCertificateManager(base.getCertificateManager());
-    return response;
+  protected PasswordHandler createPasswordHasher() {
+    return cipher.create(password);
   }
 }
@@ -16,17 +16,53 @@
 
 package io.mapsmessaging.security.identity.impl.external;
 
+import io.mapsmessaging.logging.Logger;
+import io.mapsmessaging.logging.LoggerFactory;
+import io.mapsmessaging.security.events.IdentityChangeEvent;
+import io.mapsmessaging.security.events.IdentityChangeType;
+import io.mapsmessaging.security.events.IdentityEventBus;
 import io.mapsmessaging.security.identity.GroupEntry;
 import io.mapsmessaging.security.identity.IdentityEntry;
 import io.mapsmessaging.security.identity.IdentityLookup;
+import io.mapsmessaging.security.logging.AuthLogMessages;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.AccessLevel;
+import lombok.Getter;
 
+/**
+ * Base for lookups that mirror the users and groups held by a remote identity provider.
+ *
+ * <p>The mirrored entries are held in a {@link Directory} snapshot. The first lookup loads it on the
+ * calling thread; after that, once {@link #getCacheTime()} has passed, the next lookup schedules a
+ * background refresh and carries on with the current snapshot. The refreshed directory is built
+ * separately and swapped in as a whole, so lookups never see a partially loaded directory. A failed
+ * refresh keeps the current snapshot and is retried with an increasing delay, capped at the cache time.
+ */
 public abstract class CachingIdentityLookup<T extends IdentityEntry> implements IdentityLookup {
 
-  protected final Map<String, GroupEntry> groupEntryMap = new LinkedHashMap<>();
-  protected final Map<String, T> identityEntryMap = new LinkedHashMap<>();
-  protected final List<T> identityEntries = new ArrayList<>();
+  private static final long MIN_RETRY_DELAY = 1000;
+
+  private static class Holder {
+    static final ExecutorService REFRESH_EXECUTOR = createExecutor();
+  }
+
+  private final Logger logger = LoggerFactory.getLogger(CachingIdentityLookup.class);
+  private final AtomicBoolean refreshing = new AtomicBoolean();
+  private final Object initialLoadLock = new Object();
+
+  @Getter(AccessLevel.PROTECTED)
+  private volatile Directory<T> directory = new Directory<>();
+  private volatile boolean loaded;
+  private volatile long nextRefresh;
+  private int failures;
 
   @Override
   public void updateGroup(GroupEntry groupEntry) throws IOException {
@@ -36,7 +72,7 @@ public abstract class CachingIdentityLookup<T extends IdentityEntry> implements
   @Override
   public IdentityEntry findEntry(String username) {
     loadUsers();
-    IdentityEntry identityEntry = identityEntryMap.get(username);
+    IdentityEntry identityEntry = directory.getIdentityEntryMap().get(username);
     if (identityEntry == null) {
       identityEntry = createIdentityEntry(username);
     }
@@ -44,24 +80,107 @@ public abstract class CachingIdentityLookup<T extends IdentityEntry> implements
   }
 
   public void authorised(T identityEntry) {
+    Directory<T> current = directory;
     boolean added = false;
-    if (!identityEntries.contains(identityEntry)) {
-      identityEntries.add(identityEntry);
+    if (!current.getIdentityEntries().contains(identityEntry)) {
+      current.getIdentityEntries().add(identityEntry);
       added = true;
     }
-    if (identityEntryMap.containsKey(identityEntry.getUsername())) {
-      identityEntryMap.put(identityEntry.getUsername(), identityEntry);
+    if (current.getIdentityEntryMap().containsKey(identityEntry.getUsername())) {
+      current.getIdentityEntryMap().put(identityEntry.getUsername(), identityEntry);
       added = true;
+      IdentityEventBus.getInstance().publish(IdentityChangeEvent.user(IdentityChangeType.USER_UPDATED, getDomain(), identityEntry.getUsername()));
     }
     if (added) {
       loadGroups(identityEntry);
     }
   }
 
-  protected abstract void loadGroups(T identityEntry);
+  /**
+   * Makes sure a directory has been loaded, and schedules a background refresh if it is older than
+   * the cache time. Only the very first load blocks the caller.
+   */
+  protected void loadUsers() {
+    if (!loaded) {
+      synchronized (initialLoadLock) {
+        if (!loaded) {
+          refresh();
+        }
+      }
+      return;
+    }
+    if (System.currentTimeMillis() >= nextRefresh && refreshing.compareAndSet(false, true)) {
+      try {
+        Holder.REFRESH_EXECUTOR.execute(() -> {
+          try {
+            refresh();
+          } finally {
+            refreshing.set(false);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        refreshing.set(false);
+      }
+    }
+  }
+
+  // Links the entry to the groups in the current directory that list it as a member
+  protected void loadGroups(T identityEntry) {
+    for (GroupEntry groupEntry : new ArrayList<>(directory.getGroupEntryMap().values())) {
+      if (groupEntry.isInGroup(identityEntry.getUsername())) {
+        identityEntry.addGroup(groupEntry);
+      }
+    }
+  }
 
   protected abstract IdentityEntry createIdentityEntry(String username);
 
-  protected abstract void loadUsers();
+  /**
+   * Fetches the users and groups from the identity provider into the supplied, empty, directory. Any
+   * exception leaves the current directory in place.
+   */
+  protected abstract void loadDirectory(Directory<T> next) throws Exception;
+
+  protected abstract long getCacheTime();
+
+  private synchronized void refresh() {
+    try {
+      Directory<T> next = new Directory<>();
+      loadDirectory(next);
+      directory = next;
+      failures = 0;
+      nextRefresh = System.currentTimeMillis() + jitter(getCacheTime());
+    } catch (Exception e) {
+      failures++;
+      long delay = jitter(Math.min(getCacheTime(), MIN_RETRY_DELAY << Math.min(failures - 1, 16)));
+      nextRefresh = System.currentTimeMillis() + delay;
+      logger.log(AuthLogMessages.IDENTITY_REFRESH_FAILURE, getDomain(), delay, e);
+    } finally {
+      loaded = true;
+    }
+  }
+
+  // Only ever lengthens the delay, so any responses the backend cached during the last load have expired
+  private static long jitter(long delay) {
+    return delay + ThreadLocalRandom.current().nextLong(Math.max(1, delay / 10));
+  }
 
+  private static ExecutorService createExecutor() {
+    AtomicInteger counter = new AtomicInteger();
+    return Executors.newFixedThreadPool(2, runnable -> {
+      Thread thread = new Thread(runnable, "identity-refresh-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * One complete copy of the users and groups held by the identity provider.
+   */
+  @Getter
+  protected static final class Directory<E extends IdentityEntry> {
+    private final Map<String, GroupEntry> groupEntryMap = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final Map<String, E> identityEntryMap = new ConcurrentHashMap<>();
+    private final List<E> identityEntries = Collections.synchronizedList(new ArrayList<>());
+  }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright [ 2020 - 2023 ] [Matthew Buckton]
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
  *
  *  Licensed under the Apache License, Version 2.0 (the "License");
  *  you may not use this file except in compliance with the License.
@@ -16,31 +16,98 @@
 
 package io.mapsmessaging.security.identity.impl.external;
 
+import io.mapsmessaging.security.cache.ExpiringCache;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Caches the responses of remote identity provider requests for a fixed time.
+ *
+ * <p>Responses are held in a bounded {@link ExpiringCache}. Requests made through
+ * {@link #get(String, WebRequest)} are single flight: when a response is missing or has expired, the
+ * first caller makes the remote call and any concurrent callers for the same request wait for its
+ * result, or its failure, rather than repeating it.
+ */
 public class WebRequestCaching {
 
-  private final long cacheAge;
-  private final Map<String, WebResult> requests = new WeakHashMap<>();
+  private static final int DEFAULT_MAX_SIZE = 10000;
+
+  private final ExpiringCache<String, Object> requests;
+  private final Map<String, CompletableFuture<Object>> inFlight;
 
   public WebRequestCaching(long cacheAge) {
-    this.cacheAge = cacheAge;
+    this(DEFAULT_MAX_SIZE, cacheAge);
+  }
+
+  public WebRequestCaching(int maxSize, long cacheAge) {
+    requests = new ExpiringCache<>(maxSize, cacheAge);
+    inFlight = new ConcurrentHashMap<>();
   }
 
   public Object get(String request) {
-    WebResult result = requests.get(request);
-    if (result != null) {
-      if (result.getExpiryTime() >= System.currentTimeMillis()) {
-        return result.getResult();
+    return requests.get(request);
+  }
+
+  public void put(String request, Object response) {
+    requests.put(request, response);
+  }
+
+  /**
+   * Returns the cached response to the request, making the request if there is none. Only one
+   * request is made at a time for a given key, concurrent callers share its outcome.
+   */
+  @SuppressWarnings("unchecked")
+  public <T, E extends Exception> T get(String request, WebRequest<T, E> webRequest) throws E {
+    Object response = requests.get(request);
+    if (response != null) {
+      return (T) response;
+    }
+    CompletableFuture<Object> future = new CompletableFuture<>();
+    CompletableFuture<Object> existing = inFlight.putIfAbsent(request, future);
+    if (existing != null) {
+      return (T) await(existing);
+    }
+    try {
+      // Another caller may have completed the request between the cache miss and claiming it
+      response = requests.get(request);
+      if (response == null) {
+        response = webRequest.execute();
+        if (response != null) {
+          requests.put(request, response);
+        }
+      }
+      future.complete(response);
+      return (T) response;
+    } catch (Exception | Error e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(request, future);
+    }
+  }
+
+  public void invalidate(String request) {
+    requests.invalidate(request);
+  }
+
+  // The failure came from the same kind of request, so it is rethrown as the caller's exception type
+  @SuppressWarnings("unchecked")
+  private static <E extends Exception> Object await(CompletableFuture<Object> future) throws E {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Error) {
+        throw (Error) cause;
       }
-      requests.remove(request);
+      throw (E) cause;
     }
-    return null;
   }
 
-  public void put(String listUsersRequest, Object response) {
-    long age = System.currentTimeMillis() + cacheAge;
-    requests.put(listUsersRequest, new WebResult(response, age));
+  @FunctionalInterface
+  public interface WebRequest<T, E extends Exception> {
+    T execute() throws E;
   }
 }
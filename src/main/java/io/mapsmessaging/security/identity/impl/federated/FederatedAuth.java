@@ -0,0 +1,321 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.federated;
+
+import static io.mapsmessaging.security.logging.AuthLogMessages.FEDERATED_LOOKUP_FAILURE;
+
+import io.mapsmessaging.configuration.ConfigurationProperties;
+import io.mapsmessaging.logging.Logger;
+import io.mapsmessaging.logging.LoggerFactory;
+import io.mapsmessaging.security.cache.ExpiringCache;
+import io.mapsmessaging.security.cache.NegativeLookupCache;
+import io.mapsmessaging.security.identity.*;
+import io.mapsmessaging.security.passwords.PasswordHandler;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.*;
+
+/**
+ * Chains several identity lookups so that one manager can serve users held in different backends.
+ *
+ * <p>Lookups are tried in configured order and the first that knows the user owns it. Each backend
+ * has a {@link NegativeLookupCache} of usernames it recently did not know, so a user owned by a later
+ * backend does not cause a search in the earlier ones on every connect. Because the negative cache can
+ * report false positives, a backend is only skipped when a bounded, exact record of its recent misses
+ * confirms the username; otherwise it is searched in its place in the chain, so a later backend can
+ * never claim a user an earlier one owns. Usernames no backend knows are also remembered exactly for a
+ * while, so repeated lookups of them do not search the chain again.
+ *
+ * <p>Backends such as Cognito and Auth0 create an entry for any username, so they should be placed
+ * last in the chain.
+ */
+public class FederatedAuth implements IdentityLookup {
+
+  private static final int DEFAULT_EXPECTED_MISSES = 100000;
+  private static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+  private static final long DEFAULT_NEGATIVE_CACHE_TIME = 300000;
+  private static final int DEFAULT_UNKNOWN_USERS = 10000;
+  private static final int DEFAULT_EXACT_MISSES = 10000;
+
+  private final Logger logger = LoggerFactory.getLogger(FederatedAuth.class);
+  private final List<ChainLink> chain;
+  private final ExpiringCache<String, Boolean> unknownUsers;
+
+  public FederatedAuth() {
+    this(List.of(), 1, 0);
+  }
+
+  private FederatedAuth(List<ChainLink> links, int unknownUserCacheSize, long unknownUserCacheTime) {
+    chain = List.copyOf(links);
+    unknownUsers = new ExpiringCache<>(unknownUserCacheSize, unknownUserCacheTime);
+  }
+
+  /**
+   * Chains the given lookups, in order, with the default negative cache settings.
+   */
+  public static FederatedAuth of(List<IdentityLookup> lookups) {
+    List<ChainLink> links = new ArrayList<>();
+    for (IdentityLookup lookup : lookups) {
+      links.add(new ChainLink(lookup,
+          new NegativeLookupCache(DEFAULT_EXPECTED_MISSES, DEFAULT_FALSE_POSITIVE_RATE, DEFAULT_NEGATIVE_CACHE_TIME),
+          new ExpiringCache<>(DEFAULT_EXACT_MISSES, DEFAULT_NEGATIVE_CACHE_TIME)));
+    }
+    return new FederatedAuth(links, DEFAULT_UNKNOWN_USERS, DEFAULT_NEGATIVE_CACHE_TIME);
+  }
+
+  @Override
+  public String getName() {
+    return "Federated-Auth";
+  }
+
+  @Override
+  public String getDomain() {
+    return "federated";
+  }
+
+  @Override
+  public char[] getPasswordHash(String username) throws IOException, GeneralSecurityException {
+    Match match = locate(username);
+    if (match == null) {
+      throw new NoSuchUserFoundException("User: " + username + " not found");
+    }
+    return match.link.lookup.getPasswordHash(username);
+  }
+
+  @Override
+  public IdentityEntry findEntry(String username) {
+    Match match = locate(username);
+    return match != null ? match.entry : null;
+  }
+
+  @Override
+  public List<IdentityEntry> getEntries() {
+    List<IdentityEntry> entries = new ArrayList<>();
+    for (ChainLink link : chain) {
+      entries.addAll(link.lookup.getEntries());
+    }
+    return entries;
+  }
+
+  @Override
+  public GroupEntry findGroup(String groupName) {
+    ChainLink link = findGroupOwner(groupName);
+    return link != null ? link.lookup.findGroup(groupName) : null;
+  }
+
+  @Override
+  public List<GroupEntry> getGroups() {
+    List<GroupEntry> groups = new ArrayList<>();
+    for (ChainLink link : chain) {
+      groups.addAll(link.lookup.getGroups());
+    }
+    return groups;
+  }
+
+  @Override
+  public boolean createGroup(String groupName) throws IOException {
+    return primary().lookup.createGroup(groupName);
+  }
+
+  @Override
+  public boolean deleteGroup(String groupName) throws IOException {
+    ChainLink link = findGroupOwner(groupName);
+    return link != null && link.lookup.deleteGroup(groupName);
+  }
+
+  @Override
+  public void updateGroup(GroupEntry groupEntry) throws IOException {
+    ChainLink link = findGroupOwner(groupEntry.getName());
+    (link != null ? link : primary()).lookup.updateGroup(groupEntry);
+  }
+
+  @Override
+  public void updateGroups(List<GroupEntry> updatedGroups, List<String> deletedGroups) throws IOException {
+    Map<ChainLink, List<GroupEntry>> updatesByLink = new LinkedHashMap<>();
+    Map<ChainLink, List<String>> deletesByLink = new LinkedHashMap<>();
+    for (GroupEntry groupEntry : updatedGroups) {
+      ChainLink link = findGroupOwner(groupEntry.getName());
+      updatesByLink.computeIfAbsent(link != null ? link : primary(), k -> new ArrayList<>()).add(groupEntry);
+    }
+    for (String groupName : deletedGroups) {
+      ChainLink link = findGroupOwner(groupName);
+      if (link != null) {
+        deletesByLink.computeIfAbsent(link, k -> new ArrayList<>()).add(groupName);
+      }
+    }
+    for (ChainLink link : chain) {
+      List<GroupEntry> updates = updatesByLink.getOrDefault(link, List.of());
+      List<String> deletes = deletesByLink.getOrDefault(link, List.of());
+      if (!updates.isEmpty() || !deletes.isEmpty()) {
+        link.lookup.updateGroups(updates, deletes);
+      }
+    }
+  }
+
+  @Override
+  public boolean createUser(String username, String passwordHash, PasswordHandler passwordHasher)
+      throws IOException, GeneralSecurityException {
+    ChainLink link = primary();
+    boolean created = link.lookup.createUser(username, passwordHash, passwordHasher);
+    link.clearMissing();
+    unknownUsers.invalidateAll();
+    return created;
+  }
+
+  @Override
+  public String hashPassword(String password, PasswordHandler passwordHasher)
+      throws IOException, GeneralSecurityException {
+    return primary().lookup.hashPassword(password, passwordHasher);
+  }
+
+  @Override
+  public void addHashedUsers(Map<String, String> usernameHashes) throws IOException {
+    ChainLink link = primary();
+    link.lookup.addHashedUsers(usernameHashes);
+    link.clearMissing();
+    unknownUsers.invalidateAll();
+  }
+
+  @Override
+  public boolean deleteUser(String username) throws IOException {
+    Match match = locate(username);
+    return match != null && match.link.lookup.deleteUser(username);
+  }
+
+  @Override
+  public IdentityLookup create(ConfigurationProperties config) {
+    Object chainConfig = config.get("chain");
+    if (!(chainConfig instanceof List)) {
+      return null;
+    }
+    List<ChainLink> links = new ArrayList<>();
+    for (Object entry : (List<?>) chainConfig) {
+      ConfigurationProperties linkConfig = toProperties(entry);
+      String identity = linkConfig != null ? linkConfig.getProperty("identity") : null;
+      IdentityLookup lookup = identity != null ? IdentityLookupFactory.getInstance().get(identity, linkConfig) : null;
+      if (lookup == null) {
+        logger.log(FEDERATED_LOOKUP_FAILURE, identity);
+        return null;
+      }
+      long negativeCacheTime = (long) getNumber(linkConfig, "negativeCacheTime", DEFAULT_NEGATIVE_CACHE_TIME);
+      NegativeLookupCache negativeCache = new NegativeLookupCache(
+          (int) getNumber(linkConfig, "negativeCacheSize", DEFAULT_EXPECTED_MISSES),
+          getNumber(linkConfig, "negativeCacheFalsePositiveRate", DEFAULT_FALSE_POSITIVE_RATE),
+          negativeCacheTime);
+      ExpiringCache<String, Boolean> exactMisses = new ExpiringCache<>(
+          Math.max(1, (int) getNumber(linkConfig, "negativeCacheExactSize", DEFAULT_EXACT_MISSES)),
+          negativeCacheTime);
+      links.add(new ChainLink(lookup, negativeCache, exactMisses));
+    }
+    return new FederatedAuth(links,
+        Math.max(1, (int) getNumber(config, "unknownUserCacheSize", DEFAULT_UNKNOWN_USERS)),
+        (long) getNumber(config, "unknownUserCacheTime", DEFAULT_NEGATIVE_CACHE_TIME));
+  }
+
+  private Match locate(String username) {
+    if (unknownUsers.get(username) != null) {
+      return null;
+    }
+    for (ChainLink link : chain) {
+      if (!link.isKnownMissing(username)) {
+        IdentityEntry entry = link.lookup.findEntry(username);
+        if (entry != null) {
+          return new Match(link, entry);
+        }
+        link.recordMissing(username);
+      }
+    }
+    unknownUsers.put(username, Boolean.TRUE);
+    return null;
+  }
+
+  private ChainLink findGroupOwner(String groupName) {
+    for (ChainLink link : chain) {
+      if (link.lookup.findGroup(groupName) != null) {
+        return link;
+      }
+    }
+    return null;
+  }
+
+  private ChainLink primary() {
+    if (chain.isEmpty()) {
+      throw new IllegalStateException("No identity lookups configured in the federated chain");
+    }
+    return chain.get(0);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ConfigurationProperties toProperties(Object entry) {
+    if (entry instanceof ConfigurationProperties) {
+      return (ConfigurationProperties) entry;
+    }
+    if (entry instanceof Map) {
+      return new ConfigurationProperties((Map<String, Object>) entry);
+    }
+    return null;
+  }
+
+  private static double getNumber(ConfigurationProperties config, String key, double defaultValue) {
+    String value = config.getProperty(key);
+    if (value != null && !value.trim().isEmpty()) {
+      try {
+        return Double.parseDouble(value.trim());
+      } catch (NumberFormatException e) {
+        // fall through to the default
+      }
+    }
+    return defaultValue;
+  }
+
+  private static final class ChainLink {
+    private final IdentityLookup lookup;
+    private final NegativeLookupCache negativeCache;
+    private final ExpiringCache<String, Boolean> exactMisses;
+
+    private ChainLink(IdentityLookup lookup, NegativeLookupCache negativeCache, ExpiringCache<String, Boolean> exactMisses) {
+      this.lookup = lookup;
+      this.negativeCache = negativeCache;
+      this.exactMisses = exactMisses;
+    }
+
+    // The filter is only a quick first check, a hit alone could be a false positive
+    private boolean isKnownMissing(String username) {
+      return negativeCache.isMissing(username) && exactMisses.get(username) != null;
+    }
+
+    private void recordMissing(String username) {
+      negativeCache.recordMissing(username);
+      exactMisses.put(username, Boolean.TRUE);
+    }
+
+    private void clearMissing() {
+      negativeCache.clear();
+      exactMisses.invalidateAll();
+    }
+  }
+
+  private static final class Match {
+    private final ChainLink link;
+    private final IdentityEntry entry;
+
+    private Match(ChainLink link, IdentityEntry entry) {
+      this.link = link;
+      this.entry = entry;
+    }
+  }
+}
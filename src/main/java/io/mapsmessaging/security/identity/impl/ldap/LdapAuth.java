@@ -33,6 +33,7 @@ public class LdapAuth implements IdentityLookup {
 
   public LdapAuth(ConfigurationProperties config) {
     ldapUserManager = new LdapUserManager(config);
+    ldapUserManager.start();
   }
 
   @Override
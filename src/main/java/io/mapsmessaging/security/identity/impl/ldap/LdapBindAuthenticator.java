@@ -0,0 +1,135 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.ldap;
+
+import io.mapsmessaging.configuration.ConfigurationProperties;
+import io.mapsmessaging.logging.Logger;
+import io.mapsmessaging.logging.LoggerFactory;
+import io.mapsmessaging.security.cache.ExpiringCache;
+import io.mapsmessaging.security.logging.AuthLogMessages;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Hashtable;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.naming.AuthenticationException;
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import javax.naming.ldap.LdapContext;
+
+/**
+ * Verifies passwords by binding to the directory as the user, for directories that do not expose
+ * password hashes.
+ *
+ * <p>Binds run on a pool of their own, separate from the one used for searches, so a burst of logins
+ * cannot starve user lookups. A pooled connection is reused by binding it as the next user to verify
+ * rather than reconnecting, and is never used for anything other than binds.
+ *
+ * <p>A successful verification is remembered for {@code bindCacheTime} milliseconds as a keyed
+ * digest of the password, so clients that reconnect often do not cost a bind each time. The digest
+ * key is random and held only in memory. Failures are not cached, and an empty password is always
+ * rejected since LDAP treats it as an unauthenticated bind.
+ */
+final class LdapBindAuthenticator implements AutoCloseable {
+
+  private static final String DIGEST_ALGORITHM = "HmacSHA256";
+
+  private final Logger logger = LoggerFactory.getLogger(LdapBindAuthenticator.class);
+  private final LdapConnectionPool bindPool;
+  private final ExpiringCache<String, byte[]> verified;
+  private final SecretKeySpec digestKey;
+
+  LdapBindAuthenticator(Hashtable<String, ?> environment, ConfigurationProperties config) {
+    this(new LdapConnectionPool(environment, config), config.getIntProperty("cacheSize", 10000), config.getLongProperty("bindCacheTime", 60000));
+  }
+
+  LdapBindAuthenticator(LdapConnectionPool bindPool, int cacheSize, long cacheTime) {
+    this.bindPool = bindPool;
+    verified = cacheTime > 0 ? new ExpiringCache<>(Math.max(1, cacheSize), cacheTime) : null;
+    byte[] key = new byte[32];
+    new SecureRandom().nextBytes(key);
+    digestKey = new SecretKeySpec(key, DIGEST_ALGORITHM);
+  }
+
+  boolean authenticate(String distinguishedName, byte[] password) {
+    if (distinguishedName == null || password == null || password.length == 0) {
+      return false;
+    }
+    byte[] digest = verified != null ? digest(distinguishedName, password) : null;
+    if (digest != null) {
+      byte[] previous = verified.get(distinguishedName);
+      if (previous != null && MessageDigest.isEqual(previous, digest)) {
+        return true;
+      }
+    }
+    try {
+      bindPool.execute(directoryContext -> {
+        bind(directoryContext, distinguishedName, password);
+        return null;
+      });
+      if (digest != null) {
+        verified.put(distinguishedName, digest);
+      }
+      return true;
+    } catch (AuthenticationException e) {
+      if (verified != null) {
+        verified.invalidate(distinguishedName);
+      }
+    } catch (NamingException e) {
+      logger.log(AuthLogMessages.LDAP_BIND_FAILURE, distinguishedName, e);
+    }
+    return false;
+  }
+
+  @Override
+  public void close() {
+    bindPool.close();
+  }
+
+  private static void bind(DirContext directoryContext, String distinguishedName, byte[] password) throws NamingException {
+    if (!(directoryContext instanceof LdapContext)) {
+      throw new NamingException("Bind authentication requires an LDAP v3 context");
+    }
+    LdapContext context = (LdapContext) directoryContext;
+    byte[] credentials = password.clone();
+    try {
+      context.addToEnvironment(Context.SECURITY_AUTHENTICATION, "simple");
+      context.addToEnvironment(Context.SECURITY_PRINCIPAL, distinguishedName);
+      context.addToEnvironment(Context.SECURITY_CREDENTIALS, credentials);
+      context.reconnect(null);
+    } finally {
+      context.removeFromEnvironment(Context.SECURITY_CREDENTIALS);
+      Arrays.fill(credentials, (byte) 0);
+    }
+  }
+
+  private byte[] digest(String distinguishedName, byte[] password) {
+    try {
+      Mac mac = Mac.getInstance(DIGEST_ALGORITHM);
+      mac.init(digestKey);
+      mac.update(distinguishedName.getBytes(StandardCharsets.UTF_8));
+      mac.update((byte) 0);
+      return mac.doFinal(password);
+    } catch (GeneralSecurityException e) {
+      return null;
+    }
+  }
+}
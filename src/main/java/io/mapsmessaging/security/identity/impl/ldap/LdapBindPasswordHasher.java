@@ -0,0 +1,111 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.ldap;
+
+import io.mapsmessaging.security.passwords.PasswordHasher;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Password handler for LDAP users whose password is verified by binding as the user.
+ *
+ * <p>There is no hash to compare against, so {@link #transformPassword} performs the bind and, only
+ * if it succeeded, returns a random one-off token that {@link #getFullPasswordHash()} then returns
+ * too. The password itself is never kept. The token is kept per thread, as the entry is shared between
+ * concurrent logins, and is zeroed and cleared once read or replaced.
+ */
+public class LdapBindPasswordHasher implements PasswordHasher {
+
+  private static final char[] NOT_VERIFIED = {'!'};
+  private static final int TOKEN_SIZE = 24;
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  private final LdapBindAuthenticator authenticator;
+  private final String distinguishedName;
+  private final ThreadLocal<byte[]> verified;
+
+  LdapBindPasswordHasher(LdapBindAuthenticator authenticator, String distinguishedName) {
+    this.authenticator = authenticator;
+    this.distinguishedName = distinguishedName;
+    verified = new ThreadLocal<>();
+  }
+
+  @Override
+  public byte[] transformPassword(byte[] password, byte[] salt, int cost) {
+    clear();
+    if (authenticator.authenticate(distinguishedName, password)) {
+      byte[] random = new byte[TOKEN_SIZE];
+      RANDOM.nextBytes(random);
+      byte[] token = Base64.getEncoder().encode(random);
+      Arrays.fill(random, (byte) 0);
+      verified.set(token.clone());
+      return token;
+    }
+    return new byte[0];
+  }
+
+  @Override
+  public PasswordHasher create(String password) {
+    return null;
+  }
+
+  @Override
+  public String getKey() {
+    return null;
+  }
+
+  @Override
+  public boolean hasSalt() {
+    return false;
+  }
+
+  @Override
+  public byte[] getSalt() {
+    return new byte[0];
+  }
+
+  @Override
+  public byte[] getPassword() {
+    return new byte[0];
+  }
+
+  @Override
+  public char[] getFullPasswordHash() {
+    byte[] token = verified.get();
+    if (token == null) {
+      return NOT_VERIFIED.clone();
+    }
+    char[] hash = new String(token, StandardCharsets.US_ASCII).toCharArray();
+    clear();
+    return hash;
+  }
+
+  private void clear() {
+    byte[] token = verified.get();
+    if (token != null) {
+      Arrays.fill(token, (byte) 0);
+      verified.remove();
+    }
+  }
+
+  @Override
+  public String getName() {
+    return "ldap-bind";
+  }
+}
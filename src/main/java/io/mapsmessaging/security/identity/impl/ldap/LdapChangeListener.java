@@ -0,0 +1,213 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.ldap;
+
+import io.mapsmessaging.logging.Logger;
+import io.mapsmessaging.logging.LoggerFactory;
+import io.mapsmessaging.security.logging.AuthLogMessages;
+import java.util.Hashtable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.naming.Binding;
+import javax.naming.InvalidNameException;
+import javax.naming.NamingException;
+import javax.naming.directory.InitialDirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.event.EventContext;
+import javax.naming.event.EventDirContext;
+import javax.naming.event.NamespaceChangeListener;
+import javax.naming.event.NamingEvent;
+import javax.naming.event.NamingExceptionEvent;
+import javax.naming.event.ObjectChangeListener;
+import javax.naming.ldap.LdapName;
+
+/**
+ * Keeps the caches of an {@link LdapUserManager} current by subscribing to directory changes.
+ *
+ * <p>Subscriptions use the JNDI event API, which the JDK's LDAP provider implements with a persistent
+ * search, so the directory sees one long-lived search per base instead of periodic reloads. Adds,
+ * modifies, renames and deletes of users and groups are applied to the caches as they arrive.
+ *
+ * <p>A persistent search does not replay changes missed while it was down. If the subscription fails
+ * the caches are cleared, and cleared again once it has been re-established after the retry interval,
+ * so nothing changed in between is served from the cache.
+ */
+final class LdapChangeListener implements AutoCloseable {
+
+  private static class Holder {
+    static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "ldap-change-listener");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  private final Logger logger = LoggerFactory.getLogger(LdapChangeListener.class);
+  private final LdapUserManager manager;
+  private final Hashtable<String, ?> environment;
+  private final long retryInterval;
+  private final ChangeHandler userHandler;
+  private final ChangeHandler groupHandler;
+  private EventDirContext context;
+  private boolean subscribed;
+  private boolean closed;
+
+  LdapChangeListener(LdapUserManager manager, Hashtable<String, ?> environment, long retryInterval) {
+    this.manager = manager;
+    this.environment = environment;
+    this.retryInterval = Math.max(1000, retryInterval);
+    userHandler = new ChangeHandler(false);
+    groupHandler = new ChangeHandler(true);
+  }
+
+  synchronized void start() {
+    if (closed || context != null) {
+      return;
+    }
+    try {
+      EventDirContext eventContext = (EventDirContext) new InitialDirContext(environment).lookup("");
+      eventContext.addNamingListener(manager.getSearchBase(), "(uid=*)", controls(manager.getUserAttributes()), userHandler);
+      eventContext.addNamingListener(manager.getGroupSearchBase(), "(cn=*)", controls(manager.getGroupAttributes()), groupHandler);
+      context = eventContext;
+      if (subscribed) {
+        manager.resynchronise();
+      }
+      subscribed = true;
+    } catch (NamingException | ClassCastException e) {
+      logger.log(AuthLogMessages.LDAP_CHANGE_LISTENER_FAILURE, retryInterval, e);
+      Holder.SCHEDULER.schedule(this::start, retryInterval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    closeContext();
+  }
+
+  // Both handlers report the loss of the same connection, only the first one restarts the subscription
+  private synchronized void failed(EventContext source, NamingException exception) {
+    if (closed || source == null || source != context) {
+      return;
+    }
+    logger.log(AuthLogMessages.LDAP_CHANGE_LISTENER_FAILURE, retryInterval, exception);
+    closeContext();
+    manager.resynchronise();
+    Holder.SCHEDULER.schedule(this::start, retryInterval, TimeUnit.MILLISECONDS);
+  }
+
+  private void closeContext() {
+    if (context != null) {
+      try {
+        context.removeNamingListener(userHandler);
+        context.removeNamingListener(groupHandler);
+        context.close();
+      } catch (NamingException e) {
+        // The connection is being dropped anyway
+      }
+      context = null;
+    }
+  }
+
+  private static SearchControls controls(String[] attributes) {
+    SearchControls controls = new SearchControls();
+    controls.setReturningAttributes(attributes);
+    controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+    return controls;
+  }
+
+  // The entry is named by the leaf RDN, which is what old bindings of renamed entries carry
+  private static String leafValue(Binding binding) {
+    if (binding == null || binding.getName() == null) {
+      return null;
+    }
+    try {
+      LdapName name = new LdapName(binding.getName());
+      return name.isEmpty() ? null : name.getRdn(name.size() - 1).getValue().toString();
+    } catch (InvalidNameException e) {
+      return null;
+    }
+  }
+
+  final class ChangeHandler implements NamespaceChangeListener, ObjectChangeListener {
+
+    private final boolean groups;
+
+    private ChangeHandler(boolean groups) {
+      this.groups = groups;
+    }
+
+    @Override
+    public void objectAdded(NamingEvent event) {
+      apply(event.getNewBinding(), true);
+    }
+
+    @Override
+    public void objectChanged(NamingEvent event) {
+      apply(event.getNewBinding(), false);
+    }
+
+    @Override
+    public void objectRenamed(NamingEvent event) {
+      remove(event.getOldBinding());
+      apply(event.getNewBinding(), true);
+    }
+
+    @Override
+    public void objectRemoved(NamingEvent event) {
+      remove(event.getOldBinding());
+    }
+
+    @Override
+    public void namingExceptionThrown(NamingExceptionEvent event) {
+      failed(event.getEventContext(), event.getException());
+    }
+
+    private void apply(Binding binding, boolean added) {
+      if (!(binding instanceof SearchResult)) {
+        return;
+      }
+      SearchResult result = (SearchResult) binding;
+      try {
+        if (groups) {
+          manager.applyGroupChange(result);
+        } else {
+          manager.applyUserChange(result, added);
+        }
+      } catch (NamingException | RuntimeException e) {
+        logger.log(AuthLogMessages.LDAP_LOAD_FAILURE, e);
+        manager.resynchronise();
+      }
+    }
+
+    private void remove(Binding binding) {
+      String name = binding instanceof SearchResult ? manager.nameOf((SearchResult) binding, groups) : null;
+      if (name == null) {
+        name = leafValue(binding);
+      }
+      if (name != null) {
+        if (groups) {
+          manager.removeGroupChange(name);
+        } else {
+          manager.removeUserChange(name);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.ldap;
+
+import io.mapsmessaging.configuration.ConfigurationProperties;
+import java.lang.ref.WeakReference;
+import java.util.Deque;
+import java.util.Hashtable;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.naming.CommunicationException;
+import javax.naming.InterruptedNamingException;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.DirContext;
+import javax.naming.ldap.InitialLdapContext;
+
+/**
+ * Bounded pool of bound LDAP directory contexts.
+ *
+ * <p>Opening a context costs a TCP connect, usually a TLS handshake and a bind, so contexts are kept
+ * open and handed out to {@link #execute(LdapOperation)} one caller at a time. At most
+ * {@code poolMaxSize} contexts are open at once; a caller that cannot get one within
+ * {@code poolWaitTimeout} milliseconds gets a {@link ServiceUnavailableException}.
+ *
+ * <p>A context is closed rather than reused once it is older than {@code poolMaxLifetime}, has been
+ * idle for longer than {@code poolIdleTimeout}, or if the operation using it failed with a
+ * communication error. One that has been idle for longer than {@code poolValidationInterval} is
+ * checked by reading the root DSE before it is handed out. Idle contexts are also swept in the
+ * background so an unused pool does not hold connections open against the server.
+ */
+public class LdapConnectionPool implements AutoCloseable {
+
+  private static class Holder {
+    static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "ldap-pool-evictor");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  private static final String[] VALIDATION_ATTRIBUTES = {"objectClass"};
+
+  private final ContextFactory factory;
+  private final long waitTimeout;
+  private final long idleTimeout;
+  private final long maxLifetime;
+  private final long validationInterval;
+  private final Semaphore permits;
+  private final Deque<PooledContext> idle;
+  private final AtomicInteger open;
+  private final ScheduledFuture<?> eviction;
+  private volatile boolean closed;
+
+  public LdapConnectionPool(Hashtable<String, ?> environment, ConfigurationProperties config) {
+    this(
+        () -> new InitialLdapContext(environment, null),
+        config.getIntProperty("poolMaxSize", 8),
+        config.getLongProperty("poolWaitTimeout", 5000),
+        config.getLongProperty("poolIdleTimeout", 60000),
+        config.getLongProperty("poolMaxLifetime", 1800000),
+        config.getLongProperty("poolValidationInterval", 30000)
+    );
+  }
+
+  LdapConnectionPool(ContextFactory factory, int maxSize, long waitTimeout, long idleTimeout, long maxLifetime, long validationInterval) {
+    this.factory = factory;
+    this.waitTimeout = Math.max(0, waitTimeout);
+    this.idleTimeout = idleTimeout > 0 ? idleTimeout : Long.MAX_VALUE;
+    this.maxLifetime = maxLifetime > 0 ? maxLifetime : Long.MAX_VALUE;
+    this.validationInterval = Math.max(0, validationInterval);
+    permits = new Semaphore(Math.max(1, maxSize), true);
+    idle = new ConcurrentLinkedDeque<>();
+    open = new AtomicInteger();
+    long sweep = Math.max(1000, Math.min(Math.min(this.idleTimeout, this.maxLifetime), 60000) / 2);
+    eviction = Eviction.schedule(this, sweep);
+  }
+
+  /**
+   * Runs the operation against a pooled context. Any results must be fully read before the operation
+   * returns, since the context is handed to another caller as soon as it does.
+   */
+  public <T> T execute(LdapOperation<T> operation) throws NamingException {
+    PooledContext pooled = borrow();
+    boolean reusable = false;
+    try {
+      T result = operation.apply(pooled.context);
+      reusable = true;
+      return result;
+    } catch (CommunicationException | ServiceUnavailableException e) {
+      throw e;
+    } catch (NamingException e) {
+      // The server answered, so the connection itself is still good
+      reusable = true;
+      throw e;
+    } finally {
+      release(pooled, reusable);
+    }
+  }
+
+  public int getOpenCount() {
+    return open.get();
+  }
+
+  public int getIdleCount() {
+    return idle.size();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    eviction.cancel(false);
+    PooledContext pooled;
+    while ((pooled = idle.pollFirst()) != null) {
+      discard(pooled);
+    }
+  }
+
+  private PooledContext borrow() throws NamingException {
+    if (closed) {
+      throw new ServiceUnavailableException("LDAP connection pool has been closed");
+    }
+    acquirePermit();
+    try {
+      long now = System.currentTimeMillis();
+      PooledContext pooled;
+      while ((pooled = idle.pollFirst()) != null) {
+        if (!isExpired(pooled, now) && isValid(pooled, now)) {
+          return pooled;
+        }
+        discard(pooled);
+      }
+      pooled = new PooledContext(factory.create(), now);
+      open.incrementAndGet();
+      return pooled;
+    } catch (NamingException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  private void acquirePermit() throws NamingException {
+    try {
+      if (!permits.tryAcquire(waitTimeout, TimeUnit.MILLISECONDS)) {
+        throw new ServiceUnavailableException("Timed out after " + waitTimeout + "ms waiting for an LDAP connection");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedNamingException("Interrupted while waiting for an LDAP connection");
+    }
+  }
+
+  private void release(PooledContext pooled, boolean reusable) {
+    long now = System.currentTimeMillis();
+    if (reusable && !closed && now - pooled.created < maxLifetime) {
+      pooled.lastUsed = now;
+      idle.offerFirst(pooled);
+      if (closed && idle.remove(pooled)) {
+        discard(pooled);
+      }
+    } else {
+      discard(pooled);
+    }
+    permits.release();
+  }
+
+  void evictIdle() {
+    long now = System.currentTimeMillis();
+    for (PooledContext pooled : idle) {
+      if (isExpired(pooled, now) && idle.remove(pooled)) {
+        // It may have been borrowed and returned since it was checked
+        if (isExpired(pooled, now)) {
+          discard(pooled);
+        } else {
+          idle.offerFirst(pooled);
+        }
+      }
+    }
+  }
+
+  private boolean isExpired(PooledContext pooled, long now) {
+    return now - pooled.created >= maxLifetime || now - pooled.lastUsed >= idleTimeout;
+  }
+
+  private boolean isValid(PooledContext pooled, long now) {
+    if (now - pooled.lastUsed < validationInterval) {
+      return true;
+    }
+    try {
+      pooled.context.getAttributes("", VALIDATION_ATTRIBUTES);
+      return true;
+    } catch (NamingException | RuntimeException e) {
+      return false;
+    }
+  }
+
+  private void discard(PooledContext pooled) {
+    open.decrementAndGet();
+    try {
+      pooled.context.close();
+    } catch (NamingException | RuntimeException e) {
+      // The connection is being dropped anyway
+    }
+  }
+
+  @FunctionalInterface
+  public interface LdapOperation<T> {
+    T apply(DirContext context) throws NamingException;
+  }
+
+  @FunctionalInterface
+  interface ContextFactory {
+    DirContext create() throws NamingException;
+  }
+
+  private static final class PooledContext {
+    private final DirContext context;
+    private final long created;
+    private volatile long lastUsed;
+
+    private PooledContext(DirContext context, long created) {
+      this.context = context;
+      this.created = created;
+      this.lastUsed = created;
+    }
+  }
+
+  // Holds the pool weakly so an abandoned pool can still be collected, cancelling its sweep when it is
+  private static final class Eviction implements Runnable {
+    private final WeakReference<LdapConnectionPool> pool;
+    private volatile ScheduledFuture<?> future;
+
+    private Eviction(LdapConnectionPool pool) {
+      this.pool = new WeakReference<>(pool);
+    }
+
+    static ScheduledFuture<?> schedule(LdapConnectionPool pool, long interval) {
+      Eviction eviction = new Eviction(pool);
+      eviction.future = Holder.EVICTOR.scheduleWithFixedDelay(eviction, interval, interval, TimeUnit.MILLISECONDS);
+      return eviction.future;
+    }
+
+    @Override
+    public void run() {
+      LdapConnectionPool current = pool.get();
+      if (current == null) {
+        ScheduledFuture<?> scheduled = future;
+        if (scheduled != null) {
+          scheduled.cancel(false);
+        }
+        return;
+      }
+      current.evictIdle();
+    }
+  }
+}
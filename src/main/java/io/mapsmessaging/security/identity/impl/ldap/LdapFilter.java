@@ -0,0 +1,51 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.ldap;
+
+/**
+ * Builds LDAP search filters from untrusted values.
+ *
+ * <p>Values are escaped as described in RFC 4515, so a username such as {@code *)(uid=*} matches
+ * only itself rather than widening the search.
+ */
+final class LdapFilter {
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private LdapFilter() {
+  }
+
+  static String equalTo(String attribute, String value) {
+    return "(" + attribute + "=" + escape(value) + ")";
+  }
+
+  static String escape(String value) {
+    StringBuilder sb = null;
+    for (int x = 0; x < value.length(); x++) {
+      char ch = value.charAt(x);
+      if (ch == '\\' || ch == '*' || ch == '(' || ch == ')' || ch == '\0') {
+        if (sb == null) {
+          sb = new StringBuilder(value.length() + 8).append(value, 0, x);
+        }
+        sb.append('\\').append(HEX[ch >> 4]).append(HEX[ch & 0xF]);
+      } else if (sb != null) {
+        sb.append(ch);
+      }
+    }
+    return sb != null ? sb.toString() : value;
+  }
+}
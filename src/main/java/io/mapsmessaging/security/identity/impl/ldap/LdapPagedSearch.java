@@ -0,0 +1,100 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.ldap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+
+/**
+ * Runs a subtree search a page at a time using the Simple Paged Results control (RFC 2696), so a
+ * whole directory can be read without hitting the server's size limit or holding one huge result.
+ * Each page is read in full and handed to the consumer before the next one is requested.
+ */
+final class LdapPagedSearch {
+
+  private final String searchBase;
+  private final String filter;
+  private final String[] attributes;
+  private final int pageSize;
+
+  LdapPagedSearch(String searchBase, String filter, String[] attributes, int pageSize) {
+    this.searchBase = searchBase;
+    this.filter = filter;
+    this.attributes = attributes;
+    this.pageSize = Math.max(1, pageSize);
+  }
+
+  void search(DirContext directoryContext, PageConsumer consumer) throws NamingException {
+    if (!(directoryContext instanceof LdapContext)) {
+      throw new NamingException("Paged searches require an LDAP v3 context");
+    }
+    LdapContext context = (LdapContext) directoryContext;
+    SearchControls controls = new SearchControls();
+    controls.setReturningAttributes(attributes);
+    controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+    byte[] cookie = null;
+    try {
+      do {
+        context.setRequestControls(new Control[]{new PagedResultsControl(pageSize, cookie, Control.CRITICAL)});
+        List<SearchResult> page = new ArrayList<>(pageSize);
+        NamingEnumeration<SearchResult> results = context.search(searchBase, filter, controls);
+        try {
+          while (results.hasMore()) {
+            page.add(results.next());
+          }
+        } finally {
+          results.close();
+        }
+        consumer.accept(page);
+        cookie = getCookie(context.getResponseControls());
+      } while (cookie != null && cookie.length > 0);
+    } catch (IOException e) {
+      NamingException namingException = new NamingException("Unable to encode the paged results control");
+      namingException.setRootCause(e);
+      throw namingException;
+    } finally {
+      // The context goes back to the pool, so it must not carry the paging control to the next caller
+      context.setRequestControls(null);
+    }
+  }
+
+  private static byte[] getCookie(Control[] controls) {
+    if (controls != null) {
+      for (Control control : controls) {
+        if (control instanceof PagedResultsResponseControl) {
+          return ((PagedResultsResponseControl) control).getCookie();
+        }
+      }
+    }
+    return null;
+  }
+
+  @FunctionalInterface
+  interface PageConsumer {
+    void accept(List<SearchResult> page) throws NamingException;
+  }
+}
@@ -16,11 +16,14 @@
 
 package io.mapsmessaging.security.identity.impl.ldap;
 
+import io.mapsmessaging.security.identity.GroupEntry;
 import io.mapsmessaging.security.identity.IdentityEntry;
 import io.mapsmessaging.security.identity.principals.FullNamePrincipal;
 import io.mapsmessaging.security.identity.principals.HomeDirectoryPrincipal;
+import io.mapsmessaging.security.passwords.PasswordHandler;
 import io.mapsmessaging.security.passwords.PasswordHandlerFactory;
 import java.security.Principal;
+import java.util.Collection;
 import java.util.Enumeration;
 import java.util.Set;
 import javax.naming.NamingEnumeration;
@@ -33,15 +36,22 @@ public class LdapUser extends IdentityEntry {
 
   private final Attributes attrs;
 
+  @Getter
+  private final String distinguishedName;
   @Getter
   private String homeDirectory;
   @Getter
   private String description;
 
   public LdapUser(String username, char[] password, Attributes attrs) {
-    super.username = username;
+    this(username, null, attrs, PasswordHandlerFactory.getInstance().parse(new String(password)));
     super.password = new String(password);
-    super.passwordHasher = PasswordHandlerFactory.getInstance().parse(new String(password));
+  }
+
+  public LdapUser(String username, String distinguishedName, Attributes attrs, PasswordHandler passwordHasher) {
+    super.username = username;
+    super.passwordHasher = passwordHasher;
+    this.distinguishedName = distinguishedName;
     this.attrs = attrs;
     NamingEnumeration<? extends Attribute> namingEnum = attrs.getAll();
     while (namingEnum.hasMoreElements()) {
@@ -58,6 +68,22 @@ public class LdapUser extends IdentityEntry {
     }
   }
 
+  /** Returns a copy of this user holding the given groups, used to replace a cached user rather than change it. */
+  LdapUser withGroups(Collection<GroupEntry> groups) {
+    LdapUser copy = new LdapUser(username, distinguishedName, attrs, passwordHasher);
+    copy.password = password;
+    copy.setGroups(groups);
+    return copy;
+  }
+
+  String getUserId() {
+    Attribute uid = attrs.get("uid");
+    try {
+      return uid != null ? uid.get().toString() : null;
+    } catch (NamingException e) {
+      return null;
+    }
+  }
 
   @Override
   protected Set<Principal> getPrincipals() {
@@ -19,98 +19,235 @@ package io.mapsmessaging.security.identity.impl.ldap;
 import io.mapsmessaging.configuration.ConfigurationProperties;
 import io.mapsmessaging.logging.Logger;
 import io.mapsmessaging.logging.LoggerFactory;
+import io.mapsmessaging.security.cache.ExpiringCache;
+import io.mapsmessaging.security.cache.NegativeLookupCache;
+import io.mapsmessaging.security.cache.RefreshingCache;
 import io.mapsmessaging.security.identity.GroupEntry;
 import io.mapsmessaging.security.identity.IdentityEntry;
 import io.mapsmessaging.security.identity.NoSuchUserFoundException;
 import io.mapsmessaging.security.logging.AuthLogMessages;
+import lombok.AccessLevel;
+import lombok.Getter;
 
+import javax.naming.InterruptedNamingException;
+import javax.naming.InvalidNameException;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.*;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class LdapUserManager {
 
+  private static class Holder {
+    static final ExecutorService REFRESH_EXECUTOR = createExecutor(2, "ldap-cache-refresh-");
+  }
+
   private final Logger logger = LoggerFactory.getLogger(LdapUserManager.class);
   private final String passwordName;
 
+  @Getter(AccessLevel.PACKAGE)
   private final String searchBase;
+  @Getter(AccessLevel.PACKAGE)
   private final String groupSearchBase;
 
-  private final Map<String, LdapUser> userMap;
-  private final Map<String, LdapGroup> groupMap;
-  private final Map<String, String> map;
+  private final RefreshingCache<String, LdapUser> userCache;
+  private final RefreshingCache<String, LdapGroup> groupCache;
+  private final NegativeLookupCache missingUsers;
+  private final ExpiringCache<String, Boolean> confirmedMissing;
+  private final LdapConnectionPool connectionPool;
+
+  private final LdapBindAuthenticator bindAuthenticator;
+  private final String bindDnPattern;
+  private final GroupResolution groupResolution;
+  private final Object membershipLock = new Object();
+  private final AtomicBoolean membershipRefreshing = new AtomicBoolean();
+  private volatile Map<String, List<LdapGroup>> membership;
+  private volatile long membershipLoaded;
+
+  private final boolean preload;
+  private final int pageSize;
+  private final int preloadParallelism;
+  private final long cacheTime;
+  private final Object preloadLock = new Object();
+  private final AtomicLong lastPreload = new AtomicLong();
+  private volatile Map<String, LdapUser> preloadedUsers;
+  private final LdapChangeListener changeListener;
 
   public LdapUserManager(ConfigurationProperties config) {
-    map = new LinkedHashMap<>();
+    Hashtable<String, String> environment = new Hashtable<>();
     for (Entry<String, ?> entry : config.entrySet()) {
-      map.put(entry.getKey(), entry.getValue().toString());
+      environment.put(entry.getKey(), entry.getValue().toString());
     }
     passwordName = config.getProperty("passwordKeyName");
 
-    userMap = new LinkedHashMap<>();
-    groupMap = new LinkedHashMap<>();
+    int cacheSize = Math.max(1, config.getIntProperty("cacheSize", 10000));
+    cacheTime = config.getLongProperty("cacheTime", 300000);
+    long refreshTime = config.getLongProperty("cacheRefreshTime", 60000);
+    userCache = new RefreshingCache<>(cacheSize, cacheTime, refreshTime, this::loadUser, Holder.REFRESH_EXECUTOR);
+    groupCache = new RefreshingCache<>(cacheSize, cacheTime, refreshTime, this::loadGroup, Holder.REFRESH_EXECUTOR);
+
+    int negativeCacheSize = Math.max(1, config.getIntProperty("negativeCacheSize", 100000));
+    long negativeCacheTime = config.getLongProperty("negativeCacheTime", 60000);
+    missingUsers = new NegativeLookupCache(negativeCacheSize, getDouble(config, "negativeCacheFalsePositiveRate", 0.01), negativeCacheTime);
+    confirmedMissing = new ExpiringCache<>(Math.max(1, config.getIntProperty("negativeCacheExactSize", 10000)), negativeCacheTime);
     searchBase = config.getProperty("searchBase");
     groupSearchBase = config.getProperty("groupSearchBase");
+    connectionPool = new LdapConnectionPool(environment, config);
+
+    bindAuthenticator = "bind".equalsIgnoreCase(config.getProperty("authMode")) ? new LdapBindAuthenticator(environment, config) : null;
+    bindDnPattern = config.getProperty("bindDnPattern");
+    groupResolution = GroupResolution.parse(config.getProperty("groupResolution"));
+    preload = config.getBooleanProperty("preload", false);
+    pageSize = Math.max(1, config.getIntProperty("preloadPageSize", 500));
+    preloadParallelism = Math.max(1, config.getIntProperty("preloadParallelism", Runtime.getRuntime().availableProcessors()));
+    preloadedUsers = new ConcurrentHashMap<>();
+
+    if ("persistentSearch".equalsIgnoreCase(config.getProperty("changeNotification"))) {
+      changeListener = new LdapChangeListener(this, environment, config.getLongProperty("changeRetryInterval", 30000));
+    } else {
+      changeListener = null;
+    }
+  }
+
+  /**
+   * Starts listening for directory changes when configured to. Kept out of the constructor so the
+   * listener thread never sees a partly constructed manager.
+   */
+  public void start() {
+    if (changeListener != null) {
+      changeListener.start();
+    }
   }
 
   public IdentityEntry findEntry(String username) {
-    LdapUser entry = userMap.get(username);
-    if (entry == null) {
+    LdapUser entry = userCache.get(username);
+    if (entry == null && !isKnownMissing(username)) {
       entry = findUser(username);
     }
     return entry;
   }
 
+  /**
+   * Clears the record of usernames that recently could not be found, used once the directory is
+   * known to hold users it did not have before.
+   */
+  public void clearMissingUsers() {
+    missingUsers.clear();
+    confirmedMissing.invalidateAll();
+  }
+
+  // The bloom filter alone could turn away a real user, so a hit is only trusted when the exact cache
+  // confirms it. A name the filter reports but the exact cache no longer holds is searched for again
+  private boolean isKnownMissing(String username) {
+    return missingUsers.isMissing(username) && confirmedMissing.get(username) != null;
+  }
+
   public char[] getPasswordHash(String username) throws NoSuchUserFoundException {
     IdentityEntry entry = findEntry(username);
     if (entry != null) {
-      return entry.getPasswordHasher().getFullPasswordHash();
+      // Bind verified users have no hash that could be handed out
+      return bindAuthenticator != null ? new char[0] : entry.getPasswordHasher().getFullPasswordHash();
     }
     throw new NoSuchUserFoundException("Password entry for " + username + " not found");
   }
 
   private LdapUser findUser(String username) {
+    try {
+      LdapUser ldapUser = loadUser(username);
+      if (ldapUser != null) {
+        userCache.put(username, ldapUser);
+      } else {
+        missingUsers.recordMissing(username);
+        confirmedMissing.put(username, Boolean.TRUE);
+      }
+      return ldapUser;
+    } catch (NamingException e) {
+      logger.log(AuthLogMessages.LDAP_LOAD_FAILURE, e);
+    }
+    return null;
+  }
+
+  private LdapUser loadUser(String username) throws NamingException {
+    LdapUser ldapUser = connectionPool.execute(directoryContext -> searchUser(directoryContext, username));
+    if (ldapUser != null && groupResolution == GroupResolution.GROUP_MAP) {
+      for (LdapGroup groupEntry : getMembership().getOrDefault(username, List.of())) {
+        ldapUser.addGroup(groupEntry);
+      }
+    }
+    return ldapUser;
+  }
+
+  private LdapUser searchUser(DirContext directoryContext, String username) throws NamingException {
     SearchControls searchControls = new SearchControls();
-    String[] returnedAtts = {"cn", "givenName", "gecos", "homeDirectory", "gidNumber", passwordName};
-    searchControls.setReturningAttributes(returnedAtts);
+    searchControls.setReturningAttributes(userAttributes());
     searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
-    String searchFilter = "(uid=" + username + ")";
-    DirContext directoryContext = null;
+    NamingEnumeration<SearchResult> results = directoryContext.search(searchBase, LdapFilter.equalTo("uid", username), searchControls);
     try {
-      directoryContext = new InitialDirContext(new Hashtable<>(map));
-      NamingEnumeration<SearchResult> results = directoryContext.search(searchBase, searchFilter, searchControls);
       while (results.hasMore()) {
         SearchResult result = results.next();
         Attributes attrs = result.getAttributes();
-
-        Attribute user = attrs.get("cn");
-        String userString = (String) user.get();
-        Attribute password = attrs.get(passwordName);
-        if (password != null) {
-          Object v = password.get();
-          if (v instanceof byte[]) {
-            String s = new String((byte[]) v);
-            if (s.toLowerCase().startsWith("{crypt}")) {
-              s = s.substring("{crypt}".length());
-            }
-            LdapUser ldapUser = new LdapUser(userString, s.toCharArray(), attrs);
+        LdapUser ldapUser = toUser(result, username);
+        if (ldapUser != null) {
+          if (groupResolution == GroupResolution.MEMBER_OF) {
+            addMemberOfGroups(ldapUser, username, attrs.get("memberOf"));
+          } else if (groupResolution == GroupResolution.MEMBER_UID) {
             loadGroups(ldapUser, directoryContext, username);
-            userMap.put(ldapUser.getUsername(), ldapUser);
-            return ldapUser;
           }
+          return ldapUser;
         }
       }
-    } catch (NamingException e) {
-      logger.log(AuthLogMessages.LDAP_LOAD_FAILURE, e);
     } finally {
-      if (directoryContext != null) {
-        try {
-          directoryContext.close();
-        } catch (NamingException e) {
-          // we can ignore the close exception here
+      results.close();
+    }
+    return null;
+  }
+
+  String[] getUserAttributes() {
+    return userAttributes();
+  }
+
+  String[] getGroupAttributes() {
+    return new String[]{"cn", "memberUid"};
+  }
+
+  private String[] userAttributes() {
+    List<String> attributes = new ArrayList<>(List.of("cn", "uid", "givenName", "gecos", "homeDirectory", "gidNumber"));
+    if (groupResolution == GroupResolution.MEMBER_OF) {
+      attributes.add("memberOf");
+    }
+    if (bindAuthenticator == null) {
+      attributes.add(passwordName);
+    }
+    return attributes.toArray(new String[0]);
+  }
+
+  private LdapUser toUser(SearchResult result, String userId) throws NamingException {
+    Attributes attrs = result.getAttributes();
+    Attribute user = attrs.get("cn");
+    if (user != null && bindAuthenticator != null) {
+      String distinguishedName = bindDnPattern != null ? bindDnPattern.replace("{0}", Rdn.escapeValue(userId)) : result.getNameInNamespace();
+      return new LdapUser((String) user.get(), distinguishedName, attrs, new LdapBindPasswordHasher(bindAuthenticator, distinguishedName));
+    }
+    Attribute password = attrs.get(passwordName);
+    if (user != null && password != null) {
+      Object v = password.get();
+      if (v instanceof byte[]) {
+        String s = new String((byte[]) v);
+        if (s.toLowerCase().startsWith("{crypt}")) {
+          s = s.substring("{crypt}".length());
         }
+        return new LdapUser((String) user.get(), s.toCharArray(), attrs);
       }
     }
     return null;
@@ -123,44 +260,428 @@ public class LdapUserManager {
     groupSearchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
 
     // Perform LDAP search
-    NamingEnumeration<SearchResult> searchResults = directoryContext.search(groupSearchBase, "(memberUid=" + userId + ")", groupSearchControls);
-    while (searchResults.hasMoreElements()) {
-      SearchResult result = searchResults.nextElement();
-      Attributes attrs = result.getAttributes();
-      if (attrs.size() > 0) {
-        processGroup(ldapUser, attrs.get("cn"));
+    NamingEnumeration<SearchResult> searchResults = directoryContext.search(groupSearchBase, LdapFilter.equalTo("memberUid", userId), groupSearchControls);
+    try {
+      while (searchResults.hasMoreElements()) {
+        SearchResult result = searchResults.nextElement();
+        Attributes attrs = result.getAttributes();
+        Attribute groupName = attrs.get("cn");
+        if (groupName != null) {
+          processGroup(ldapUser, userId, groupName.get().toString());
+        }
       }
+    } finally {
+      searchResults.close();
     }
   }
 
 
-  private void processGroup(LdapUser ldapUser, Attribute groupName){
-    try{
-    if (groupName != null) {
-      String name = groupName.get().toString();
-      LdapGroup groupEntry = groupMap.get(name);
-      if(groupEntry == null){
-        groupEntry = new LdapGroup(name);
-        groupMap.put(groupEntry.getName(), groupEntry);
+  // The memberOf values are group DNs, the group name is taken from the leaf RDN
+  private void addMemberOfGroups(LdapUser ldapUser, String userId, Attribute memberOf) throws NamingException {
+    if (memberOf == null) {
+      return;
+    }
+    NamingEnumeration<?> values = memberOf.getAll();
+    while (values.hasMore()) {
+      String dn = values.next().toString();
+      try {
+        LdapName name = new LdapName(dn);
+        if (!name.isEmpty()) {
+          processGroup(ldapUser, userId, name.getRdn(name.size() - 1).getValue().toString());
+        }
+      } catch (InvalidNameException e) {
+        logger.log(AuthLogMessages.LDAP_LOAD_FAILURE, e);
       }
-        if (!groupEntry.isInGroup(ldapUser.getUsername())) {
-        groupEntry.addUser(ldapUser.getUsername());
+    }
+  }
+
+  // Uses the cached group when there is one, otherwise a placeholder until the group itself is looked up
+  private void processGroup(LdapUser ldapUser, String userId, String name) {
+    LdapGroup groupEntry = groupCache.get(name);
+    if (groupEntry == null) {
+      groupEntry = new LdapGroup(name);
+      groupEntry.addUser(userId);
+    }
+    ldapUser.addGroup(groupEntry);
+  }
+
+  private LdapGroup loadGroup(String groupName) throws NamingException {
+    return connectionPool.execute(directoryContext -> searchGroup(directoryContext, groupName));
+  }
+
+  private LdapGroup searchGroup(DirContext directoryContext, String groupName) throws NamingException {
+    SearchControls groupSearchControls = new SearchControls();
+    groupSearchControls.setReturningAttributes(getGroupAttributes());
+    groupSearchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+    NamingEnumeration<SearchResult> searchResults = directoryContext.search(groupSearchBase, LdapFilter.equalTo("cn", groupName), groupSearchControls);
+    try {
+      return searchResults.hasMore() ? toGroup(groupName, searchResults.next().getAttributes()) : null;
+    } finally {
+      searchResults.close();
+    }
+  }
+
+  private LdapGroup toGroup(String groupName, Attributes attrs) throws NamingException {
+    LdapGroup groupEntry = new LdapGroup(groupName);
+    Attribute members = attrs.get("memberUid");
+    if (members != null) {
+      NamingEnumeration<?> values = members.getAll();
+      while (values.hasMore()) {
+        groupEntry.addUser(values.next().toString());
       }
-      if (!ldapUser.isInGroup(name)) {
-        ldapUser.addGroup(groupEntry);
+    }
+    return groupEntry;
+  }
+
+  public List<IdentityEntry> getUsers(){
+    if (preload) {
+      preloadDirectory();
+      return new ArrayList<>(preloadedUsers.values());
+    }
+    return new ArrayList<>(userCache.values());
+  }
+
+  // Reloads the whole directory once the previous snapshot is as old as the cache time. The lock only
+  // keeps preloads from overlapping, so resynchronising never waits for one to finish
+  private void preloadDirectory() {
+    if (System.currentTimeMillis() - lastPreload.get() < cacheTime) {
+      return;
+    }
+    synchronized (preloadLock) {
+      long now = System.currentTimeMillis();
+      long previous = lastPreload.get();
+      if (now - previous < cacheTime) {
+        return;
+      }
+      try {
+        Map<String, LdapUser> loaded = loadDirectory();
+        if (!preloadedUsers.keySet().containsAll(loaded.keySet())) {
+          clearMissingUsers();
+        }
+        preloadedUsers = loaded;
+        // A resynchronise while loading may have been missed, so it then leaves the snapshot stale
+        lastPreload.compareAndSet(previous, now);
+      } catch (NamingException e) {
+        logger.log(AuthLogMessages.LDAP_LOAD_FAILURE, e);
       }
     }
+  }
+
+  /**
+   * Pages through every group and then every user in the directory. Groups are read first so each
+   * user is cached with its complete group list; the pages of users are converted, which includes
+   * parsing their password hashes, in parallel while the next page is being read. The users are
+   * returned as a snapshot of their own, since the user cache is bounded and may not hold them all.
+   */
+  private Map<String, LdapUser> loadDirectory() throws NamingException {
+    Map<String, List<LdapGroup>> groupMembership = loadGroupMembership();
+
+    ExecutorService executor = createExecutor(preloadParallelism, "ldap-preload-");
+    try {
+      Map<String, LdapUser> loaded = new ConcurrentHashMap<>();
+      List<Future<Void>> pages = new ArrayList<>();
+      LdapPagedSearch userSearch = new LdapPagedSearch(searchBase, "(uid=*)", userAttributes(), pageSize);
+      connectionPool.execute(directoryContext -> {
+        userSearch.search(directoryContext, page -> pages.add(executor.submit(() -> cacheUsers(page, groupMembership, loaded))));
+        return null;
+      });
+      for (Future<Void> page : pages) {
+        page.get();
+      }
+      return loaded;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof NamingException) {
+        throw (NamingException) e.getCause();
+      }
+      NamingException namingException = new NamingException("Failed to process a page of directory users");
+      namingException.setRootCause(e.getCause());
+      throw namingException;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedNamingException("Interrupted while loading the directory");
+    } finally {
+      executor.shutdownNow();
     }
-    catch(NamingException namingException){
-      logger.log(AuthLogMessages.LDAP_LOAD_FAILURE, namingException);
+  }
+
+  private Void cacheUsers(List<SearchResult> page, Map<String, List<LdapGroup>> groupMembership, Map<String, LdapUser> loaded) throws NamingException {
+    for (SearchResult result : page) {
+      Attributes attrs = result.getAttributes();
+      Attribute uid = attrs.get("uid");
+      String username = uid != null ? uid.get().toString() : null;
+      LdapUser ldapUser = username != null ? toUser(result, username) : null;
+      if (ldapUser != null) {
+        for (LdapGroup groupEntry : groupMembership.getOrDefault(username, List.of())) {
+          ldapUser.addGroup(groupEntry);
+        }
+        userCache.put(username, ldapUser);
+        loaded.put(username, ldapUser);
+      }
     }
+    return null;
   }
 
-  public List<IdentityEntry> getUsers(){
-    return new ArrayList<>(userMap.values());
+  /**
+   * Returns the groups of every user, reading all groups from the directory on first use. Once the map
+   * is older than the cache time it is reloaded in the background while the current one is served.
+   */
+  private Map<String, List<LdapGroup>> getMembership() throws NamingException {
+    Map<String, List<LdapGroup>> current = membership;
+    if (current == null) {
+      synchronized (membershipLock) {
+        current = membership;
+        if (current == null) {
+          current = loadGroupMembership();
+        }
+      }
+    } else if (System.currentTimeMillis() - membershipLoaded >= cacheTime && membershipRefreshing.compareAndSet(false, true)) {
+      Holder.REFRESH_EXECUTOR.execute(() -> {
+        try {
+          loadGroupMembership();
+        } catch (NamingException e) {
+          logger.log(AuthLogMessages.LDAP_LOAD_FAILURE, e);
+        } finally {
+          membershipRefreshing.set(false);
+        }
+      });
+    }
+    return current;
+  }
+
+  private Map<String, List<LdapGroup>> loadGroupMembership() throws NamingException {
+    long started = System.currentTimeMillis();
+    Map<String, List<LdapGroup>> groupMembership = new ConcurrentHashMap<>();
+    LdapPagedSearch groupSearch = new LdapPagedSearch(groupSearchBase, "(cn=*)", getGroupAttributes(), pageSize);
+    connectionPool.execute(directoryContext -> {
+      groupSearch.search(directoryContext, page -> {
+        for (SearchResult result : page) {
+          Attribute name = result.getAttributes().get("cn");
+          if (name != null) {
+            LdapGroup groupEntry = toGroup(name.get().toString(), result.getAttributes());
+            groupCache.put(groupEntry.getName(), groupEntry);
+            for (String member : groupEntry.getUsers()) {
+              groupMembership.computeIfAbsent(member, key -> new ArrayList<>()).add(groupEntry);
+            }
+          }
+        }
+      });
+      return null;
+    });
+    membershipLoaded = started;
+    membership = groupMembership;
+    return groupMembership;
   }
 
   public GroupEntry findGroup(String groupName) {
-    return groupMap.get(groupName);
+    LdapGroup groupEntry = groupCache.get(groupName);
+    if (groupEntry == null) {
+      try {
+        groupEntry = loadGroup(groupName);
+        if (groupEntry != null) {
+          groupCache.put(groupName, groupEntry);
+        }
+      } catch (NamingException e) {
+        logger.log(AuthLogMessages.LDAP_LOAD_FAILURE, e);
+      }
+    }
+    return groupEntry;
+  }
+
+  // <editor-fold desc="Directory change notifications">
+
+  /**
+   * Updates the cached user from a changed entry. Users that are not cached are left to be looked up,
+   * unless the whole directory is being preloaded. Group membership is kept from the cached entry since
+   * it changes through the group entries, except when it is read from the user's memberOf attribute.
+   */
+  void applyUserChange(SearchResult result, boolean added) throws NamingException {
+    String username = nameOf(result, false);
+    if (username == null) {
+      return;
+    }
+    if (added) {
+      clearMissingUsers();
+    }
+    LdapUser previous = userCache.peek(username);
+    if (previous == null && !preload) {
+      return;
+    }
+    LdapUser updated = toUser(result, username);
+    if (updated == null) {
+      removeUserChange(username);
+      return;
+    }
+    if (groupResolution == GroupResolution.MEMBER_OF) {
+      addMemberOfGroups(updated, username, result.getAttributes().get("memberOf"));
+    } else if (previous != null) {
+      for (GroupEntry groupEntry : previous.getGroups()) {
+        updated.addGroup(groupEntry);
+      }
+    } else {
+      Map<String, List<LdapGroup>> current = membership;
+      for (LdapGroup groupEntry : current != null ? current.getOrDefault(username, List.of()) : List.<LdapGroup>of()) {
+        updated.addGroup(groupEntry);
+      }
+    }
+    replaceUser(username, updated);
+  }
+
+  void removeUserChange(String username) {
+    userCache.invalidate(username);
+    if (preload) {
+      preloadedUsers.remove(username);
+    }
+  }
+
+  private void replaceUser(String username, LdapUser ldapUser) {
+    userCache.put(username, ldapUser);
+    if (preload) {
+      preloadedUsers.put(username, ldapUser);
+    }
+  }
+
+  /**
+   * Updates the cached group from a changed entry. When groups are read from the users' memberOf
+   * attribute the group entry does not say who its members are, so users then change through their
+   * own entries and only the group cache is updated here.
+   */
+  void applyGroupChange(SearchResult result) throws NamingException {
+    String name = nameOf(result, true);
+    if (name != null) {
+      LdapGroup updated = toGroup(name, result.getAttributes());
+      groupCache.put(name, updated);
+      if (groupResolution != GroupResolution.MEMBER_OF) {
+        updateMembership(name, updated);
+      }
+    }
+  }
+
+  void removeGroupChange(String name) {
+    groupCache.invalidate(name);
+    if (groupResolution != GroupResolution.MEMBER_OF) {
+      updateMembership(name, null);
+    }
+  }
+
+  String nameOf(SearchResult result, boolean group) {
+    Attribute attribute = result.getAttributes() != null ? result.getAttributes().get(group ? "cn" : "uid") : null;
+    try {
+      return attribute != null ? attribute.get().toString() : null;
+    } catch (NamingException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Drops everything cached, used when changes may have been missed.
+   */
+  void resynchronise() {
+    userCache.invalidateAll();
+    groupCache.invalidateAll();
+    membership = null;
+    clearMissingUsers();
+    lastPreload.set(0);
+  }
+
+  // Group changes are rare, so every cached user is checked rather than tracking who was a member before.
+  // Cached users are shared with callers, so affected users are replaced by a copy with the new groups
+  private void updateMembership(String name, LdapGroup updated) {
+    Set<String> members = updated != null ? updated.getUsers() : Set.of();
+    List<LdapUser> candidates = new ArrayList<>(userCache.values());
+    if (preload) {
+      candidates.addAll(preloadedUsers.values());
+    }
+    for (LdapUser ldapUser : candidates) {
+      String userId = ldapUser.getUserId();
+      boolean member = userId != null && members.contains(userId);
+      if (userId != null && (member || ldapUser.isInGroup(name))) {
+        List<GroupEntry> groups = new ArrayList<>();
+        for (GroupEntry groupEntry : ldapUser.getGroups()) {
+          if (!groupEntry.getName().equals(name)) {
+            groups.add(groupEntry);
+          }
+        }
+        if (member) {
+          groups.add(updated);
+        }
+        replaceUser(userId, ldapUser.withGroups(groups));
+      }
+    }
+    Map<String, List<LdapGroup>> current = membership;
+    if (current != null) {
+      Set<String> affected = new HashSet<>(members);
+      for (Entry<String, List<LdapGroup>> entry : current.entrySet()) {
+        for (LdapGroup groupEntry : entry.getValue()) {
+          if (groupEntry.getName().equals(name)) {
+            affected.add(entry.getKey());
+          }
+        }
+      }
+      for (String member : affected) {
+        current.compute(member, (key, groups) -> {
+          List<LdapGroup> replaced = new ArrayList<>();
+          if (groups != null) {
+            for (LdapGroup groupEntry : groups) {
+              if (!groupEntry.getName().equals(name)) {
+                replaced.add(groupEntry);
+              }
+            }
+          }
+          if (members.contains(key)) {
+            replaced.add(updated);
+          }
+          return replaced.isEmpty() ? null : replaced;
+        });
+      }
+    }
+  }
+
+  // </editor-fold>
+
+  public void close() {
+    if (changeListener != null) {
+      changeListener.close();
+    }
+    connectionPool.close();
+    if (bindAuthenticator != null) {
+      bindAuthenticator.close();
+    }
+  }
+
+  private enum GroupResolution {
+    MEMBER_UID,
+    MEMBER_OF,
+    GROUP_MAP;
+
+    static GroupResolution parse(String value) {
+      if ("memberOf".equalsIgnoreCase(value)) {
+        return MEMBER_OF;
+      }
+      if ("groupMap".equalsIgnoreCase(value)) {
+        return GROUP_MAP;
+      }
+      return MEMBER_UID;
+    }
+  }
+
+  private static double getDouble(ConfigurationProperties config, String key, double defaultValue) {
+    String value = config.getProperty(key);
+    if (value != null && !value.trim().isEmpty()) {
+      try {
+        return Double.parseDouble(value.trim());
+      } catch (NumberFormatException e) {
+        // fall through to the default
+      }
+    }
+    return defaultValue;
+  }
+
+  private static ExecutorService createExecutor(int threads, String name) {
+    AtomicInteger counter = new AtomicInteger();
+    return Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, name + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
   }
 }
\ No newline at end of file
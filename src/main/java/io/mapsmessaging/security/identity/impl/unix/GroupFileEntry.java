@@ -20,6 +20,7 @@ package io.mapsmessaging.security.identity.impl.unix;
 import io.mapsmessaging.security.identity.GroupEntry;
 import io.mapsmessaging.security.identity.IllegalFormatException;
 import java.util.Collections;
+import java.util.Set;
 import java.util.StringTokenizer;
 import lombok.Getter;
 
@@ -45,4 +46,9 @@ public class GroupFileEntry extends GroupEntry {
       }
     }
   }
+
+  public GroupFileEntry(String name, int groupId, Set<String> userSet) {
+    super(name, userSet);
+    this.groupId = groupId;
+  }
 }
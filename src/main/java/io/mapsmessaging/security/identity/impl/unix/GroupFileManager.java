@@ -17,15 +17,16 @@
 package io.mapsmessaging.security.identity.impl.unix;
 
 import io.mapsmessaging.security.identity.GroupEntry;
-import io.mapsmessaging.security.identity.IdentityEntry;
 import io.mapsmessaging.security.identity.IllegalFormatException;
 import io.mapsmessaging.security.identity.impl.base.FileBaseGroups;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class GroupFileManager extends FileBaseGroups {
 
-  private final Map<Integer, GroupEntry> byId = new LinkedHashMap<>();
+  private volatile Map<Integer, GroupEntry> byId = new LinkedHashMap<>();
 
   public GroupFileManager(String filename) {
     super(filename);
@@ -34,21 +35,25 @@ public class GroupFileManager extends FileBaseGroups {
 
   @Override
   protected GroupEntry load(String line) throws IllegalFormatException {
-    GroupFileEntry entry = new GroupFileEntry(line);
-    byId.put(entry.getGroupId(), entry);
-    return entry;
+    return new GroupFileEntry(line);
   }
 
-  public GroupEntry findGroup(int id) {
-    return byId.get(id);
+  @Override
+  protected GroupEntry withMembers(GroupEntry group, Set<String> members) {
+    return new GroupFileEntry(group.getName(), ((GroupFileEntry) group).getGroupId(), members);
   }
 
   @Override
-  public void loadGroups(IdentityEntry identityEntry) {
-    for (GroupEntry groupEntry : byId.values()) {
-      if (groupEntry.isInGroup(identityEntry.getUsername())) {
-        identityEntry.addGroup(groupEntry);
-      }
+  protected void replaceEntries(List<GroupEntry> entries) {
+    super.replaceEntries(entries);
+    Map<Integer, GroupEntry> map = new LinkedHashMap<>();
+    for (GroupEntry group : getGroups()) {
+      map.put(((GroupFileEntry) group).getGroupId(), group);
     }
+    byId = map;
+  }
+
+  public GroupEntry findGroup(int id) {
+    return byId.get(id);
   }
 }
\ No newline at end of file
@@ -18,11 +18,12 @@ package io.mapsmessaging.security.identity.impl.unix;
 
 import io.mapsmessaging.security.identity.impl.base.FileLoader;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
-public class PasswordFileManager extends FileLoader {
+public class PasswordFileManager extends FileLoader<PasswordEntry> {
 
-  private final Map<String, PasswordEntry> users;
+  private volatile Map<String, PasswordEntry> users;
 
   public PasswordFileManager(String filename) {
     super(filename);
@@ -30,13 +31,18 @@ public class PasswordFileManager extends FileLoader {
     load();
   }
 
-  protected PasswordEntry load(String line)  {
+  @Override
+  protected PasswordEntry parse(String line) {
     return new PasswordEntry(line);
   }
 
-  public void parse(String line)  {
-    PasswordEntry user = load(line);
-    users.put(user.getUsername(), user);
+  @Override
+  protected void replaceEntries(List<PasswordEntry> entries) {
+    Map<String, PasswordEntry> map = new LinkedHashMap<>();
+    for (PasswordEntry user : entries) {
+      map.put(user.getUsername(), user);
+    }
+    users = map;
   }
 
   public PasswordEntry findUser(String name) {
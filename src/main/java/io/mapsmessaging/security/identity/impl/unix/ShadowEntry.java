@@ -19,6 +19,7 @@ package io.mapsmessaging.security.identity.impl.unix;
 import io.mapsmessaging.security.identity.IdentityEntry;
 import io.mapsmessaging.security.identity.principals.FullNamePrincipal;
 import io.mapsmessaging.security.identity.principals.HomeDirectoryPrincipal;
+import io.mapsmessaging.security.passwords.PasswordHandler;
 import io.mapsmessaging.security.passwords.PasswordHandlerFactory;
 import java.security.Principal;
 import java.util.Set;
@@ -37,7 +38,11 @@ public class ShadowEntry extends IdentityEntry {
     line = line.substring(usernamePos + 1);
     int endOfPassword = line.indexOf(":");
     password = line.substring(0, endOfPassword);
-    passwordHasher = PasswordHandlerFactory.getInstance().parse(password);
+  }
+
+  @Override
+  protected PasswordHandler createPasswordHasher() {
+    return PasswordHandlerFactory.getInstance().parse(password);
   }
 
   @Override
@@ -25,7 +25,9 @@ import io.mapsmessaging.security.identity.impl.base.FileBaseIdentities;
 import java.io.File;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.util.AbstractList;
 import java.util.List;
+import java.util.RandomAccess;
 
 public class UnixAuth implements IdentityLookup {
 
@@ -44,9 +46,6 @@ public class UnixAuth implements IdentityLookup {
     if (passwordPath != null) {
       userDetailsManager = new PasswordFileManager(passwordPath);
     }
-    for(IdentityEntry identityEntry:passwordFileIdentities.getEntries()){
-      groupFileManager.loadGroups(identityEntry);
-    }
   }
 
   @Override
@@ -67,17 +66,8 @@ public class UnixAuth implements IdentityLookup {
   @Override
   public IdentityEntry findEntry(String username) {
     IdentityEntry identityEntry = passwordFileIdentities.findEntry(username);
-    if (identityEntry != null && userDetailsManager != null && groupFileManager != null) {
-      PasswordEntry passwordEntry = userDetailsManager.findUser(username);
-      if (passwordEntry != null) {
-        int groupId = passwordEntry.getGroupId();
-        ((ShadowEntry) identityEntry).setPasswordEntry(passwordEntry);
-        GroupEntry groupEntry = groupFileManager.findGroup(groupId);
-        identityEntry.clearGroups();
-        if (groupEntry != null) {
-          identityEntry.addGroup(groupEntry);
-        }
-      }
+    if (identityEntry != null) {
+      resolveGroups(identityEntry);
     }
     return identityEntry;
   }
@@ -87,9 +77,40 @@ public class UnixAuth implements IdentityLookup {
     return groupFileManager.findGroup(groupName);
   }
 
+  /** Returns the entries with their groups resolved as each one is read, the same as {@link #findEntry}. */
   @Override
   public List<IdentityEntry> getEntries() {
-    return passwordFileIdentities.getEntries();
+    List<IdentityEntry> entries = passwordFileIdentities.getEntries();
+    if (groupFileManager == null) {
+      return entries;
+    }
+    return new ResolvedEntries(entries);
+  }
+
+  // As on Unix, a user is in its primary group from the passwd file and in every group listing it as a member
+  private void resolveGroups(IdentityEntry identityEntry) {
+    if (groupFileManager == null) {
+      return;
+    }
+    List<GroupEntry> groups = groupFileManager.findMemberships(identityEntry.getUsername());
+    PasswordEntry passwordEntry = userDetailsManager != null ? userDetailsManager.findUser(identityEntry.getUsername()) : null;
+    if (passwordEntry != null) {
+      ((ShadowEntry) identityEntry).setPasswordEntry(passwordEntry);
+      GroupEntry primary = groupFileManager.findGroup(passwordEntry.getGroupId());
+      if (primary != null && !isMember(groups, primary.getName())) {
+        groups.add(0, primary);
+      }
+    }
+    identityEntry.setGroups(groups);
+  }
+
+  private static boolean isMember(List<GroupEntry> groups, String groupName) {
+    for (GroupEntry groupEntry : groups) {
+      if (groupEntry.getName().equals(groupName)) {
+        return true;
+      }
+    }
+    return false;
   }
 
   @Override
@@ -110,4 +131,25 @@ public class UnixAuth implements IdentityLookup {
     }
     return null;
   }
+
+  private final class ResolvedEntries extends AbstractList<IdentityEntry> implements RandomAccess {
+
+    private final List<IdentityEntry> entries;
+
+    private ResolvedEntries(List<IdentityEntry> entries) {
+      this.entries = entries;
+    }
+
+    @Override
+    public IdentityEntry get(int index) {
+      IdentityEntry identityEntry = entries.get(index);
+      resolveGroups(identityEntry);
+      return identityEntry;
+    }
+
+    @Override
+    public int size() {
+      return entries.size();
+    }
+  }
 }
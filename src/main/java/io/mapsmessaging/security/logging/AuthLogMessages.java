@@ -49,8 +49,22 @@ public enum AuthLogMessages implements LogMessage {
   FAILED_TO_RENAME_FILE(LEVEL.FATAL, AuthCategory.SUPPORT, "Failed to rename file {} to {}"),
   // </editor-fold>
 
+  // <editor-fold desc="Identity event messages">
+  IDENTITY_EVENT_LISTENER_FAILURE(LEVEL.WARN, AuthCategory.SUPPORT, "Identity change listener {} raised an exception"),
+  // </editor-fold>
+
+  // <editor-fold desc="External identity messages">
+  IDENTITY_REFRESH_FAILURE(LEVEL.WARN, AuthCategory.AUTHENTICATION, "Failed to refresh the {} directory, retrying in {}ms"),
+  // </editor-fold>
+
   // <editor-fold desc="Ldap messages">
   LDAP_LOAD_FAILURE(LEVEL.FATAL, AuthCategory.AUTHENTICATION, "Failed to get user list"),
+  LDAP_CHANGE_LISTENER_FAILURE(LEVEL.WARN, AuthCategory.AUTHENTICATION, "Unable to receive directory change notifications, retrying in {}ms"),
+  LDAP_BIND_FAILURE(LEVEL.WARN, AuthCategory.AUTHENTICATION, "Unable to verify the password of {} with the directory"),
+  // </editor-fold>
+
+  // <editor-fold desc="Federated Auth messages">
+  FEDERATED_LOOKUP_FAILURE(LEVEL.FATAL, AuthCategory.AUTHENTICATION, "Unable to construct identity lookup {} for the federated chain"),
   // </editor-fold>
 
   // <editor-fold desc="Encrypted Auth messages">
@@ -63,6 +77,7 @@ public enum AuthLogMessages implements LogMessage {
   AUTH0_REQUEST_FAILURE(LEVEL.FATAL, AuthCategory.AUTHENTICATION, "Failed to retrieve data from Auth0"),
   AUTH0_JWT_FAILURE(LEVEL.FATAL, AuthCategory.AUTHENTICATION, "Error detected in Auth0 JWT"),
   AUTH0_PASSWORD_FAILURE(LEVEL.FATAL, AuthCategory.AUTHENTICATION, "Error detected while retrieving JWT for user {}"),
+  AUTH0_USER_WITHOUT_EMAIL(LEVEL.WARN, AuthCategory.AUTHENTICATION, "Skipping Auth0 user {} since it has no email address to log in with"),
 
   // </editor-fold>
 
@@ -86,6 +101,12 @@ public enum AuthLogMessages implements LogMessage {
   // <editor-fold desc="Password file messages">
   PASSWORD_FILE_LOADED(LEVEL.INFO, AuthCategory.AUTHENTICATION, "Successfully loaded {} entries for {}"),
   PASSWORD_FILE_LOAD_EXCEPTION(LEVEL.FATAL, AuthCategory.AUTHENTICATION, "Password load failed for {} at line number {} "),
+  PASSWORD_FILE_READ_FAILURE(LEVEL.FATAL, AuthCategory.AUTHENTICATION, "Unable to read password file {}"),
+  FILE_WATCH_FAILURE(LEVEL.WARN, AuthCategory.SUPPORT, "Unable to watch {} for changes, relying on polling"),
+  FILE_RELOAD_FAILURE(LEVEL.WARN, AuthCategory.SUPPORT, "Failed to reload {}"),
+  FILE_JOURNAL_COMPACTION_FAILURE(LEVEL.WARN, AuthCategory.SUPPORT, "Failed to compact the change journal of {}, will retry"),
+  FILE_JOURNAL_MISMATCH(LEVEL.ERROR, AuthCategory.SUPPORT, "Change journal {} was written against a different version of its file, applying it to the current file"),
+  PASSWORD_FILE_PARSE_FAILURE(LEVEL.WARN, AuthCategory.AUTHENTICATION, "Skipping malformed entry in {} at line number {}"),
   PASSWORD_FILE_CHANGE_DETECTED(LEVEL.DEBUG, AuthCategory.AUTHENTICATION, "Password file change detected on {}"),
   CHECKING_PASSWORD_STORE(LEVEL.DEBUG, AuthCategory.AUTHENTICATION, "Scanning for password file changes on file {}");
   // </editor-fold>
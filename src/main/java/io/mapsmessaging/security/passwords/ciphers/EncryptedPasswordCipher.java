@@ -25,7 +25,6 @@ import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
 import java.util.Base64;
 import lombok.Getter;
-import lombok.Setter;
 
 public class EncryptedPasswordCipher implements PasswordCipher {
 
@@ -37,9 +36,11 @@ public class EncryptedPasswordCipher implements PasswordCipher {
   private final String alias;
 
   @Getter
-  @Setter
   private CertificateManager certificateManager;
 
+  // Shared with every cipher created from this one, so key material is unwrapped once per file
+  private BufferCipher bufferCipher;
+
   public EncryptedPasswordCipher() {
     alias = "";
 
@@ -57,10 +58,34 @@ public class EncryptedPasswordCipher implements PasswordCipher {
       String alias,
       byte[] password,
       String privateKeyPassword) {
+    this(certificateManager, alias, password, privateKeyPassword, null);
+  }
+
+  private EncryptedPasswordCipher(
+      CertificateManager certificateManager,
+      String alias,
+      byte[] password,
+      String privateKeyPassword,
+      BufferCipher bufferCipher) {
     this.certificateManager = certificateManager;
     this.alias = alias;
     this.password = password;
     this.privateKeyPassword = privateKeyPassword;
+    this.bufferCipher = bufferCipher;
+  }
+
+  public synchronized void setCertificateManager(CertificateManager certificateManager) {
+    if (this.certificateManager != certificateManager) {
+      this.certificateManager = certificateManager;
+      bufferCipher = null;
+    }
+  }
+
+  private synchronized BufferCipher getBufferCipher() {
+    if (bufferCipher == null) {
+      bufferCipher = new BufferCipher(certificateManager);
+    }
+    return bufferCipher;
   }
 
 
@@ -70,7 +95,7 @@ public class EncryptedPasswordCipher implements PasswordCipher {
     int dollar = t.indexOf("$");
     String al = t.substring(0, dollar);
     byte[] pass = t.substring(dollar + 1).getBytes(StandardCharsets.UTF_8);
-    return new EncryptedPasswordCipher(certificateManager, al, pass, privateKeyPassword);
+    return new EncryptedPasswordCipher(certificateManager, al, pass, privateKeyPassword, getBufferCipher());
   }
 
   @Override
@@ -86,7 +111,7 @@ public class EncryptedPasswordCipher implements PasswordCipher {
   @Override
   public byte[] transformPassword(byte[] password, byte[] salt, int cost)
       throws GeneralSecurityException, IOException {
-    BufferCipher bufferCipher = new BufferCipher(certificateManager);
+    BufferCipher bufferCipher = getBufferCipher();
     if (salt.length > 256) {
       byte[] t = new byte[255];
       System.arraycopy(salt, 0, t, 0, t.length);
@@ -111,7 +136,7 @@ public class EncryptedPasswordCipher implements PasswordCipher {
 
   @Override
   public byte[] getPassword() throws GeneralSecurityException, IOException {
-    BufferCipher bufferCipher = new BufferCipher(certificateManager);
+    BufferCipher bufferCipher = getBufferCipher();
     byte[] decoded = Base64.getDecoder().decode(password);
     byte[] decrypted = bufferCipher.decrypt(alias, decoded, privateKeyPassword.toCharArray());
 
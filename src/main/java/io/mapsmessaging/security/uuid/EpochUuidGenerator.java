@@ -0,0 +1,100 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.uuid;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free generator of version 7 (Unix epoch time based) UUIDs.
+ *
+ * <p>The 48-bit millisecond timestamp and the 12-bit {@code rand_a} field are treated as a single
+ * 60-bit sequence held in an {@link AtomicLong}. Each UUID takes the next value in that sequence, or
+ * jumps forward to the current clock if it has moved on, so UUIDs generated by one generator are
+ * strictly increasing. If more than 4096 UUIDs are requested within a millisecond, the counter carries
+ * into the timestamp field rather than blocking.
+ *
+ * <p>When a block size greater than 1 is supplied, each thread reserves that many sequence values in
+ * a single CAS and hands them out locally. This removes contention on the shared sequence at the cost
+ * of strict ordering across threads; UUIDs remain unique and are still monotonic within a thread.
+ * Blocks older than the current millisecond are discarded so the embedded timestamp stays accurate.
+ */
+public class EpochUuidGenerator {
+
+  public static final int MAX_BLOCK_SIZE = 4096;
+
+  private static final int COUNTER_BITS = 12;
+  private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+  private static final long VERSION_7 = 0x7000L;
+  private static final long VARIANT_RFC_4122 = 0x8000000000000000L;
+  private static final long RANDOM_MASK = 0x3FFFFFFFFFFFFFFFL;
+
+  private final AtomicLong sequence;
+  private final int blockSize;
+  private final ThreadLocal<Block> blocks;
+
+  public EpochUuidGenerator() {
+    this(1);
+  }
+
+  public EpochUuidGenerator(int blockSize) {
+    if (blockSize < 1 || blockSize > MAX_BLOCK_SIZE) {
+      throw new IllegalArgumentException("Block size must be between 1 and " + MAX_BLOCK_SIZE);
+    }
+    this.blockSize = blockSize;
+    sequence = new AtomicLong();
+    blocks = blockSize > 1 ? ThreadLocal.withInitial(Block::new) : null;
+  }
+
+  public UUID generate() {
+    long next;
+    if (blocks == null) {
+      next = reserve(1);
+    } else {
+      next = nextFromBlock(blocks.get());
+    }
+    long msb = ((next >>> COUNTER_BITS) << 16) | VERSION_7 | (next & COUNTER_MASK);
+    long lsb = VARIANT_RFC_4122 | (ThreadLocalRandom.current().nextLong() & RANDOM_MASK);
+    return new UUID(msb, lsb);
+  }
+
+  private long nextFromBlock(Block block) {
+    if (block.next >= block.end || (block.next >>> COUNTER_BITS) < System.currentTimeMillis()) {
+      block.next = reserve(blockSize);
+      block.end = block.next + blockSize;
+    }
+    return block.next++;
+  }
+
+  // Returns the first of count consecutive sequence values, none of which has been handed out before
+  private long reserve(int count) {
+    long floor = (System.currentTimeMillis() << COUNTER_BITS) - 1;
+    while (true) {
+      long previous = sequence.get();
+      long last = Math.max(previous, floor) + count;
+      if (sequence.compareAndSet(previous, last)) {
+        return last - count + 1;
+      }
+    }
+  }
+
+  private static final class Block {
+    private long next;
+    private long end;
+  }
+}
@@ -17,13 +17,15 @@
 package io.mapsmessaging.security.uuid;
 
 import com.fasterxml.uuid.Generators;
+import com.fasterxml.uuid.NoArgGenerator;
 import com.fasterxml.uuid.impl.NameBasedGenerator;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.LinkedHashMap;
+import java.util.EnumMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 @SuppressWarnings("java:S6548") // yes it is a singleton
@@ -38,14 +40,20 @@ public class UuidGenerator {
   }
 
   private final RandomVersions uuidDefaultVersion;
-  private final Map<UUID, NameBasedGenerator> namedGeneratorMap;
+  private final Map<NamedVersions, Map<UUID, NameBasedGenerator>> namedGeneratorMap;
+  private final NoArgGenerator timeGenerator;
+  private final NoArgGenerator timeReorderedGenerator;
+  private final EpochUuidGenerator epochGenerator;
 
   public UUID generate(NamedVersions namedVersions, UUID namespaceUuid, String namespace) throws NoSuchAlgorithmException {
-    NameBasedGenerator namespaceGenerator = namedGeneratorMap.get(namespaceUuid);
+    Map<UUID, NameBasedGenerator> generators = namedGeneratorMap.get(namedVersions);
+    NameBasedGenerator namespaceGenerator = generators.get(namespaceUuid);
     if (namespaceGenerator == null) {
       MessageDigest messageDigest = MessageDigest.getInstance(namedVersions.getDigestAlgorithm());
-      namespaceGenerator = Generators.nameBasedGenerator(namespaceUuid, messageDigest);
-      namedGeneratorMap.put(namespaceUuid, namespaceGenerator);
+      // NameBasedGenerator synchronises on its digest, so a losing racer simply discards its instance
+      NameBasedGenerator created = Generators.nameBasedGenerator(namespaceUuid, messageDigest);
+      NameBasedGenerator existing = generators.putIfAbsent(namespaceUuid, created);
+      namespaceGenerator = existing != null ? existing : created;
     }
     return namespaceGenerator.generate(namespace);
   }
@@ -57,28 +65,28 @@ public class UuidGenerator {
   public UUID generate(RandomVersions version) {
     switch (version) {
       case TIME:
-        return Generators.timeBasedGenerator().generate();
+        return timeGenerator.generate();
       case RANDOM:
         return UUID.randomUUID();
       case TIME_REORDERED:
-        return Generators.timeBasedReorderedGenerator().generate();
+        return timeReorderedGenerator.generate();
       case TIME_EPOCH:
       default:
-        return Generators.timeBasedEpochGenerator().generate();
+        return epochGenerator.generate();
     }
   }
 
   private UuidGenerator() {
-    namedGeneratorMap = new LinkedHashMap<>();
-    int val = 7;
-    String version = System.getProperty("UUID_VERSION");
-    if (version != null) {
-      try {
-        val = Integer.parseInt(version);
-      } catch (Throwable th) {
-        // ignore
-      }
+    namedGeneratorMap = new EnumMap<>(NamedVersions.class);
+    for (NamedVersions namedVersions : NamedVersions.values()) {
+      namedGeneratorMap.put(namedVersions, new ConcurrentHashMap<>());
     }
+    timeGenerator = Generators.timeBasedGenerator();
+    timeReorderedGenerator = Generators.timeBasedReorderedGenerator();
+    int blockSize = Math.min(Math.max(getIntProperty("UUID_BLOCK_SIZE", 1), 1), EpochUuidGenerator.MAX_BLOCK_SIZE);
+    epochGenerator = new EpochUuidGenerator(blockSize);
+
+    int val = getIntProperty("UUID_VERSION", 7);
     RandomVersions defaultVersion = RandomVersions.TIME_EPOCH;
     for (RandomVersions versions : RandomVersions.values()) {
       if (versions.getVersion() == val) {
@@ -87,4 +95,16 @@ public class UuidGenerator {
     }
     uuidDefaultVersion = defaultVersion;
   }
+
+  private static int getIntProperty(String name, int defaultValue) {
+    String value = System.getProperty(name);
+    if (value != null) {
+      try {
+        return Integer.parseInt(value);
+      } catch (Throwable th) {
+        // ignore
+      }
+    }
+    return defaultValue;
+  }
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.access;
+
+import io.mapsmessaging.security.access.mapping.GroupIdMap;
+import io.mapsmessaging.security.access.mapping.UserIdMap;
+import io.mapsmessaging.security.access.mapping.store.MapFileStore;
+import io.mapsmessaging.security.identity.IdentityEntry;
+import com.sun.security.auth.UserPrincipal;
+import io.mapsmessaging.security.identity.principals.UniqueIdentifierPrincipal;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.security.auth.Subject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class AsyncIdentityAccessManagerTest {
+
+  @Test
+  void testOrderedMutations() {
+    try (AsyncIdentityAccessManager asyncManager = new AsyncIdentityAccessManager(createManager("async"))) {
+      GroupIdMap groupIdMap = asyncManager.createGroupAsync("asyncGroup").join();
+      Assertions.assertNotNull(groupIdMap);
+
+      // Submitted without waiting, these must still be applied in order for the user
+      CompletableFuture<UserIdMap> created = asyncManager.createUserAsync("asyncUser", "password");
+      CompletableFuture<Boolean> added = asyncManager.addUserToGroupAsync("asyncUser", "asyncGroup");
+      Assertions.assertNotNull(created.join());
+      Assertions.assertTrue(added.join());
+
+      IdentityEntry identityEntry = asyncManager.getUserIdentityAsync("asyncUser").join();
+      Assertions.assertNotNull(identityEntry);
+      Assertions.assertTrue(identityEntry.isInGroup("asyncGroup"));
+
+      Assertions.assertTrue(asyncManager.deleteUserAsync("asyncUser").join());
+      Assertions.assertNull(asyncManager.getUserIdentityAsync("asyncUser").join());
+    }
+  }
+
+  @Test
+  void testConcurrentMutationsForDifferentUsers() {
+    IdentityAccessManager identityAccessManager = createManager("asyncConcurrent");
+    try (AsyncIdentityAccessManager asyncManager = new AsyncIdentityAccessManager(identityAccessManager)) {
+      asyncManager.createGroupAsync("sharedGroup").join();
+      List<CompletableFuture<Boolean>> pending = new ArrayList<>();
+      for (int x = 0; x < 20; x++) {
+        String username = "user" + x;
+        asyncManager.createUserAsync(username, "password");
+        pending.add(asyncManager.addUserToGroupAsync(username, "sharedGroup"));
+      }
+      for (CompletableFuture<Boolean> added : pending) {
+        Assertions.assertTrue(added.join());
+      }
+      Assertions.assertEquals(20, asyncManager.getGroupDetailsAsync("sharedGroup").join().getUserCount());
+      Assertions.assertEquals(20, asyncManager.getAllUsersAsync().join().size());
+    }
+  }
+
+  @Test
+  void testConcurrentFirstLoginsShareOneId() throws Exception {
+    IdentityAccessManager identityAccessManager = createManager("asyncFirstLogin");
+    // Added behind the manager's back, so the user is not yet in the id maps
+    identityAccessManager.getIdentityLookup().createUser("firstLogin", "password", identityAccessManager.getPasswordHandler());
+    try (AsyncIdentityAccessManager asyncManager = new AsyncIdentityAccessManager(identityAccessManager)) {
+      List<CompletableFuture<Subject>> logins = new ArrayList<>();
+      for (int x = 0; x < 20; x++) {
+        Subject subject = new Subject();
+        subject.getPrincipals().add(new UserPrincipal("firstLogin"));
+        logins.add(asyncManager.updateSubjectAsync(subject));
+      }
+      Set<UUID> authIds = new HashSet<>();
+      for (CompletableFuture<Subject> login : logins) {
+        for (UniqueIdentifierPrincipal principal : login.join().getPrincipals(UniqueIdentifierPrincipal.class)) {
+          authIds.add(principal.getAuthId());
+        }
+      }
+      Assertions.assertEquals(Set.of(identityAccessManager.getUser("firstLogin").getAuthId()), authIds);
+    }
+  }
+
+  @Test
+  void testQueuedMutationFailsOnceExecutorRejects() {
+    Queue<Runnable> tasks = new ArrayDeque<>();
+    AtomicBoolean shutdown = new AtomicBoolean();
+    Executor executor = task -> {
+      if (shutdown.get()) {
+        throw new RejectedExecutionException("shut down");
+      }
+      tasks.add(task);
+    };
+    AsyncIdentityAccessManager asyncManager = new AsyncIdentityAccessManager(createManager("asyncRejected"), executor);
+    CompletableFuture<GroupIdMap> first = asyncManager.createGroupAsync("firstGroup");
+    CompletableFuture<GroupIdMap> second = asyncManager.createGroupAsync("secondGroup");
+    Assertions.assertEquals(1, tasks.size());
+
+    shutdown.set(true);
+    tasks.poll().run();
+    Assertions.assertNotNull(first.join());
+    CompletionException failure = Assertions.assertThrows(CompletionException.class, second::join);
+    Assertions.assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+
+    asyncManager.close();
+    shutdown.set(false);
+    CompletableFuture<GroupIdMap> afterClose = asyncManager.createGroupAsync("thirdGroup");
+    failure = Assertions.assertThrows(CompletionException.class, afterClose::join);
+    Assertions.assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+    Assertions.assertTrue(tasks.isEmpty());
+  }
+
+  private static IdentityAccessManager createManager(String name) {
+    File directory = new File("./target/test/" + name);
+    directory.mkdirs();
+    new File(directory, ".htpassword").delete();
+    new File(directory, ".htgroups").delete();
+    new File(directory, ".htpassword.journal").delete();
+    new File(directory, ".htgroups.journal").delete();
+    new File(directory, "userMap").delete();
+    new File(directory, "groupMap").delete();
+
+    Map<String, Object> config = new LinkedHashMap<>();
+    config.put("configDirectory", directory.getPath());
+    config.put("passwordHander", "PlainPasswordHasher");
+    return new IdentityAccessManager(
+        "Apache-Basic-Auth",
+        config,
+        new MapFileStore<>(directory.getPath() + "/userMap"),
+        new MapFileStore<>(directory.getPath() + "/groupMap"));
+  }
+}
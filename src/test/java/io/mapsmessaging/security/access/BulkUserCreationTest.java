@@ -0,0 +1,78 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.access;
+
+import io.mapsmessaging.security.access.mapping.store.MapFileStore;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class BulkUserCreationTest {
+
+  @Test
+  void testBulkCreation() throws IOException, GeneralSecurityException {
+    File directory = new File("./target/test/bulk");
+    directory.mkdirs();
+    File passwordFile = new File(directory, ".htpassword");
+    passwordFile.delete();
+    new File(directory, ".htgroups").delete();
+    new File(directory, "userMap").delete();
+    new File(directory, "groupMap").delete();
+
+    Map<String, Object> config = new LinkedHashMap<>();
+    config.put("configDirectory", directory.getPath());
+    config.put("passwordHander", "PlainPasswordHasher");
+    config.put("hashParallelism", 4);
+    IdentityAccessManager identityAccessManager =
+        new IdentityAccessManager(
+            "Apache-Basic-Auth",
+            config,
+            new MapFileStore<>(directory.getPath() + "/userMap"),
+            new MapFileStore<>(directory.getPath() + "/groupMap"));
+
+    identityAccessManager.createUser("existing", "password");
+
+    List<UserCreationRequest> requests = new ArrayList<>();
+    requests.add(new UserCreationRequest("existing", "password"));
+    for (int x = 0; x < 200; x++) {
+      requests.add(new UserCreationRequest("device" + x, "password" + x));
+    }
+    requests.add(new UserCreationRequest("device0", "duplicate"));
+
+    List<UserCreationResult> results = identityAccessManager.createUsers(requests);
+    Assertions.assertEquals(201, results.size());
+    Assertions.assertEquals("existing", results.get(0).getUsername());
+    Assertions.assertFalse(results.get(0).isCreated());
+    for (int x = 1; x < results.size(); x++) {
+      UserCreationResult result = results.get(x);
+      Assertions.assertTrue(result.isSuccess());
+      Assertions.assertTrue(result.isCreated());
+      Assertions.assertEquals("device" + (x - 1), result.getUsername());
+      Assertions.assertEquals(result.getUserIdMap(), identityAccessManager.getUser(result.getUsername()));
+      Assertions.assertNotNull(identityAccessManager.getUserIdentity(result.getUsername()));
+    }
+    Assertions.assertEquals(201, Files.readAllLines(passwordFile.toPath()).size());
+    Assertions.assertEquals(201, identityAccessManager.getAllUsers().size());
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.mapsmessaging.security.access;
+
+import com.sun.security.auth.UserPrincipal;
+import io.mapsmessaging.security.access.mapping.GroupIdMap;
+import io.mapsmessaging.security.access.mapping.store.MapFileStore;
+import io.mapsmessaging.security.identity.GroupEntry;
+import io.mapsmessaging.security.identity.principals.GroupIdPrincipal;
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.security.auth.Subject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class IdentityAccessManagerTest {
+
+  @Test
+  void subjectCacheInvalidatedOnAddUserToGroup() throws Exception {
+    IdentityAccessManager identityAccessManager = createManager("subjectCacheAdd");
+    identityAccessManager.createGroup("cacheGroup");
+    identityAccessManager.createUser("cacheUser", "password");
+    Assertions.assertEquals(List.of(), groupNames(identityAccessManager, "cacheUser"));
+
+    Assertions.assertTrue(identityAccessManager.addUserToGroup("cacheUser", "cacheGroup"));
+    Assertions.assertEquals(List.of("cacheGroup"), groupNames(identityAccessManager, "cacheUser"));
+  }
+
+  @Test
+  void subjectCacheInvalidatedOnRemoveUserFromGroup() throws Exception {
+    IdentityAccessManager identityAccessManager = createManager("subjectCacheRemove");
+    identityAccessManager.createGroup("cacheGroup");
+    identityAccessManager.createUser("cacheUser", "password");
+    identityAccessManager.createUser("otherUser", "password");
+    identityAccessManager.addUserToGroup("cacheUser", "cacheGroup");
+    identityAccessManager.addUserToGroup("otherUser", "cacheGroup");
+    Assertions.assertEquals(List.of("cacheGroup"), groupNames(identityAccessManager, "cacheUser"));
+
+    Assertions.assertTrue(identityAccessManager.removeUserFromGroup("cacheUser", "cacheGroup"));
+    Assertions.assertEquals(List.of(), groupNames(identityAccessManager, "cacheUser"));
+  }
+
+  @Test
+  void subjectCacheInvalidatedOnDeleteUser() throws Exception {
+    IdentityAccessManager identityAccessManager = createManager("subjectCacheDeleteUser");
+    identityAccessManager.createUser("cacheUser", "password");
+    Assertions.assertNotNull(identityAccessManager.updateSubject(createSubject("cacheUser")));
+
+    Assertions.assertTrue(identityAccessManager.deleteUser("cacheUser"));
+    Assertions.assertNull(identityAccessManager.updateSubject(createSubject("cacheUser")));
+  }
+
+  @Test
+  void subjectCacheInvalidatedOnDeleteGroup() throws Exception {
+    IdentityAccessManager identityAccessManager = createManager("subjectCacheDeleteGroup");
+    identityAccessManager.createGroup("cacheGroup");
+    identityAccessManager.createUser("cacheUser", "password");
+    identityAccessManager.addUserToGroup("cacheUser", "cacheGroup");
+    Assertions.assertEquals(List.of("cacheGroup"), groupNames(identityAccessManager, "cacheUser"));
+
+    Assertions.assertTrue(identityAccessManager.deleteGroup("cacheGroup"));
+    Assertions.assertEquals(List.of(), groupNames(identityAccessManager, "cacheUser"));
+  }
+
+  @Test
+  void testGroupsAreReplacedNotChanged() throws Exception {
+    IdentityAccessManager identityAccessManager = createManager("copyOnWrite");
+    identityAccessManager.createGroup("copyGroup");
+    identityAccessManager.createUser("first", "password");
+    identityAccessManager.createUser("second", "password");
+    Assertions.assertTrue(identityAccessManager.addUserToGroup("first", "copyGroup"));
+
+    GroupEntry before = identityAccessManager.getGroupDetails("copyGroup");
+    Assertions.assertTrue(identityAccessManager.addUserToGroup("second", "copyGroup"));
+    Assertions.assertEquals(Set.of("first"), before.getUsers());
+    Assertions.assertEquals(Set.of("first", "second"), identityAccessManager.getGroupDetails("copyGroup").getUsers());
+
+    GroupEntry withBoth = identityAccessManager.getGroupDetails("copyGroup");
+    Assertions.assertTrue(identityAccessManager.deleteUser("first"));
+    Assertions.assertEquals(Set.of("first", "second"), withBoth.getUsers());
+    Assertions.assertEquals(Set.of("second"), identityAccessManager.getGroupDetails("copyGroup").getUsers());
+  }
+
+  private static List<String> groupNames(IdentityAccessManager identityAccessManager, String username) {
+    Subject subject = identityAccessManager.updateSubject(createSubject(username));
+    Assertions.assertNotNull(subject);
+    return subject.getPrincipals(GroupIdPrincipal.class).stream()
+        .flatMap(principal -> principal.getGroupIds().stream())
+        .map(GroupIdMap::getGroupName)
+        .sorted()
+        .collect(Collectors.toList());
+  }
+
+  private static Subject createSubject(String username) {
+    Subject subject = new Subject();
+    subject.getPrincipals().add(new UserPrincipal(username));
+    return subject;
+  }
+
+  private static IdentityAccessManager createManager(String name) {
+    File directory = new File("./target/test/" + name);
+    directory.mkdirs();
+    new File(directory, ".htpassword").delete();
+    new File(directory, ".htgroups").delete();
+    new File(directory, ".htpassword.journal").delete();
+    new File(directory, ".htgroups.journal").delete();
+    new File(directory, "userMap").delete();
+    new File(directory, "groupMap").delete();
+
+    Map<String, Object> config = new LinkedHashMap<>();
+    config.put("configDirectory", directory.getPath());
+    config.put("passwordHander", "PlainPasswordHasher");
+    return new IdentityAccessManager(
+        "Apache-Basic-Auth",
+        config,
+        new MapFileStore<>(directory.getPath() + "/userMap"),
+        new MapFileStore<>(directory.getPath() + "/groupMap"));
+  }
+}
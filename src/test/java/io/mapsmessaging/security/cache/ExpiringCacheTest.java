@@ -0,0 +1,102 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ExpiringCacheTest {
+
+  @Test
+  void testPutAndGet() {
+    ExpiringCache<String, String> cache = new ExpiringCache<>(10, 60000);
+    cache.put("key", "value");
+    Assertions.assertEquals("value", cache.get("key"));
+    Assertions.assertNull(cache.get("missing"));
+  }
+
+  @Test
+  void testPutAfterInvalidationIsDropped() {
+    ExpiringCache<String, String> cache = new ExpiringCache<>(10, 60000);
+    long generation = cache.generation();
+    cache.invalidate("key");
+    Assertions.assertFalse(cache.putIfUnchanged("key", "stale", generation));
+    Assertions.assertNull(cache.get("key"));
+    Assertions.assertTrue(cache.putIfUnchanged("key", "value", cache.generation()));
+    Assertions.assertEquals("value", cache.get("key"));
+  }
+
+  @Test
+  void testExpiry() throws InterruptedException {
+    ExpiringCache<String, String> cache = new ExpiringCache<>(10, 10);
+    cache.put("key", "value");
+    Thread.sleep(50);
+    Assertions.assertNull(cache.get("key"));
+    Assertions.assertEquals(0, cache.size());
+  }
+
+  @Test
+  void testBounded() {
+    ExpiringCache<Integer, Integer> cache = new ExpiringCache<>(100, 60000);
+    for (int x = 0; x < 1000; x++) {
+      cache.put(x, x);
+      Assertions.assertTrue(cache.size() <= 100);
+    }
+    Assertions.assertEquals(999, cache.get(999));
+  }
+
+  @Test
+  void testOldestWritesEvictedFirst() {
+    ExpiringCache<Integer, Integer> cache = new ExpiringCache<>(100, 60000);
+    for (int x = 0; x < 200; x++) {
+      cache.put(x, x);
+    }
+    Assertions.assertEquals(100, cache.size());
+    for (int x = 100; x < 200; x++) {
+      Assertions.assertEquals(x, cache.get(x));
+    }
+  }
+
+  @Test
+  void testRewrittenEntriesAreKept() {
+    ExpiringCache<String, Integer> cache = new ExpiringCache<>(3, 60000);
+    cache.put("a", 1);
+    cache.put("b", 1);
+    cache.put("c", 1);
+    for (int x = 0; x < 10000; x++) {
+      cache.put("a", x);
+    }
+    cache.put("d", 1);
+    Assertions.assertEquals(9999, cache.get("a"));
+    Assertions.assertNull(cache.get("b"));
+    Assertions.assertEquals(1, cache.get("c"));
+    Assertions.assertEquals(1, cache.get("d"));
+    Assertions.assertEquals(3, cache.size());
+  }
+
+  @Test
+  void testInvalidate() {
+    ExpiringCache<String, String> cache = new ExpiringCache<>(10, 60000);
+    cache.put("key1", "value1");
+    cache.put("key2", "value2");
+    cache.invalidate("key1");
+    Assertions.assertNull(cache.get("key1"));
+    Assertions.assertEquals("value2", cache.get("key2"));
+    cache.invalidateAll();
+    Assertions.assertNull(cache.get("key2"));
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class NegativeLookupCacheTest {
+
+  @Test
+  void testRecordMissing() {
+    NegativeLookupCache cache = new NegativeLookupCache(1000, 0.01, 60000);
+    Assertions.assertFalse(cache.isMissing("user"));
+    cache.recordMissing("user");
+    Assertions.assertTrue(cache.isMissing("user"));
+    cache.clear();
+    Assertions.assertFalse(cache.isMissing("user"));
+  }
+
+  @Test
+  void testExpiry() throws InterruptedException {
+    NegativeLookupCache cache = new NegativeLookupCache(1000, 0.01, 20);
+    cache.recordMissing("user");
+    Thread.sleep(100);
+    Assertions.assertFalse(cache.isMissing("user"));
+  }
+
+  @Test
+  void testFalsePositiveRate() {
+    BloomFilter filter = new BloomFilter(10000, 0.01);
+    for (int x = 0; x < 10000; x++) {
+      filter.add("user" + x);
+    }
+    int falsePositives = 0;
+    for (int x = 0; x < 10000; x++) {
+      Assertions.assertTrue(filter.mightContain("user" + x));
+      if (filter.mightContain("other" + x)) {
+        falsePositives++;
+      }
+    }
+    Assertions.assertTrue(falsePositives < 300, "False positives:" + falsePositives);
+  }
+}
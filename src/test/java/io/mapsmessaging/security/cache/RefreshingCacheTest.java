@@ -0,0 +1,115 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class RefreshingCacheTest {
+
+  @Test
+  void testNoRefreshOutsideWindow() {
+    AtomicInteger loads = new AtomicInteger();
+    RefreshingCache<String, String> cache = new RefreshingCache<>(10, 60000, 1000, key -> key + loads.incrementAndGet(), Runnable::run);
+    cache.put("key", "value");
+    Assertions.assertEquals("value", cache.get("key"));
+    Assertions.assertEquals(0, loads.get());
+  }
+
+  @Test
+  void testRefreshAhead() {
+    AtomicInteger loads = new AtomicInteger();
+    RefreshingCache<String, String> cache = new RefreshingCache<>(10, 60000, 60000, key -> key + loads.incrementAndGet(), Runnable::run);
+    cache.put("key", "value");
+    Assertions.assertEquals("value", cache.get("key"));
+    Assertions.assertEquals(1, loads.get());
+    Assertions.assertEquals("key1", cache.get("key"));
+  }
+
+  @Test
+  void testSingleRefreshPerKey() {
+    List<Runnable> queued = new ArrayList<>();
+    AtomicInteger loads = new AtomicInteger();
+    RefreshingCache<String, String> cache = new RefreshingCache<>(10, 60000, 60000, key -> key + loads.incrementAndGet(), queued::add);
+    cache.put("key", "value");
+    for (int x = 0; x < 10; x++) {
+      Assertions.assertEquals("value", cache.get("key"));
+    }
+    Assertions.assertEquals(1, queued.size());
+    queued.get(0).run();
+    Assertions.assertEquals("key1", cache.get("key"));
+    Assertions.assertEquals(2, queued.size());
+  }
+
+  @Test
+  void testFailedRefreshKeepsValue() {
+    RefreshingCache<String, String> cache = new RefreshingCache<>(10, 60000, 60000, key -> {
+      throw new IllegalStateException("unavailable");
+    }, Runnable::run);
+    cache.put("key", "value");
+    Assertions.assertEquals("value", cache.get("key"));
+    Assertions.assertEquals("value", cache.get("key"));
+  }
+
+  @Test
+  void testRemovedWhenLoaderFindsNothing() {
+    RefreshingCache<String, String> cache = new RefreshingCache<>(10, 60000, 60000, key -> null, Runnable::run);
+    cache.put("key", "value");
+    Assertions.assertEquals("value", cache.get("key"));
+    Assertions.assertNull(cache.get("key"));
+    Assertions.assertTrue(cache.values().isEmpty());
+  }
+
+  @Test
+  void testInvalidationDuringLoadIsKept() throws InterruptedException {
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    RefreshingCache<String, String> cache = new RefreshingCache<>(10, 60000, 60000, key -> {
+      loading.countDown();
+      release.await();
+      return "stale";
+    }, task -> {
+      Thread thread = new Thread(task);
+      threads.add(thread);
+      thread.start();
+    });
+    cache.put("key", "value");
+    Assertions.assertEquals("value", cache.get("key"));
+    Assertions.assertTrue(loading.await(10, TimeUnit.SECONDS));
+    cache.invalidate("key");
+    release.countDown();
+    threads.get(0).join(10000);
+    Assertions.assertNull(cache.peek("key"));
+  }
+
+  @Test
+  void testNewerWriteDuringLoadIsKept() {
+    List<Runnable> queued = new ArrayList<>();
+    RefreshingCache<String, String> cache = new RefreshingCache<>(10, 60000, 60000, key -> "stale", queued::add);
+    cache.put("key", "value");
+    Assertions.assertEquals("value", cache.get("key"));
+    cache.put("key", "newer");
+    queued.get(0).run();
+    Assertions.assertEquals("newer", cache.peek("key"));
+  }
+}
@@ -17,8 +17,14 @@
 package io.mapsmessaging.security.cipher;
 
 import io.mapsmessaging.security.certificates.BaseCertificateTest;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.util.Arrays;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -67,6 +73,64 @@ class BufferCipherTest extends BaseCertificateTest {
     }
   }
 
+  @ParameterizedTest
+  @MethodSource("knownTypes")
+  void sharedDataKeyTest(String type) throws Exception {
+    setupStore(type);
+    BufferCipher bufferCipher = new BufferCipher(certificateManager);
+    byte[] first = bufferCipher.encrypt(TEST_ALIAS + "_1", "first".getBytes());
+    byte[] second = bufferCipher.encrypt(TEST_ALIAS + "_1", "second".getBytes());
+    int keyLength = ByteBuffer.wrap(first, 4, 4).getInt();
+    Assertions.assertArrayEquals(Arrays.copyOfRange(first, 0, 8 + keyLength), Arrays.copyOfRange(second, 0, 8 + keyLength));
+    Assertions.assertFalse(isEqual(Arrays.copyOfRange(first, 8 + keyLength, 24 + keyLength), Arrays.copyOfRange(second, 8 + keyLength, 24 + keyLength)));
+
+    BufferCipher reader = new BufferCipher(certificateManager);
+    char[] password = (new String(KEY_PASSWORD) + "_1").toCharArray();
+    Assertions.assertArrayEquals("first".getBytes(), reader.decrypt(TEST_ALIAS + "_1", first, password));
+    Assertions.assertArrayEquals("second".getBytes(), reader.decrypt(TEST_ALIAS + "_1", second, password));
+  }
+
+  @ParameterizedTest
+  @MethodSource("knownTypes")
+  void keyPerBufferFormatTest(String type) throws Exception {
+    setupStore(type);
+    byte[] data = "written by an earlier release".getBytes();
+    KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+    keyGenerator.init(256);
+    SecretKey aesKey = keyGenerator.generateKey();
+    byte[] iv = new byte[16];
+    new SecureRandom().nextBytes(iv);
+    Cipher aesCipher = Cipher.getInstance("AES/GCM/NoPadding");
+    aesCipher.init(Cipher.ENCRYPT_MODE, aesKey, new IvParameterSpec(iv));
+    byte[] encryptedData = aesCipher.doFinal(Compressor.compress(data));
+    Cipher rsaCipher = Cipher.getInstance("RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
+    rsaCipher.init(Cipher.ENCRYPT_MODE, certificateManager.getCertificate(TEST_ALIAS + "_1").getPublicKey());
+    byte[] keyAndIv = ByteBuffer.allocate(48).put(aesKey.getEncoded()).put(iv).array();
+    byte[] encryptedKeyAndIv = rsaCipher.doFinal(keyAndIv);
+    byte[] buffer = ByteBuffer.allocate(4 + encryptedKeyAndIv.length + encryptedData.length)
+        .putInt(encryptedKeyAndIv.length).put(encryptedKeyAndIv).put(encryptedData).array();
+
+    BufferCipher bufferCipher = new BufferCipher(certificateManager);
+    char[] password = (new String(KEY_PASSWORD) + "_1").toCharArray();
+    Assertions.assertArrayEquals(data, bufferCipher.decrypt(TEST_ALIAS + "_1", buffer, password));
+    Assertions.assertArrayEquals(data, bufferCipher.decrypt(TEST_ALIAS + "_1", buffer, password));
+  }
+
+  @ParameterizedTest
+  @MethodSource("knownTypes")
+  void wrongPasswordAfterCacheHitTest(String type) throws Exception {
+    setupStore(type);
+    BufferCipher bufferCipher = new BufferCipher(certificateManager);
+    char[] password = (new String(KEY_PASSWORD) + "_1").toCharArray();
+    char[] wrongPassword = (new String(KEY_PASSWORD) + "_2").toCharArray();
+    byte[] encrypted = bufferCipher.encrypt(TEST_ALIAS + "_1", "secret".getBytes());
+    Assertions.assertThrows(GeneralSecurityException.class, () -> bufferCipher.decrypt(TEST_ALIAS + "_1", encrypted, wrongPassword));
+
+    Assertions.assertArrayEquals("secret".getBytes(), bufferCipher.decrypt(TEST_ALIAS + "_1", encrypted, password));
+    Assertions.assertThrows(GeneralSecurityException.class, () -> bufferCipher.decrypt(TEST_ALIAS + "_1", encrypted, wrongPassword));
+    Assertions.assertThrows(GeneralSecurityException.class, () -> bufferCipher.decrypt(TEST_ALIAS + "_2", encrypted, password));
+  }
+
   private boolean isEqual(byte[] buffer1, byte[] buffer2) {
     return Arrays.equals(buffer1, buffer2);
   }
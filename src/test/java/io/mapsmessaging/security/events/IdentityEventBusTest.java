@@ -0,0 +1,118 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.events;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class IdentityEventBusTest {
+
+  @Test
+  void testCoalescedDelivery() {
+    Queue<Runnable> tasks = new ArrayDeque<>();
+    IdentityEventBus bus = new IdentityEventBus(tasks::add);
+    List<List<IdentityChangeEvent>> batches = new ArrayList<>();
+    bus.addListener(events -> batches.add(new ArrayList<>(events)));
+
+    IdentityChangeEvent created = IdentityChangeEvent.user(IdentityChangeType.USER_CREATED, "apache", "fred");
+    IdentityChangeEvent changed = IdentityChangeEvent.user(IdentityChangeType.PASSWORD_CHANGED, "apache", "fred");
+    bus.publish(created);
+    bus.publish(changed);
+    bus.publish(IdentityChangeEvent.user(IdentityChangeType.PASSWORD_CHANGED, "apache", "fred"));
+    Assertions.assertEquals(1, tasks.size());
+    Assertions.assertTrue(batches.isEmpty());
+
+    tasks.poll().run();
+    Assertions.assertEquals(1, batches.size());
+    Assertions.assertEquals(List.of(created, changed), batches.get(0));
+    Assertions.assertTrue(tasks.isEmpty());
+
+    bus.publish(IdentityChangeEvent.reloaded("/tmp/passwd"));
+    Assertions.assertEquals(1, tasks.size());
+    tasks.poll().run();
+    Assertions.assertEquals(2, batches.size());
+  }
+
+  @Test
+  void testCoalescingKeepsLatestOrder() {
+    Queue<Runnable> tasks = new ArrayDeque<>();
+    IdentityEventBus bus = new IdentityEventBus(tasks::add);
+    List<List<IdentityChangeEvent>> batches = new ArrayList<>();
+    bus.addListener(events -> batches.add(new ArrayList<>(events)));
+
+    IdentityChangeEvent created = IdentityChangeEvent.user(IdentityChangeType.USER_CREATED, "apache", "fred");
+    IdentityChangeEvent deleted = IdentityChangeEvent.user(IdentityChangeType.USER_DELETED, "apache", "fred");
+    bus.publish(created);
+    bus.publish(deleted);
+    bus.publish(IdentityChangeEvent.user(IdentityChangeType.USER_CREATED, "apache", "fred"));
+
+    tasks.poll().run();
+    Assertions.assertEquals(List.of(deleted, created), batches.get(0));
+  }
+
+  @Test
+  void testListenerFailureDoesNotStopDelivery() {
+    IdentityEventBus bus = new IdentityEventBus(Runnable::run);
+    List<IdentityChangeEvent> received = new ArrayList<>();
+    bus.addListener(events -> {
+      throw new IllegalStateException("listener failure");
+    });
+    bus.addListener(received::addAll);
+    bus.publish(IdentityChangeEvent.aclChanged("topic"));
+    bus.publish(IdentityChangeEvent.group(IdentityChangeType.GROUP_DELETED, "apache", "admin"));
+    Assertions.assertEquals(2, received.size());
+  }
+
+  @Test
+  void testRemoveListener() {
+    IdentityEventBus bus = new IdentityEventBus(Runnable::run);
+    List<IdentityChangeEvent> received = new ArrayList<>();
+    IdentityChangeListener listener = received::addAll;
+    bus.addListener(listener);
+    bus.publish(IdentityChangeEvent.membership("apache", "fred", "admin"));
+    bus.removeListener(listener);
+    bus.publish(IdentityChangeEvent.membership("apache", "fred", "users"));
+    Assertions.assertEquals(1, received.size());
+  }
+
+  @Test
+  void testAsynchronousDelivery() throws InterruptedException {
+    IdentityEventBus bus = IdentityEventBus.getInstance();
+    CountDownLatch latch = new CountDownLatch(1);
+    IdentityChangeListener listener = events -> latch.countDown();
+    bus.addListener(listener);
+    try {
+      bus.publish(IdentityChangeEvent.user(IdentityChangeType.USER_DELETED, "apache", "fred"));
+      Assertions.assertTrue(latch.await(10, TimeUnit.SECONDS));
+    } finally {
+      bus.removeListener(listener);
+    }
+  }
+
+  @Test
+  void testDomainFilter() {
+    Assertions.assertTrue(IdentityChangeEvent.reloaded("file").appliesTo("apache"));
+    Assertions.assertTrue(IdentityChangeEvent.user(IdentityChangeType.USER_CREATED, "apache", "fred").appliesTo("apache"));
+    Assertions.assertFalse(IdentityChangeEvent.user(IdentityChangeType.USER_CREATED, "unix", "fred").appliesTo("apache"));
+  }
+}
@@ -16,17 +16,23 @@
 
 package io.mapsmessaging.security.identity.impl;
 
+import io.mapsmessaging.security.identity.GroupEntry;
 import io.mapsmessaging.security.identity.IdentityEntry;
 import io.mapsmessaging.security.identity.IdentityLookup;
 import io.mapsmessaging.security.identity.IdentityLookupFactory;
 import io.mapsmessaging.security.identity.NoSuchUserFoundException;
 import io.mapsmessaging.security.identity.impl.apache.ApacheBasicAuth;
+import io.mapsmessaging.security.identity.impl.apache.HtGroupFileManager;
+import io.mapsmessaging.security.identity.impl.apache.HtPasswdEntry;
 import io.mapsmessaging.security.passwords.PasswordHandler;
 import io.mapsmessaging.security.passwords.PasswordHandlerFactory;
 import io.mapsmessaging.security.passwords.hashes.md5.Md5PasswordHasher;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.security.GeneralSecurityException;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -65,6 +71,14 @@ class ApacheIdentifierTest {
     Assertions.assertEquals(Md5PasswordHasher.class, entry.getPasswordHasher().getClass());
   }
 
+  @Test
+  void passwordHandlerCreatedOnce() {
+    IdentityEntry entry = new HtPasswdEntry("test:$apr1$9r.m87gj$5wXLLFhGKzknbwSLJj0HC1");
+    PasswordHandler handler = entry.getPasswordHasher();
+    Assertions.assertEquals(Md5PasswordHasher.class, handler.getClass());
+    Assertions.assertSame(handler, entry.getPasswordHasher());
+  }
+
   @Test
   void simpleGroupTest() {
     Map<String, Object> map = new LinkedHashMap<>();
@@ -86,4 +100,26 @@ class ApacheIdentifierTest {
     Assertions.assertEquals(lookup.getClass(), ApacheBasicAuth.class);
     Assertions.assertThrowsExactly(NoSuchUserFoundException.class, () -> lookup.getPasswordHash("noSuchUser"));
   }
+
+  @Test
+  void batchGroupUpdate() throws IOException {
+    File directory = new File("./target/test/apacheGroups");
+    directory.mkdirs();
+    File groupFile = new File(directory, ".htgroups");
+    Files.write(groupFile.toPath(), List.of("admin: fred bill", "users: fred bill jane", "solo: fred", "other: jane"));
+    ApacheBasicAuth lookup = new ApacheBasicAuth(new File(directory, ".htpassword").getPath(), groupFile.getPath());
+
+    GroupEntry admin = lookup.findGroup("admin").copy();
+    GroupEntry users = lookup.findGroup("users").copy();
+    admin.removeUser("fred");
+    users.removeUser("fred");
+    lookup.updateGroups(List.of(admin, users), List.of("solo"));
+
+    Assertions.assertNull(lookup.findGroup("solo"));
+    Assertions.assertFalse(lookup.findGroup("admin").isInGroup("fred"));
+    new HtGroupFileManager(groupFile.getPath()).compact();
+    Assertions.assertEquals(
+        List.of("admin:bill", "users:bill jane", "other: jane"),
+        Files.readAllLines(groupFile.toPath()));
+  }
 }
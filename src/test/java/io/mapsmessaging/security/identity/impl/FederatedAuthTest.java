@@ -0,0 +1,193 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl;
+
+import io.mapsmessaging.configuration.ConfigurationProperties;
+import io.mapsmessaging.security.identity.GroupEntry;
+import io.mapsmessaging.security.identity.IdentityEntry;
+import io.mapsmessaging.security.identity.IdentityLookup;
+import io.mapsmessaging.security.identity.IdentityLookupFactory;
+import io.mapsmessaging.security.identity.NoSuchUserFoundException;
+import io.mapsmessaging.security.identity.impl.apache.HtPasswdEntry;
+import io.mapsmessaging.security.identity.impl.federated.FederatedAuth;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class FederatedAuthTest {
+
+  private IdentityLookup createChain() {
+    Map<String, Object> unix = new LinkedHashMap<>();
+    unix.put("identity", "unix");
+    unix.put("configDirectory", "./src/test/resources/nix");
+
+    Map<String, Object> apache = new LinkedHashMap<>();
+    apache.put("identity", "Apache-Basic-Auth");
+    apache.put("configDirectory", "./src/test/resources/apache");
+    apache.put("negativeCacheTime", "60000");
+
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("chain", List.of(unix, apache));
+    return IdentityLookupFactory.getInstance().get("Federated-Auth", map);
+  }
+
+  @Test
+  void simpleLoad() {
+    IdentityLookup lookup = createChain();
+    Assertions.assertEquals(FederatedAuth.class, lookup.getClass());
+    Assertions.assertEquals("federated", lookup.getDomain());
+    Assertions.assertEquals("Federated-Auth", lookup.getName());
+  }
+
+  @Test
+  void resolvesAcrossChain() throws IOException, GeneralSecurityException {
+    IdentityLookup lookup = createChain();
+    // test1 is only known to the apache store, so the unix store records the miss
+    for (int x = 0; x < 3; x++) {
+      IdentityEntry entry = lookup.findEntry("test1");
+      Assertions.assertNotNull(entry);
+      Assertions.assertTrue(entry.toString().startsWith("test1:"));
+      Assertions.assertNotNull(lookup.getPasswordHash("test1"));
+    }
+    Assertions.assertNotNull(lookup.findEntry("test"));
+    Assertions.assertNull(lookup.findEntry("noSuchUser"));
+    Assertions.assertThrows(NoSuchUserFoundException.class, () -> lookup.getPasswordHash("noSuchUser"));
+  }
+
+  @Test
+  void aggregatesEntries() {
+    Map<String, Object> unix = new LinkedHashMap<>();
+    unix.put("configDirectory", "./src/test/resources/nix");
+    Map<String, Object> apache = new LinkedHashMap<>();
+    apache.put("configDirectory", "./src/test/resources/apache");
+    int expected = IdentityLookupFactory.getInstance().get("unix", unix).getEntries().size()
+        + IdentityLookupFactory.getInstance().get("Apache-Basic-Auth", apache).getEntries().size();
+
+    IdentityLookup lookup = createChain();
+    Assertions.assertEquals(expected, lookup.getEntries().size());
+    Assertions.assertNotNull(lookup.findGroup("user"));
+  }
+
+  @Test
+  void invalidChain() {
+    Map<String, Object> link = new LinkedHashMap<>();
+    link.put("identity", "noSuchIdentity");
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("chain", List.of(link));
+    Assertions.assertNull(IdentityLookupFactory.getInstance().get("Federated-Auth", map));
+  }
+
+  @Test
+  void unknownUsersAreNotSearchedAgain() {
+    CountingLookup first = new CountingLookup();
+    CountingLookup second = new CountingLookup();
+    FederatedAuth lookup = FederatedAuth.of(List.of(first, second));
+    for (int x = 0; x < 5; x++) {
+      Assertions.assertNull(lookup.findEntry("noSuchUser"));
+    }
+    Assertions.assertEquals(1, first.lookups.get());
+    Assertions.assertEquals(1, second.lookups.get());
+  }
+
+  @Test
+  void laterUsersSearchEarlierLinksOnce() {
+    CountingLookup first = new CountingLookup();
+    CountingLookup second = new CountingLookup("bob"::equals);
+    FederatedAuth lookup = FederatedAuth.of(List.of(first, second));
+    for (int x = 0; x < 5; x++) {
+      Assertions.assertNotNull(lookup.findEntry("bob"));
+    }
+    Assertions.assertEquals(1, first.lookups.get());
+    Assertions.assertEquals(5, second.lookups.get());
+  }
+
+  @Test
+  void filterFalsePositivesDoNotSkipTheOwner() {
+    CountingLookup first = new CountingLookup(username -> username.startsWith("owned-"));
+    CountingLookup second = new CountingLookup(username -> true);
+    FederatedAuth lookup = FederatedAuth.of(List.of(first, second));
+    // Fill the first link's filter to its expected size, so around 1% of new names are false positives
+    for (int x = 0; x < 100000; x++) {
+      Assertions.assertNotNull(lookup.findEntry("missing-" + x));
+    }
+    for (int x = 0; x < 1000; x++) {
+      Assertions.assertNotNull(lookup.findEntry("owned-" + x));
+    }
+    Assertions.assertEquals(1000, first.claimed.get());
+    Assertions.assertEquals(100000, second.claimed.get());
+  }
+
+  private static final class CountingLookup implements IdentityLookup {
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final AtomicInteger claimed = new AtomicInteger();
+    private final Predicate<String> owns;
+
+    private CountingLookup() {
+      this(username -> false);
+    }
+
+    private CountingLookup(Predicate<String> owns) {
+      this.owns = owns;
+    }
+
+    @Override
+    public String getName() {
+      return "counting";
+    }
+
+    @Override
+    public String getDomain() {
+      return getName();
+    }
+
+    @Override
+    public char[] getPasswordHash(String username) throws NoSuchUserFoundException {
+      throw new NoSuchUserFoundException(username);
+    }
+
+    @Override
+    public IdentityEntry findEntry(String username) {
+      lookups.incrementAndGet();
+      if (owns.test(username)) {
+        claimed.incrementAndGet();
+        return new HtPasswdEntry(username, "");
+      }
+      return null;
+    }
+
+    @Override
+    public List<IdentityEntry> getEntries() {
+      return List.of();
+    }
+
+    @Override
+    public GroupEntry findGroup(String groupName) {
+      return null;
+    }
+
+    @Override
+    public IdentityLookup create(ConfigurationProperties config) {
+      return this;
+    }
+  }
+}
@@ -83,6 +83,21 @@ class UnixIdentifierTest {
     Assertions.assertEquals(UnixSha512PasswordHasher.class, entry.getPasswordHasher().getClass());
   }
 
+  @Test
+  void entriesCarryGroups() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("configDirectory", "./src/test/resources/nix");
+    IdentityLookup lookup = IdentityLookupFactory.getInstance().get("unix", map);
+    IdentityEntry listed = null;
+    for (IdentityEntry entry : lookup.getEntries()) {
+      if (entry.getUsername().equals("test2")) {
+        listed = entry;
+      }
+    }
+    Assertions.assertNotNull(listed);
+    Assertions.assertTrue(listed.isInGroup("test"));
+    Assertions.assertTrue(lookup.findEntry("test2").isInGroup("test"));
+  }
 
   @Test
   void noUser() {
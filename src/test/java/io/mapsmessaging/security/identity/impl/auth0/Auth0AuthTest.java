@@ -0,0 +1,77 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.auth0;
+
+import com.auth0.json.mgmt.roles.Role;
+import com.auth0.json.mgmt.users.User;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class Auth0AuthTest {
+
+  @Test
+  void testUsersWithoutEmailAreSkipped() {
+    Role role = new Role();
+    role.setName("admins");
+    StubApi api = new StubApi(List.of(user("fred@example.com"), user(null), user("jane@example.com")), List.of(role),
+        Arrays.asList("fred@example.com", null));
+    Auth0Auth auth = new Auth0Auth(api, 60000);
+
+    Assertions.assertEquals(2, auth.getEntries().size());
+    Assertions.assertNotNull(auth.findEntry("jane@example.com"));
+    Assertions.assertTrue(auth.findEntry("fred@example.com").isInGroup("admins"));
+    Assertions.assertEquals(1, auth.findGroup("admins").getUserCount());
+  }
+
+  private static User user(String email) {
+    User user = new User();
+    user.setId("auth0|" + email);
+    user.setEmail(email);
+    return user;
+  }
+
+  private static final class StubApi extends Auth0Api {
+    private final List<User> users;
+    private final List<Role> roles;
+    private final List<String> members;
+
+    private StubApi(List<User> users, List<Role> roles, List<String> members) {
+      super(null, 60000);
+      this.users = users;
+      this.roles = roles;
+      this.members = members;
+    }
+
+    @Override
+    public List<User> getUserList() {
+      return users;
+    }
+
+    @Override
+    public List<Role> getGroupList() {
+      return roles;
+    }
+
+    @Override
+    public List<String> getUserInGroup(String groupname) {
+      return new ArrayList<>(members);
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.base;
+
+import io.mapsmessaging.security.identity.impl.apache.HtPasswdFileManager;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ChangeJournalTest {
+
+  private static final String HASH = "$apr1$9r.m87gj$5wXLLFhGKzknbwSLJj0HC1";
+
+  @Test
+  void testDeletesAreJournalledThenCompacted() throws Exception {
+    File directory = new File("./target/test/journal");
+    directory.mkdirs();
+    File file = new File(directory, ".htpassword");
+    File journal = new File(directory, ".htpassword.journal");
+    Files.deleteIfExists(journal.toPath());
+    List<String> original = List.of("fred:" + HASH, "bill:" + HASH, "jane:" + HASH);
+    Files.write(file.toPath(), original);
+    HtPasswdFileManager manager = new HtPasswdFileManager(file.getPath());
+
+    manager.deleteEntry("bill");
+    manager.addEntry("anne", HASH);
+    Assertions.assertNull(manager.findEntry("bill"));
+    Assertions.assertNotNull(manager.findEntry("anne"));
+    Assertions.assertEquals(original, Files.readAllLines(file.toPath()));
+    Assertions.assertTrue(journal.exists());
+
+    HtPasswdFileManager replayed = new HtPasswdFileManager(file.getPath());
+    Assertions.assertNull(replayed.findEntry("bill"));
+    Assertions.assertNotNull(replayed.findEntry("anne"));
+    Assertions.assertEquals(3, replayed.getEntries().size());
+
+    manager.compact();
+    Assertions.assertFalse(journal.exists());
+    Assertions.assertEquals(List.of("fred:" + HASH, "jane:" + HASH, "anne:" + HASH), Files.readAllLines(file.toPath()));
+    Assertions.assertEquals(3, new HtPasswdFileManager(file.getPath()).getEntries().size());
+  }
+
+  @Test
+  void testJournalAppliedWhenFileChanged() throws Exception {
+    File directory = new File("./target/test/journal");
+    directory.mkdirs();
+    File file = new File(directory, "replaced.htpassword");
+    File journal = new File(directory, "replaced.htpassword.journal");
+    Files.deleteIfExists(journal.toPath());
+    Files.write(file.toPath(), List.of("fred:" + HASH, "bill:" + HASH));
+    HtPasswdFileManager manager = new HtPasswdFileManager(file.getPath());
+    manager.deleteEntry("fred");
+    Assertions.assertTrue(journal.exists());
+
+    Files.write(file.toPath(), List.of("fred:" + HASH, "bill:" + HASH, "jane:" + HASH));
+    HtPasswdFileManager replaced = new HtPasswdFileManager(file.getPath());
+    Assertions.assertNull(replaced.findEntry("fred"));
+    Assertions.assertEquals(2, replaced.getEntries().size());
+    Assertions.assertTrue(journal.exists());
+
+    // The next change folds the old journal into the changed file rather than truncating it
+    replaced.deleteEntry("bill");
+    Assertions.assertEquals(List.of("bill:" + HASH, "jane:" + HASH), Files.readAllLines(file.toPath()));
+    Assertions.assertNull(new HtPasswdFileManager(file.getPath()).findEntry("fred"));
+    Assertions.assertEquals(1, new HtPasswdFileManager(file.getPath()).getEntries().size());
+  }
+}
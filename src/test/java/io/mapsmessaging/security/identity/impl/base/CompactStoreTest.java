@@ -0,0 +1,107 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.base;
+
+import io.mapsmessaging.security.identity.GroupEntry;
+import io.mapsmessaging.security.identity.IdentityEntry;
+import io.mapsmessaging.security.identity.impl.apache.HtGroupFileManager;
+import io.mapsmessaging.security.identity.impl.apache.HtPasswdEntry;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class CompactStoreTest {
+
+  @Test
+  void testStringTable() {
+    StringTable table = StringTable.of(List.of("fred:one", "j\u00f6hn:two", "bill", "fred:three"));
+    Assertions.assertEquals(3, table.size());
+    Assertions.assertEquals(0, table.find("fred"));
+    Assertions.assertEquals("fred:three", table.get(0));
+    Assertions.assertEquals("j\u00f6hn", table.key(1));
+    Assertions.assertEquals(2, table.find("bill"));
+    Assertions.assertEquals(-1, table.find("fre"));
+    Assertions.assertEquals(-1, StringTable.empty().find("fred"));
+  }
+
+  @Test
+  void testSnapshotOverlay() {
+    List<String> lines = new ArrayList<>();
+    for (int x = 0; x < 100; x++) {
+      lines.add("user" + x + ":hash" + x);
+    }
+    CompactSnapshot<IdentityEntry> snapshot = CompactSnapshot.of(lines, HtPasswdEntry::new, IdentityEntry::toString);
+    IdentityEntry user5 = snapshot.get("user5");
+    Assertions.assertSame(user5, snapshot.get("user5"));
+    Assertions.assertEquals("user5:hash5", user5.toString());
+
+    CompactSnapshot<IdentityEntry> changed = snapshot.with(
+        Map.of("user1", new HtPasswdEntry("user1:new"), "added", new HtPasswdEntry("added:hash")), List.of("user0", "user2"));
+    List<String> names = changed.getEntries().stream().map(IdentityEntry::getUsername).collect(Collectors.toList());
+    Assertions.assertEquals(99, names.size());
+    Assertions.assertEquals(List.of("user1", "user3"), names.subList(0, 2));
+    Assertions.assertEquals("added", names.get(98));
+    Assertions.assertEquals("user1:new", changed.get("user1").toString());
+    Assertions.assertNull(changed.get("user0"));
+    Assertions.assertFalse(changed.contains("user2"));
+    Assertions.assertSame(user5, changed.get("user5"));
+    Assertions.assertEquals(100, snapshot.getEntries().size());
+
+    CompactSnapshot<IdentityEntry> rebuilt = changed;
+    for (int x = 0; x < 100; x++) {
+      rebuilt = rebuilt.with(Map.of("extra" + x, new HtPasswdEntry("extra" + x + ":hash")), List.of());
+    }
+    Assertions.assertEquals(199, rebuilt.getEntries().size());
+    Assertions.assertSame(user5, rebuilt.get("user5"));
+    Assertions.assertEquals("user1:new", rebuilt.get("user1").toString());
+    Assertions.assertEquals("extra99", rebuilt.getEntries().get(198).getUsername());
+  }
+
+  @Test
+  void testCompactGroups() throws Exception {
+    File directory = new File("./target/test/compact");
+    directory.mkdirs();
+    File file = new File(directory, ".htgroups");
+    Files.deleteIfExists(new File(directory, ".htgroups.journal").toPath());
+    Files.writeString(file.toPath(), "admin:fred bill\nusers:jane fred bill\n");
+    HtGroupFileManager manager = new HtGroupFileManager(file.getPath());
+
+    GroupEntry users = manager.findGroup("users");
+    Assertions.assertEquals("users:bill fred jane", users.toString());
+    Assertions.assertTrue(users.isInGroup("jane"));
+    Assertions.assertFalse(users.isInGroup("anne"));
+    Assertions.assertThrows(UnsupportedOperationException.class, () -> users.addUser("anne"));
+    GroupEntry changed = users.copy();
+    changed.addUser("anne");
+    Assertions.assertEquals("users:anne bill fred jane", changed.toString());
+    Assertions.assertEquals("users:bill fred jane", users.toString());
+
+    for (int x = 0; x <= GroupIndex.MAX_OVERLAY; x++) {
+      manager.addEntry("group" + x + ":anne");
+    }
+    manager.updateEntries(List.of(changed), List.of("admin"));
+    IdentityEntry anne = new HtPasswdEntry("anne:hash");
+    manager.loadGroups(anne);
+    Assertions.assertEquals(GroupIndex.MAX_OVERLAY + 2, anne.getGroups().size());
+    IdentityEntry fred = new HtPasswdEntry("fred:hash");
+    manager.loadGroups(fred);
+    Assertions.assertEquals(List.of("users"), fred.getGroups().stream().map(GroupEntry::getName).collect(Collectors.toList()));
+  }
+}
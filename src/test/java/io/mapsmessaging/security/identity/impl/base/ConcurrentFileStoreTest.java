@@ -0,0 +1,105 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.base;
+
+import io.mapsmessaging.security.identity.GroupEntry;
+import io.mapsmessaging.security.identity.IdentityEntry;
+import io.mapsmessaging.security.identity.impl.apache.HtGroupFileManager;
+import io.mapsmessaging.security.identity.impl.apache.HtPasswdFileManager;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ConcurrentFileStoreTest {
+
+  private static final String HASH = "$apr1$9r.m87gj$5wXLLFhGKzknbwSLJj0HC1";
+
+  @Test
+  void testReadsDuringWrites() throws Exception {
+    File directory = new File("./target/test/concurrent");
+    directory.mkdirs();
+    File file = new File(directory, ".htpassword");
+    Files.deleteIfExists(new File(directory, ".htpassword.journal").toPath());
+    Files.writeString(file.toPath(), "fred:" + HASH + "\n");
+    HtPasswdFileManager manager = new HtPasswdFileManager(file.getPath());
+
+    AtomicBoolean running = new AtomicBoolean(true);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Integer>> readers = new ArrayList<>();
+    for (int x = 0; x < 4; x++) {
+      readers.add(executor.submit(() -> {
+        int reads = 0;
+        while (running.get()) {
+          Assertions.assertNotNull(manager.findEntry("fred"));
+          for (IdentityEntry entry : manager.getEntries()) {
+            Assertions.assertNotNull(entry.getUsername());
+          }
+          reads++;
+        }
+        return reads;
+      }));
+    }
+    try {
+      for (int x = 0; x < 200; x++) {
+        manager.addEntry("user" + x, HASH);
+        if (x % 2 == 0) {
+          manager.deleteEntry("user" + x);
+        }
+      }
+    } finally {
+      running.set(false);
+    }
+    for (Future<Integer> reader : readers) {
+      Assertions.assertTrue(reader.get(10, TimeUnit.SECONDS) > 0);
+    }
+    executor.shutdown();
+
+    Assertions.assertEquals(101, manager.getEntries().size());
+    Assertions.assertNull(manager.findEntry("user0"));
+    Assertions.assertNotNull(manager.findEntry("user1"));
+    Assertions.assertThrows(UnsupportedOperationException.class, () -> manager.getEntries().clear());
+  }
+
+  @Test
+  void testGroupSnapshots() throws IOException {
+    File directory = new File("./target/test/concurrent");
+    directory.mkdirs();
+    File file = new File(directory, ".htgroups");
+    Files.deleteIfExists(new File(directory, ".htgroups.journal").toPath());
+    Files.writeString(file.toPath(), "admin: fred\nusers: fred bill\n");
+    HtGroupFileManager manager = new HtGroupFileManager(file.getPath());
+
+    List<GroupEntry> before = manager.getGroups();
+    Assertions.assertSame(before, manager.getGroups());
+    manager.addEntry("other: jane");
+    List<GroupEntry> after = manager.getGroups();
+    Assertions.assertEquals(2, before.size());
+    Assertions.assertEquals(3, after.size());
+
+    manager.updateEntries(List.of(), List.of("admin"));
+    Assertions.assertNull(manager.findGroup("admin"));
+    Assertions.assertNotNull(manager.findGroup("other"));
+    manager.compact();
+    Assertions.assertEquals(List.of("users: fred bill", "other:jane"), Files.readAllLines(file.toPath()));
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.base;
+
+import io.mapsmessaging.security.identity.impl.apache.HtPasswdFileManager;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class FileReloadTest {
+
+  private static final String HASH = "$apr1$9r.m87gj$5wXLLFhGKzknbwSLJj0HC1";
+
+  private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+    long timeout = System.currentTimeMillis() + 20000;
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > timeout) {
+        return false;
+      }
+      Thread.sleep(50);
+    }
+    return true;
+  }
+
+  @Test
+  void testExternalChangesAreReloaded() throws IOException, InterruptedException {
+    File directory = new File("./target/test/reload");
+    directory.mkdirs();
+    File file = new File(directory, ".htpassword");
+    Files.deleteIfExists(new File(directory, ".htpassword.journal").toPath());
+    Files.writeString(file.toPath(), "fred:" + HASH + "\n");
+
+    HtPasswdFileManager manager = new HtPasswdFileManager(file.getPath());
+    Assertions.assertNotNull(manager.findEntry("fred"));
+    Assertions.assertNull(manager.findEntry("bill"));
+
+    Files.writeString(file.toPath(), "bill:" + HASH + "\n", StandardOpenOption.APPEND);
+    Assertions.assertTrue(waitFor(() -> manager.findEntry("bill") != null));
+
+    Files.writeString(file.toPath(), "bill:" + HASH + "\n");
+    Assertions.assertTrue(waitFor(() -> manager.findEntry("fred") == null));
+    Assertions.assertNotNull(manager.findEntry("bill"));
+  }
+
+  @Test
+  void testReloadThenCompact() throws IOException {
+    File directory = new File("./target/test/reload");
+    directory.mkdirs();
+    File file = new File(directory, "compact.htpassword");
+    File journal = new File(directory, "compact.htpassword.journal");
+    Files.deleteIfExists(journal.toPath());
+    Files.writeString(file.toPath(), "fred:" + HASH + "\n");
+
+    HtPasswdFileManager manager = new HtPasswdFileManager(file.getPath());
+    Files.writeString(file.toPath(), "bill:" + HASH + "\n", StandardOpenOption.APPEND);
+    manager.load();
+    Assertions.assertNotNull(manager.findEntry("bill"));
+
+    // The reload must leave nothing holding the file, or it could not be replaced here
+    manager.addEntry("jane", HASH);
+    manager.compact();
+    Assertions.assertFalse(journal.exists());
+    Assertions.assertEquals(List.of("fred:" + HASH, "bill:" + HASH, "jane:" + HASH), Files.readAllLines(file.toPath()));
+  }
+
+  @Test
+  void testOwnWritesAreKept() throws IOException, InterruptedException {
+    File directory = new File("./target/test/reload");
+    directory.mkdirs();
+    File file = new File(directory, "own.htpassword");
+    Files.deleteIfExists(new File(directory, "own.htpassword.journal").toPath());
+    Files.writeString(file.toPath(), "fred:" + HASH + "\n");
+
+    HtPasswdFileManager manager = new HtPasswdFileManager(file.getPath());
+    manager.addEntry("jane", HASH);
+    manager.deleteEntry("fred");
+    Thread.sleep(500);
+    Assertions.assertNotNull(manager.findEntry("jane"));
+    Assertions.assertNull(manager.findEntry("fred"));
+    Assertions.assertEquals(1, manager.getEntries().size());
+  }
+
+  @Test
+  void testMonitorSurvivesErrors() throws IOException, InterruptedException {
+    File directory = new File("./target/test/reload");
+    directory.mkdirs();
+    File faulty = new File(directory, "faulty.txt");
+    File healthy = new File(directory, "healthy.txt");
+    Files.writeString(faulty.toPath(), "ok\n");
+    Files.writeString(healthy.toPath(), "one\n");
+    LineLoader faultyLoader = new LineLoader(faulty.getPath());
+    LineLoader healthyLoader = new LineLoader(healthy.getPath());
+    faultyLoader.load();
+    healthyLoader.load();
+
+    Files.writeString(faulty.toPath(), "fault\n");
+    Assertions.assertTrue(waitFor(() -> faultyLoader.faults > 0));
+    Files.writeString(healthy.toPath(), "two\n");
+    Assertions.assertTrue(waitFor(() -> healthyLoader.lines.contains("two")));
+  }
+
+  // Stands in for a loader whose mapped read faults, which surfaces as an InternalError
+  private static final class LineLoader extends FileLoader<String> {
+    private volatile List<String> lines = List.of();
+    private volatile int faults;
+
+    private LineLoader(String filepath) {
+      super(filepath);
+    }
+
+    @Override
+    protected String parse(String line) {
+      if (line.equals("fault")) {
+        faults++;
+        throw new InternalError("a fault occurred in an unsafe memory access operation");
+      }
+      return line;
+    }
+
+    @Override
+    protected void replaceEntries(List<String> entries) {
+      lines = entries;
+    }
+  }
+}
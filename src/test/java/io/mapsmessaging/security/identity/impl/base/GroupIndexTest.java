@@ -0,0 +1,108 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.base;
+
+import io.mapsmessaging.security.identity.GroupEntry;
+import io.mapsmessaging.security.identity.IdentityEntry;
+import io.mapsmessaging.security.identity.impl.apache.ApacheBasicAuth;
+import io.mapsmessaging.security.identity.impl.apache.HtGroupFileManager;
+import io.mapsmessaging.security.identity.impl.apache.HtPasswdEntry;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class GroupIndexTest {
+
+  private static final String HASH = "$apr1$9r.m87gj$5wXLLFhGKzknbwSLJj0HC1";
+
+  @Test
+  void testMembershipTracksChanges() throws Exception {
+    File directory = new File("./target/test/groupIndex");
+    directory.mkdirs();
+    File file = new File(directory, ".htgroups");
+    Files.deleteIfExists(new File(directory, ".htgroups.journal").toPath());
+    Files.writeString(file.toPath(), "admin:fred bill\nusers:fred jane\n");
+    HtGroupFileManager manager = new HtGroupFileManager(file.getPath());
+
+    Assertions.assertEquals(List.of("admin", "users"), groupsOf(manager, "fred"));
+    Assertions.assertEquals(List.of("admin"), groupsOf(manager, "bill"));
+    Assertions.assertEquals(List.of(), groupsOf(manager, "nobody"));
+
+    manager.addEntry("other:jane");
+    Assertions.assertEquals(List.of("other", "users"), groupsOf(manager, "jane"));
+
+    GroupEntry admin = manager.findGroup("admin").copy();
+    admin.removeUser("bill");
+    admin.addUser("jane");
+    manager.updateEntries(List.of(admin), List.of());
+    Assertions.assertEquals(List.of(), groupsOf(manager, "bill"));
+    Assertions.assertEquals(List.of("admin", "other", "users"), groupsOf(manager, "jane"));
+
+    manager.deleteEntry("users");
+    Assertions.assertEquals(List.of("admin"), groupsOf(manager, "fred"));
+    Assertions.assertEquals(List.of("admin", "other"), groupsOf(manager, "jane"));
+
+    HtGroupFileManager reloaded = new HtGroupFileManager(file.getPath());
+    Assertions.assertEquals(List.of("admin"), groupsOf(reloaded, "fred"));
+    Assertions.assertEquals(List.of("admin", "other"), groupsOf(reloaded, "jane"));
+  }
+
+  @Test
+  void testConcurrentLookupsSeeCompleteGroups() throws Exception {
+    File directory = new File("./target/test/groupIndexConcurrent");
+    directory.mkdirs();
+    File passwords = new File(directory, ".htpassword");
+    File groups = new File(directory, ".htgroups");
+    Files.deleteIfExists(new File(directory, ".htgroups.journal").toPath());
+    Files.writeString(passwords.toPath(), "fred:" + HASH + "\n");
+    Files.writeString(groups.toPath(), "admin:fred\nusers:fred\nother:fred\n");
+    ApacheBasicAuth lookup = new ApacheBasicAuth(passwords.getPath(), groups.getPath());
+
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    AtomicBoolean running = new AtomicBoolean(true);
+    Thread reader = new Thread(() -> {
+      try {
+        while (running.get()) {
+          Assertions.assertEquals(3, lookup.findEntry("fred").getGroups().size());
+        }
+      } catch (Throwable e) {
+        failure.set(e);
+      }
+    });
+    reader.start();
+    for (int x = 0; x < 2000 && failure.get() == null; x++) {
+      IdentityEntry fred = lookup.findEntry("fred");
+      Assertions.assertTrue(fred.isInGroup("admin") && fred.isInGroup("users") && fred.isInGroup("other"));
+    }
+    running.set(false);
+    reader.join();
+    Assertions.assertNull(failure.get());
+  }
+
+  private static List<String> groupsOf(FileBaseGroups groups, String username) {
+    IdentityEntry identityEntry = new HtPasswdEntry(username + ":" + HASH);
+    identityEntry.addGroup(new GroupEntry("stale", new TreeSet<>()));
+    groups.loadGroups(identityEntry);
+    return identityEntry.getGroups().stream().map(GroupEntry::getName).sorted().collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.base;
+
+import io.mapsmessaging.security.identity.IdentityEntry;
+import io.mapsmessaging.security.identity.IllegalFormatException;
+import io.mapsmessaging.security.identity.impl.apache.HtPasswdFileManager;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class MappedFileParserTest {
+
+  private static final int LINE_COUNT = 50000;
+  private static final Set<Integer> MALFORMED = Set.of(1, 7, 12345, 33333, LINE_COUNT);
+
+  private File createFile(String name, String lineSeparator) throws IOException {
+    File directory = new File("./target/test/parser");
+    directory.mkdirs();
+    File file = new File(directory, name);
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+      for (int x = 1; x <= LINE_COUNT; x++) {
+        if (MALFORMED.contains(x)) {
+          writer.write("malformed" + x);
+        } else if (x % 1000 == 0) {
+          writer.write("");
+        } else {
+          writer.write("user" + x + ":$apr1$9r.m87gj$5wXLLFhGKzknbwSLJj0HC1");
+        }
+        writer.write(lineSeparator);
+      }
+    }
+    return file;
+  }
+
+  private static String parseLine(String line) throws IllegalFormatException {
+    if (line.indexOf(':') < 0) {
+      throw new IllegalFormatException("No user separator");
+    }
+    return line.substring(0, line.indexOf(':'));
+  }
+
+  @Test
+  void testLineNumbersAndOrder() throws IOException {
+    for (String separator : List.of("\n", "\r\n")) {
+      File file = createFile("passwd", separator);
+      Assertions.assertTrue(file.length() > 1024 * 1024, "File should be large enough to be split");
+      List<Integer> failures = new ArrayList<>();
+      MappedFileParser<String> parser = new MappedFileParser<>(MappedFileParserTest::parseLine, (lineNo, cause) -> failures.add(lineNo));
+      List<String> users = parser.parse(file);
+
+      Assertions.assertEquals(List.of(1, 7, 12345, 33333, LINE_COUNT), failures);
+      Assertions.assertEquals(LINE_COUNT - MALFORMED.size() - (LINE_COUNT / 1000 - 1), users.size());
+      int previous = 0;
+      for (String user : users) {
+        int index = Integer.parseInt(user.substring(4));
+        Assertions.assertTrue(index > previous);
+        previous = index;
+      }
+    }
+  }
+
+  @Test
+  void testMappedParse() throws IOException {
+    File file = createFile("mapped", "\n");
+    List<Integer> failures = new ArrayList<>();
+    MappedFileParser<String> parser = new MappedFileParser<>(MappedFileParserTest::parseLine, (lineNo, cause) -> failures.add(lineNo), 0);
+    List<String> users = parser.parse(file);
+    Assertions.assertEquals(List.of(1, 7, 12345, 33333, LINE_COUNT), failures);
+    Assertions.assertEquals(LINE_COUNT - MALFORMED.size() - (LINE_COUNT / 1000 - 1), users.size());
+
+    // The mapping is released once parsed, so the file can be replaced and deleted straight away
+    File replacement = new File(file.getPath() + ".tmp");
+    Files.writeString(replacement.toPath(), "fred:hash\n");
+    Files.move(replacement.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    Assertions.assertEquals(List.of("fred"), parser.parse(file));
+    Files.delete(file.toPath());
+  }
+
+  @Test
+  void testMissingTrailingNewLine() throws IOException {
+    File directory = new File("./target/test/parser");
+    directory.mkdirs();
+    File file = new File(directory, "short");
+    Files.writeString(file.toPath(), "fred:hash\nbill:hash\n\nbad\njane:hash");
+    List<Integer> failures = new ArrayList<>();
+    List<String> users = new MappedFileParser<>(MappedFileParserTest::parseLine, (lineNo, cause) -> failures.add(lineNo)).parse(file);
+    Assertions.assertEquals(List.of("fred", "bill", "jane"), users);
+    Assertions.assertEquals(List.of(4), failures);
+
+    Files.writeString(file.toPath(), "");
+    Assertions.assertTrue(new MappedFileParser<>(MappedFileParserTest::parseLine, (lineNo, cause) -> failures.add(lineNo)).parse(file).isEmpty());
+  }
+
+  @Test
+  void testLoadLargePasswordFile() throws IOException {
+    File file = createFile(".htpassword", "\n");
+    HtPasswdFileManager manager = new HtPasswdFileManager(file.getAbsolutePath());
+    List<IdentityEntry> entries = manager.getEntries();
+    Assertions.assertEquals(LINE_COUNT - MALFORMED.size() - (LINE_COUNT / 1000 - 1), entries.size());
+    Assertions.assertEquals("user2", entries.get(0).getUsername());
+    Assertions.assertNotNull(manager.findEntry("user49999"));
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.cognito;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.ListUsersInGroupResponse;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.TooManyRequestsException;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.UserType;
+
+class CognitoApiTest {
+
+  private static final Pattern TOKEN = Pattern.compile("\"(?:PaginationToken|NextToken)\"\\s*:\\s*\"(\\d+)\"");
+  private static final Pattern GROUP = Pattern.compile("\"GroupName\"\\s*:\\s*\"([^\"]+)\"");
+  private static final int PAGE_SIZE = 2;
+
+  private HttpServer server;
+  private CognitoIdentityProviderClient client;
+  private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+  private final AtomicInteger throttled = new AtomicInteger();
+
+  @BeforeEach
+  void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", this::handle);
+    server.start();
+    client = CognitoIdentityProviderClient.builder()
+        .endpointOverride(URI.create("http://127.0.0.1:" + server.getAddress().getPort()))
+        .region(Region.US_EAST_1)
+        .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("key", "secret")))
+        .overrideConfiguration(configuration -> configuration.retryPolicy(RetryPolicy.none()))
+        .build();
+  }
+
+  @AfterEach
+  void stopServer() {
+    client.close();
+    server.stop(0);
+  }
+
+  @Test
+  void testUserListFollowsPagination() {
+    CognitoApi api = new CognitoApi(client, "pool", 60000);
+    List<UserType> users = api.getUserList().users();
+    Assertions.assertEquals(5, users.size());
+    Assertions.assertEquals("user4", users.get(4).username());
+    Assertions.assertEquals(3, count("ListUsers"));
+  }
+
+  @Test
+  void testUsersAreStreamedThenCached() {
+    CognitoApi api = new CognitoApi(client, "pool", 60000);
+    List<String> seen = new ArrayList<>();
+    api.forEachUser(user -> seen.add(user.username()));
+    Assertions.assertEquals(Arrays.asList("user0", "user1", "user2", "user3", "user4"), seen);
+    Assertions.assertTrue(api.isUserCacheValid());
+
+    seen.clear();
+    api.forEachUser(user -> seen.add(user.username()));
+    Assertions.assertEquals(5, seen.size());
+    Assertions.assertEquals(3, count("ListUsers"));
+  }
+
+  @Test
+  void testGroupMembersFetchedInParallel() {
+    CognitoApi api = new CognitoApi(client, "pool", 60000, 4, 0, 1);
+    List<String> groups = new ArrayList<>();
+    api.getGroupList().groups().forEach(group -> groups.add(group.groupName()));
+    Assertions.assertEquals(Arrays.asList("group0", "group1", "group2"), groups);
+
+    Map<String, ListUsersInGroupResponse> members = api.getUsersInGroups(groups);
+    Assertions.assertEquals(groups, new ArrayList<>(members.keySet()));
+    for (String group : groups) {
+      Assertions.assertEquals(5, members.get(group).users().size());
+      Assertions.assertEquals(group + "-user4", members.get(group).users().get(4).username());
+    }
+    Assertions.assertEquals(9, count("ListUsersInGroup"));
+  }
+
+  @Test
+  void testThrottledRequestsAreRetried() {
+    throttled.set(2);
+    CognitoApi api = new CognitoApi(client, "pool", 60000, 1, 3, 1);
+    Assertions.assertEquals(5, api.getUserList().users().size());
+    Assertions.assertEquals(5, count("ListUsers"));
+  }
+
+  @Test
+  void testThrottlingGivesUpAfterRetries() {
+    throttled.set(10);
+    CognitoApi api = new CognitoApi(client, "pool", 60000, 1, 2, 1);
+    Assertions.assertThrows(TooManyRequestsException.class, api::getUserList);
+    Assertions.assertEquals(3, count("ListUsers"));
+    Assertions.assertFalse(api.isUserCacheValid());
+  }
+
+  private int count(String operation) {
+    AtomicInteger counter = requests.get(operation);
+    return counter == null ? 0 : counter.get();
+  }
+
+  // Serves five users and three groups of five members, two to a page, in the AWS JSON 1.1 protocol
+  private void handle(HttpExchange exchange) throws IOException {
+    String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+    String operation = target.substring(target.indexOf('.') + 1);
+    String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    requests.computeIfAbsent(operation, key -> new AtomicInteger()).incrementAndGet();
+    if (throttled.getAndUpdate(value -> Math.max(0, value - 1)) > 0) {
+      respond(exchange, 400, "{\"__type\":\"TooManyRequestsException\",\"message\":\"Rate exceeded\"}");
+      return;
+    }
+    Matcher matcher = TOKEN.matcher(body);
+    int start = matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+    switch (operation) {
+      case "ListUsers":
+        respond(exchange, 200, "{\"Users\":" + users("", start, 5) + token("PaginationToken", start, 5) + "}");
+        break;
+      case "ListUsersInGroup":
+        Matcher group = GROUP.matcher(body);
+        String prefix = group.find() ? group.group(1) + "-" : "";
+        respond(exchange, 200, "{\"Users\":" + users(prefix, start, 5) + token("NextToken", start, 5) + "}");
+        break;
+      case "ListGroups":
+        StringBuilder groups = new StringBuilder("[");
+        for (int x = start; x < Math.min(start + PAGE_SIZE, 3); x++) {
+          groups.append(x > start ? "," : "").append("{\"GroupName\":\"group").append(x).append("\"}");
+        }
+        respond(exchange, 200, "{\"Groups\":" + groups.append(']') + token("NextToken", start, 3) + "}");
+        break;
+      default:
+        respond(exchange, 400, "{\"__type\":\"InvalidParameterException\",\"message\":\"" + operation + "\"}");
+    }
+  }
+
+  private static String users(String prefix, int start, int total) {
+    StringBuilder users = new StringBuilder("[");
+    for (int x = start; x < Math.min(start + PAGE_SIZE, total); x++) {
+      users.append(x > start ? "," : "")
+          .append("{\"Username\":\"").append(prefix).append("user").append(x)
+          .append("\",\"Enabled\":true,\"Attributes\":[{\"Name\":\"sub\",\"Value\":\"").append(prefix).append(x).append("\"}]}");
+    }
+    return users.append(']').toString();
+  }
+
+  private static String token(String name, int start, int total) {
+    return start + PAGE_SIZE < total ? ",\"" + name + "\":\"" + (start + PAGE_SIZE) + "\"" : "";
+  }
+
+  private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+    byte[] response = json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/x-amz-json-1.1");
+    exchange.sendResponseHeaders(status, response.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(response);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.encrypted;
+
+import io.mapsmessaging.security.certificates.BaseCertificateTest;
+import io.mapsmessaging.security.identity.IdentityEntry;
+import io.mapsmessaging.security.passwords.PasswordHandler;
+import java.io.File;
+import java.nio.file.Files;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class EncryptedPasswordFileManagerTest extends BaseCertificateTest {
+
+  @Test
+  void testEntriesShareUnwrappedKeys() throws Exception {
+    setUp("JKS", "file");
+    addCert(certificateManager);
+    File directory = new File("./target/test/encrypted");
+    directory.mkdirs();
+    File file = new File(directory, ".htpassword-enc");
+    Files.deleteIfExists(file.toPath());
+    Files.deleteIfExists(new File(directory, ".htpassword-enc.journal").toPath());
+    EncryptedPasswordFileManager manager =
+        new EncryptedPasswordFileManager(file.getPath(), TEST_ALIAS, certificateManager, new String(KEY_PASSWORD));
+
+    for (int x = 0; x < 5; x++) {
+      byte[] hash = manager.getCipher().transformPassword(("password" + x).getBytes(), "salt".getBytes(), 0);
+      manager.addEntry("user" + x, new String(hash));
+    }
+
+    EncryptedPasswordFileManager reloaded =
+        new EncryptedPasswordFileManager(file.getPath(), TEST_ALIAS, certificateManager, new String(KEY_PASSWORD));
+    for (int x = 0; x < 5; x++) {
+      IdentityEntry entry = reloaded.findEntry("user" + x);
+      Assertions.assertEquals("password" + x, entry.getPassword());
+      PasswordHandler handler = entry.getPasswordHasher();
+      Assertions.assertSame(handler, entry.getPasswordHasher());
+      Assertions.assertEquals("password" + x, new String(handler.getPassword()));
+    }
+  }
+}
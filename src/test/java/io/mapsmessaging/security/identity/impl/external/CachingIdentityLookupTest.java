@@ -0,0 +1,175 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.external;
+
+import io.mapsmessaging.configuration.ConfigurationProperties;
+import io.mapsmessaging.security.identity.GroupEntry;
+import io.mapsmessaging.security.identity.IdentityEntry;
+import io.mapsmessaging.security.identity.IdentityLookup;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class CachingIdentityLookupTest {
+
+  @Test
+  void testFirstLookupLoadsDirectory() {
+    TestLookup lookup = new TestLookup(60000);
+    Assertions.assertEquals("user1", lookup.findEntry("user1").getUsername());
+    Assertions.assertEquals(1, lookup.getEntries().size());
+    Assertions.assertEquals(1, lookup.loads.get());
+    Assertions.assertTrue(lookup.findEntry("user1").isInGroup("group1"));
+  }
+
+  @Test
+  void testStaleDirectoryServedWhileRefreshing() throws Exception {
+    TestLookup lookup = new TestLookup(200);
+    lookup.findEntry("user1");
+    lookup.block = new CountDownLatch(1);
+    Thread.sleep(250);
+
+    // The refresh is held up, the previous snapshot is still served in full
+    Assertions.assertNotNull(lookup.findMirrored("user1"));
+    Assertions.assertTrue(lookup.started.await(5, TimeUnit.SECONDS));
+    Assertions.assertNotNull(lookup.findMirrored("user1"));
+    Assertions.assertNull(lookup.findMirrored("user2"));
+    Assertions.assertEquals(1, lookup.getEntries().size());
+
+    lookup.block.countDown();
+    waitFor(() -> lookup.findMirrored("user2") != null);
+    Assertions.assertNull(lookup.findMirrored("user1"));
+    Assertions.assertEquals(1, lookup.getEntries().size());
+    Assertions.assertEquals(2, lookup.loads.get());
+  }
+
+  @Test
+  void testFailedRefreshKeepsDirectory() throws Exception {
+    TestLookup lookup = new TestLookup(200);
+    lookup.findEntry("user1");
+    lookup.fail = true;
+    Thread.sleep(250);
+    lookup.findEntry("user1");
+    waitFor(() -> lookup.loads.get() == 2);
+
+    // The retry is backed off rather than attempted on every lookup
+    for (int x = 0; x < 10; x++) {
+      Assertions.assertNotNull(lookup.findMirrored("user1"));
+    }
+    Assertions.assertEquals(2, lookup.loads.get());
+  }
+
+  private static void waitFor(Check check) throws InterruptedException {
+    long timeout = System.currentTimeMillis() + 5000;
+    while (!check.done()) {
+      Assertions.assertTrue(System.currentTimeMillis() < timeout);
+      Thread.sleep(5);
+    }
+  }
+
+  private interface Check {
+    boolean done();
+  }
+
+  private static final class TestEntry extends IdentityEntry {
+    TestEntry(String username) {
+      this.username = username;
+    }
+  }
+
+  // Each load returns a directory holding only user<n> in group<n>, where n counts the loads
+  private static final class TestLookup extends CachingIdentityLookup<TestEntry> {
+    private final long cacheTime;
+    private final AtomicInteger loads = new AtomicInteger();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private volatile CountDownLatch block;
+    private volatile boolean fail;
+
+    TestLookup(long cacheTime) {
+      this.cacheTime = cacheTime;
+    }
+
+    IdentityEntry findMirrored(String username) {
+      loadUsers();
+      return getDirectory().getIdentityEntryMap().get(username);
+    }
+
+    @Override
+    protected void loadDirectory(Directory<TestEntry> next) throws Exception {
+      int load = loads.incrementAndGet();
+      if (fail) {
+        throw new IllegalStateException("unavailable");
+      }
+      if (block != null) {
+        started.countDown();
+        block.await();
+      }
+      TestEntry entry = new TestEntry("user" + load);
+      GroupEntry group = new GroupEntry("group" + load, new TreeSet<>());
+      group.addUser(entry.getUsername());
+      entry.addGroup(group);
+      next.getIdentityEntryMap().put(entry.getUsername(), entry);
+      next.getIdentityEntries().add(entry);
+      next.getGroupEntryMap().put(group.getName(), group);
+    }
+
+    @Override
+    protected long getCacheTime() {
+      return cacheTime;
+    }
+
+    @Override
+    protected IdentityEntry createIdentityEntry(String username) {
+      return new TestEntry(username);
+    }
+
+    @Override
+    public List<IdentityEntry> getEntries() {
+      loadUsers();
+      return new ArrayList<>(getDirectory().getIdentityEntries());
+    }
+
+    @Override
+    public String getName() {
+      return "test";
+    }
+
+    @Override
+    public String getDomain() {
+      return getName();
+    }
+
+    @Override
+    public char[] getPasswordHash(String username) {
+      return new char[0];
+    }
+
+    @Override
+    public GroupEntry findGroup(String groupName) {
+      return getDirectory().getGroupEntryMap().get(groupName);
+    }
+
+    @Override
+    public IdentityLookup create(ConfigurationProperties config) {
+      return new TestLookup(cacheTime);
+    }
+  }
+}
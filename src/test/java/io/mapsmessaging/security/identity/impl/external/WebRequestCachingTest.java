@@ -0,0 +1,107 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.external;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class WebRequestCachingTest {
+
+  @Test
+  void testResponseIsCached() {
+    AtomicInteger calls = new AtomicInteger();
+    WebRequestCaching caching = new WebRequestCaching(60000);
+    Assertions.assertEquals("response1", caching.get("request", () -> "response" + calls.incrementAndGet()));
+    Assertions.assertEquals("response1", caching.get("request", () -> "response" + calls.incrementAndGet()));
+    Assertions.assertEquals(1, calls.get());
+    Assertions.assertEquals("response1", caching.get("request"));
+  }
+
+  @Test
+  void testResponseExpires() throws InterruptedException {
+    AtomicInteger calls = new AtomicInteger();
+    WebRequestCaching caching = new WebRequestCaching(10);
+    caching.get("request", () -> "response" + calls.incrementAndGet());
+    Thread.sleep(50);
+    Assertions.assertNull(caching.get("request"));
+    Assertions.assertEquals("response2", caching.get("request", () -> "response" + calls.incrementAndGet()));
+  }
+
+  @Test
+  void testSizeIsBounded() {
+    WebRequestCaching caching = new WebRequestCaching(2, 60000);
+    caching.put("one", "1");
+    caching.put("two", "2");
+    caching.put("three", "3");
+    int remaining = 0;
+    for (String request : new String[] {"one", "two", "three"}) {
+      if (caching.get(request) != null) {
+        remaining++;
+      }
+    }
+    Assertions.assertEquals(2, remaining);
+  }
+
+  @Test
+  void testConcurrentRequestsShareOneCall() throws Exception {
+    int threads = 8;
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    WebRequestCaching caching = new WebRequestCaching(60000);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (int x = 0; x < threads; x++) {
+        results.add(executor.submit(() -> caching.get("request", () -> {
+          calls.incrementAndGet();
+          started.countDown();
+          release.await();
+          return "response";
+        })));
+      }
+      Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+      Thread.sleep(100);
+      release.countDown();
+      for (Future<String> result : results) {
+        Assertions.assertEquals("response", result.get(5, TimeUnit.SECONDS));
+      }
+      Assertions.assertEquals(1, calls.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void testFailureIsNotCached() {
+    WebRequestCaching caching = new WebRequestCaching(60000);
+    Assertions.assertThrows(IOException.class, () -> caching.get("request", () -> {
+      throw new IOException("unavailable");
+    }));
+    Assertions.assertNull(caching.get("request"));
+    Assertions.assertEquals("response", caching.get("request", () -> "response"));
+  }
+}
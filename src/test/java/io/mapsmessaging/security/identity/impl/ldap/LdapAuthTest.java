@@ -0,0 +1,348 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.ldap;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSimpleBindRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import io.mapsmessaging.configuration.ConfigurationProperties;
+import io.mapsmessaging.security.identity.GroupEntry;
+import io.mapsmessaging.security.identity.IdentityEntry;
+import io.mapsmessaging.security.identity.IdentityLookup;
+import io.mapsmessaging.security.identity.IdentityLookupFactory;
+import io.mapsmessaging.security.passwords.PasswordHandler;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import javax.naming.Context;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.InitialLdapContext;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class LdapAuthTest {
+
+  private static final String HASH = "$apr1$9r.m87gj$5wXLLFhGKzknbwSLJj0HC1";
+  private static final AtomicInteger userBinds = new AtomicInteger();
+  private static InMemoryDirectoryServer server;
+
+  @BeforeAll
+  static void startServer() throws Exception {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    config.addAdditionalBindCredentials("cn=admin", "adminPassword");
+    config.setSchema(null);
+    config.addInMemoryOperationInterceptor(new InMemoryOperationInterceptor() {
+      @Override
+      public void processSimpleBindRequest(InMemoryInterceptedSimpleBindRequest request) {
+        if (request.getRequest().getBindDN().startsWith("uid=")) {
+          userBinds.incrementAndGet();
+        }
+      }
+    });
+    server = new InMemoryDirectoryServer(config);
+    server.startListening();
+    server.add("dn: dc=example,dc=com", "objectClass: domain", "dc: example");
+    server.add("dn: ou=people,dc=example,dc=com", "objectClass: organizationalUnit", "ou: people");
+    server.add("dn: ou=groups,dc=example,dc=com", "objectClass: organizationalUnit", "ou: groups");
+    server.add("dn: uid=fred,ou=people,dc=example,dc=com", "objectClass: posixAccount", "uid: fred", "cn: fred",
+        "homeDirectory: /home/fred", "userPassword: secret", "memberOf: cn=admins,ou=groups,dc=example,dc=com");
+    server.add("dn: uid=jane,ou=people,dc=example,dc=com", "objectClass: posixAccount", "uid: jane", "cn: jane",
+        "homeDirectory: /home/jane", "userPassword: {crypt}" + HASH, "memberOf: cn=users,ou=groups,dc=example,dc=com");
+    server.add("dn: cn=admins,ou=groups,dc=example,dc=com", "objectClass: posixGroup", "cn: admins", "memberUid: fred");
+    server.add("dn: cn=users,ou=groups,dc=example,dc=com", "objectClass: posixGroup", "cn: users", "memberUid: fred", "memberUid: jane");
+  }
+
+  @AfterAll
+  static void stopServer() {
+    server.shutDown(true);
+  }
+
+  @Test
+  void hashModeReturnsStoredHash() throws Exception {
+    IdentityLookup lookup = createLookup(Map.of());
+    Assertions.assertEquals(HASH, new String(lookup.getPasswordHash("jane")));
+    IdentityEntry entry = lookup.findEntry("jane");
+    Assertions.assertEquals(List.of("users"), groupNames(entry));
+    GroupEntry group = lookup.findGroup("users");
+    Assertions.assertTrue(group.isInGroup("fred"));
+    Assertions.assertTrue(group.isInGroup("jane"));
+  }
+
+  @Test
+  void bindModeVerifiesPasswords() throws Exception {
+    IdentityLookup lookup = createLookup(Map.of("authMode", "bind"));
+    IdentityEntry entry = lookup.findEntry("fred");
+    Assertions.assertNotNull(entry);
+    Assertions.assertEquals(List.of("admins", "users"), groupNames(entry));
+    Assertions.assertEquals(0, lookup.getPasswordHash("fred").length);
+
+    int binds = userBinds.get();
+    Assertions.assertTrue(verify(entry, "secret"));
+    Assertions.assertTrue(verify(entry, "secret"));
+    Assertions.assertEquals(binds + 1, userBinds.get());
+
+    Assertions.assertFalse(verify(entry, "wrong"));
+    Assertions.assertFalse(verify(entry, ""));
+    Assertions.assertTrue(verify(entry, "secret"));
+  }
+
+  @Test
+  void bindModeReturnsTokenNotPassword() throws Exception {
+    IdentityLookup lookup = createLookup(Map.of("authMode", "bind"));
+    PasswordHandler handler = lookup.findEntry("fred").getPasswordHasher();
+    byte[] token = handler.transformPassword("secret".getBytes(StandardCharsets.UTF_8), handler.getSalt(), handler.getCost());
+    Assertions.assertNotEquals("secret", new String(token, StandardCharsets.UTF_8));
+    Assertions.assertEquals(new String(token, StandardCharsets.UTF_8), new String(handler.getFullPasswordHash()));
+    // The token is only handed out once
+    Assertions.assertNotEquals(new String(token, StandardCharsets.UTF_8), new String(handler.getFullPasswordHash()));
+  }
+
+  @Test
+  void bindModeWithDnPattern() throws Exception {
+    IdentityLookup lookup = createLookup(Map.of("authMode", "bind", "bindDnPattern", "uid={0},ou=people,dc=example,dc=com", "bindCacheTime", "0"));
+    IdentityEntry entry = lookup.findEntry("fred");
+    int binds = userBinds.get();
+    Assertions.assertTrue(verify(entry, "secret"));
+    Assertions.assertTrue(verify(entry, "secret"));
+    Assertions.assertEquals(binds + 2, userBinds.get());
+  }
+
+  @Test
+  void memberOfGroupResolution() {
+    IdentityLookup lookup = createLookup(Map.of("groupResolution", "memberOf"));
+    Assertions.assertEquals(List.of("admins"), groupNames(lookup.findEntry("fred")));
+  }
+
+  @Test
+  void groupMapResolution() {
+    IdentityLookup lookup = createLookup(Map.of("groupResolution", "groupMap"));
+    Assertions.assertEquals(List.of("admins", "users"), groupNames(lookup.findEntry("fred")));
+    Assertions.assertEquals(List.of("users"), groupNames(lookup.findEntry("jane")));
+  }
+
+  @Test
+  void groupMapIsReloadedOnceStale() throws Exception {
+    LdapUserManager manager = new LdapUserManager(new ConfigurationProperties(
+        createConfig(Map.of("groupResolution", "groupMap", "cacheTime", "300"))));
+    try {
+      Assertions.assertEquals(List.of("users"), groupNames(manager.findEntry("jane")));
+      server.add("dn: cn=staff,ou=groups,dc=example,dc=com", "objectClass: posixGroup", "cn: staff", "memberUid: jane");
+      try {
+        List<String> groups = List.of();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!groups.contains("staff") && System.currentTimeMillis() < deadline) {
+          Thread.sleep(400);
+          groups = groupNames(manager.findEntry("jane"));
+        }
+        Assertions.assertEquals(List.of("staff", "users"), groups);
+      } finally {
+        server.delete("cn=staff,ou=groups,dc=example,dc=com");
+      }
+    } finally {
+      manager.close();
+    }
+  }
+
+  @Test
+  void filterValuesAreEscaped() {
+    IdentityLookup lookup = createLookup(Map.of());
+    Assertions.assertNull(lookup.findEntry("*"));
+    Assertions.assertNull(lookup.findEntry("fred)(uid=*"));
+    Assertions.assertNotNull(lookup.findEntry("fred"));
+  }
+
+  @Test
+  void preloadReadsWholeDirectory() {
+    IdentityLookup lookup = createLookup(Map.of("preload", "true", "preloadPageSize", "1"));
+    List<String> names = lookup.getEntries().stream().map(IdentityEntry::getUsername).sorted().collect(Collectors.toList());
+    Assertions.assertEquals(List.of("fred", "jane"), names);
+    Assertions.assertEquals(List.of("admins", "users"), groupNames(lookup.findEntry("fred")));
+  }
+
+  @Test
+  void preloadListsUsersBeyondTheCacheSize() {
+    IdentityLookup lookup = createLookup(Map.of("preload", "true", "preloadPageSize", "1", "cacheSize", "1"));
+    List<String> names = lookup.getEntries().stream().map(IdentityEntry::getUsername).sorted().collect(Collectors.toList());
+    Assertions.assertEquals(List.of("fred", "jane"), names);
+  }
+
+  @Test
+  void pagedSearchReturnsEveryPage() throws Exception {
+    Hashtable<String, String> environment = new Hashtable<>();
+    createConfig(Map.of()).forEach((key, value) -> environment.put(key, value.toString()));
+    InitialLdapContext context = new InitialLdapContext(environment, null);
+    try {
+      List<Integer> pageSizes = new ArrayList<>();
+      new LdapPagedSearch("ou=people,dc=example,dc=com", "(uid=*)", new String[]{"uid"}, 1)
+          .search(context, page -> pageSizes.add(page.size()));
+      Assertions.assertEquals(List.of(1, 1), pageSizes);
+    } finally {
+      context.close();
+    }
+  }
+
+  @Test
+  void preloadIsRepeatedOnceStale() throws Exception {
+    LdapUserManager manager = new LdapUserManager(new ConfigurationProperties(
+        createConfig(Map.of("preload", "true", "preloadPageSize", "1", "cacheTime", "500"))));
+    try {
+      Assertions.assertEquals(2, manager.getUsers().size());
+      server.add("dn: uid=bob,ou=people,dc=example,dc=com", "objectClass: posixAccount", "uid: bob", "cn: bob", "userPassword: {crypt}" + HASH);
+      try {
+        Assertions.assertEquals(2, manager.getUsers().size());
+        Thread.sleep(600);
+        Assertions.assertEquals(3, manager.getUsers().size());
+      } finally {
+        server.delete("uid=bob,ou=people,dc=example,dc=com");
+      }
+      manager.resynchronise();
+      Assertions.assertEquals(2, manager.getUsers().size());
+    } finally {
+      manager.close();
+    }
+  }
+
+  @Test
+  void changesAreAppliedToCaches() throws Exception {
+    LdapUserManager manager = new LdapUserManager(new ConfigurationProperties(createConfig(Map.of())));
+    LdapUser fred = (LdapUser) manager.findEntry("fred");
+    Assertions.assertEquals(List.of("admins", "users"), groupNames(fred));
+
+    manager.applyGroupChange(new SearchResult("cn=admins", null, attributes("cn", "admins")));
+    Assertions.assertEquals(List.of("users"), groupNames(manager.findEntry("fred")));
+    Assertions.assertEquals(List.of("admins", "users"), groupNames(fred));
+    fred = (LdapUser) manager.findEntry("fred");
+    Assertions.assertFalse(manager.findGroup("admins").isInGroup("fred"));
+
+    BasicAttributes changed = attributes("uid", "fred");
+    changed.put("cn", "fred");
+    changed.put("homeDirectory", "/export/fred");
+    changed.put("userPassword", ("{crypt}" + HASH).getBytes(StandardCharsets.UTF_8));
+    manager.applyUserChange(new SearchResult("uid=fred", null, changed), false);
+    LdapUser updated = (LdapUser) manager.findEntry("fred");
+    Assertions.assertNotSame(fred, updated);
+    Assertions.assertEquals("/export/fred", updated.getHomeDirectory());
+    Assertions.assertEquals(List.of("users"), groupNames(updated));
+
+    manager.removeUserChange("fred");
+    Assertions.assertEquals("/home/fred", ((LdapUser) manager.findEntry("fred")).getHomeDirectory());
+    manager.close();
+  }
+
+  @Test
+  void lookupsWorkWhenNotificationsAreUnsupported() {
+    LdapUserManager manager = new LdapUserManager(new ConfigurationProperties(createConfig(Map.of("changeNotification", "persistentSearch"))));
+    manager.start();
+    try {
+      Assertions.assertNotNull(manager.findEntry("fred"));
+    } finally {
+      manager.close();
+    }
+  }
+
+  @Test
+  void memberOfGroupChangesOnlyUpdateGroups() throws Exception {
+    LdapUserManager manager = new LdapUserManager(new ConfigurationProperties(createConfig(Map.of("groupResolution", "memberOf"))));
+    try {
+      Assertions.assertEquals(List.of("admins"), groupNames(manager.findEntry("fred")));
+      manager.applyGroupChange(new SearchResult("cn=admins", null, attributes("cn", "admins")));
+      BasicAttributes users = attributes("cn", "users");
+      users.put("memberUid", "fred");
+      manager.applyGroupChange(new SearchResult("cn=users", null, users));
+      manager.removeGroupChange("admins");
+      Assertions.assertEquals(List.of("admins"), groupNames(manager.findEntry("fred")));
+      Assertions.assertTrue(manager.findGroup("users").isInGroup("fred"));
+    } finally {
+      manager.close();
+    }
+  }
+
+  @Test
+  void addedUsersClearTheNegativeCache() throws Exception {
+    LdapUserManager manager = new LdapUserManager(new ConfigurationProperties(createConfig(Map.of())));
+    Assertions.assertNull(manager.findEntry("bob"));
+    server.add("dn: uid=bob,ou=people,dc=example,dc=com", "objectClass: posixAccount", "uid: bob", "cn: bob", "userPassword: {crypt}" + HASH);
+    try {
+      Assertions.assertNull(manager.findEntry("bob"));
+      manager.applyUserChange(new SearchResult("uid=bob", null, attributes("uid", "bob")), true);
+      Assertions.assertNotNull(manager.findEntry("bob"));
+    } finally {
+      server.delete("uid=bob,ou=people,dc=example,dc=com");
+      manager.close();
+    }
+  }
+
+  @Test
+  void fullNegativeCacheDoesNotTurnAwayUsers() throws Exception {
+    // A one entry filter is saturated by a few misses, so it then reports every name as missing
+    LdapUserManager manager = new LdapUserManager(new ConfigurationProperties(createConfig(Map.of(
+        "negativeCacheSize", "1", "negativeCacheFalsePositiveRate", "0.5", "negativeCacheExactSize", "1"))));
+    try {
+      for (int x = 0; x < 20; x++) {
+        Assertions.assertNull(manager.findEntry("nobody" + x));
+      }
+      Assertions.assertNotNull(manager.findEntry("fred"));
+      Assertions.assertNotNull(manager.findEntry("jane"));
+    } finally {
+      manager.close();
+    }
+  }
+
+  private static BasicAttributes attributes(String name, String value) {
+    BasicAttributes attributes = new BasicAttributes(true);
+    attributes.put(name, value);
+    return attributes;
+  }
+
+  private static boolean verify(IdentityEntry entry, String password) throws Exception {
+    PasswordHandler handler = entry.getPasswordHasher();
+    byte[] presented = password.getBytes(StandardCharsets.UTF_8);
+    byte[] transformed = handler.transformPassword(presented, handler.getSalt(), handler.getCost());
+    return new String(transformed, StandardCharsets.UTF_8).equals(new String(handler.getFullPasswordHash()));
+  }
+
+  private static List<String> groupNames(IdentityEntry entry) {
+    return entry.getGroups().stream().map(GroupEntry::getName).sorted().collect(Collectors.toList());
+  }
+
+  private static IdentityLookup createLookup(Map<String, String> settings) {
+    return IdentityLookupFactory.getInstance().get("ldap", createConfig(settings));
+  }
+
+  private static Map<String, Object> createConfig(Map<String, String> settings) {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+    map.put(Context.SECURITY_AUTHENTICATION, "simple");
+    map.put(Context.PROVIDER_URL, "ldap://localhost:" + server.getListenPort());
+    map.put(Context.SECURITY_PRINCIPAL, "cn=admin");
+    map.put(Context.SECURITY_CREDENTIALS, "adminPassword");
+    map.put("passwordKeyName", "userPassword");
+    map.put("searchBase", "ou=people,dc=example,dc=com");
+    map.put("groupSearchBase", "ou=groups,dc=example,dc=com");
+    map.putAll(settings);
+    return map;
+  }
+}
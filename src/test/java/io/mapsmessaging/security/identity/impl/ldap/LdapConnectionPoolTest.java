@@ -0,0 +1,174 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.ldap;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.naming.CommunicationException;
+import javax.naming.NameNotFoundException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class LdapConnectionPoolTest {
+
+  private final List<FakeContext> created = new ArrayList<>();
+
+  @Test
+  void connectionsAreReused() throws Exception {
+    try (LdapConnectionPool pool = new LdapConnectionPool(this::createContext, 4, 1000, 60000, 60000, 60000)) {
+      for (int x = 0; x < 10; x++) {
+        pool.execute(context -> context);
+      }
+      Assertions.assertEquals(1, created.size());
+      Assertions.assertEquals(1, pool.getOpenCount());
+      Assertions.assertEquals(1, pool.getIdleCount());
+    }
+    Assertions.assertTrue(created.get(0).closed.get());
+  }
+
+  @Test
+  void poolIsBounded() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try (LdapConnectionPool pool = new LdapConnectionPool(this::createContext, 2, 200, 60000, 60000, 60000)) {
+      CountDownLatch borrowed = new CountDownLatch(2);
+      CountDownLatch finish = new CountDownLatch(1);
+      List<Future<Object>> holders = new ArrayList<>();
+      for (int x = 0; x < 2; x++) {
+        holders.add(executor.submit(() -> pool.execute(context -> {
+          borrowed.countDown();
+          await(finish);
+          return context;
+        })));
+      }
+      Assertions.assertTrue(borrowed.await(5, TimeUnit.SECONDS));
+      Assertions.assertThrows(ServiceUnavailableException.class, () -> pool.execute(context -> context));
+
+      Future<Object> waiter = executor.submit(() -> pool.execute(context -> context));
+      finish.countDown();
+      for (Future<Object> holder : holders) {
+        holder.get(5, TimeUnit.SECONDS);
+      }
+      Assertions.assertNotNull(waiter.get(5, TimeUnit.SECONDS));
+      Assertions.assertEquals(2, pool.getOpenCount());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void brokenConnectionsAreDiscarded() throws Exception {
+    try (LdapConnectionPool pool = new LdapConnectionPool(this::createContext, 4, 1000, 60000, 60000, 60000)) {
+      Assertions.assertThrows(NameNotFoundException.class, () -> pool.execute(context -> {
+        throw new NameNotFoundException("missing");
+      }));
+      Assertions.assertEquals(1, pool.getIdleCount());
+
+      Assertions.assertThrows(CommunicationException.class, () -> pool.execute(context -> {
+        throw new CommunicationException("connection reset");
+      }));
+      Assertions.assertEquals(0, pool.getOpenCount());
+      Assertions.assertTrue(created.get(0).closed.get());
+
+      pool.execute(context -> context);
+      Assertions.assertEquals(2, created.size());
+    }
+  }
+
+  @Test
+  void staleConnectionsAreValidated() throws Exception {
+    try (LdapConnectionPool pool = new LdapConnectionPool(this::createContext, 4, 1000, 60000, 60000, 0)) {
+      pool.execute(context -> context);
+      pool.execute(context -> context);
+      Assertions.assertEquals(1, created.size());
+      Assertions.assertEquals(1, created.get(0).validations.get());
+
+      created.get(0).healthy.set(false);
+      pool.execute(context -> context);
+      Assertions.assertEquals(2, created.size());
+      Assertions.assertTrue(created.get(0).closed.get());
+      Assertions.assertEquals(1, pool.getOpenCount());
+    }
+  }
+
+  @Test
+  void expiredConnectionsAreClosed() throws Exception {
+    try (LdapConnectionPool pool = new LdapConnectionPool(this::createContext, 4, 1000, 50, 60000, 60000)) {
+      pool.execute(context -> context);
+      Thread.sleep(100);
+      pool.evictIdle();
+      Assertions.assertEquals(0, pool.getIdleCount());
+      Assertions.assertEquals(0, pool.getOpenCount());
+      Assertions.assertTrue(created.get(0).closed.get());
+    }
+    try (LdapConnectionPool pool = new LdapConnectionPool(this::createContext, 4, 1000, 60000, 50, 60000)) {
+      pool.execute(context -> context);
+      Thread.sleep(100);
+      pool.execute(context -> context);
+      Assertions.assertEquals(3, created.size());
+      Assertions.assertTrue(created.get(1).closed.get());
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private synchronized DirContext createContext() {
+    FakeContext fake = new FakeContext();
+    created.add(fake);
+    return fake.proxy();
+  }
+
+  private static final class FakeContext {
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final AtomicBoolean healthy = new AtomicBoolean(true);
+    private final AtomicInteger validations = new AtomicInteger();
+
+    private DirContext proxy() {
+      return (DirContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DirContext.class}, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "close":
+            closed.set(true);
+            return null;
+          case "getAttributes":
+            validations.incrementAndGet();
+            if (!healthy.get()) {
+              throw new CommunicationException("connection closed");
+            }
+            return new BasicAttributes();
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      });
+    }
+  }
+}
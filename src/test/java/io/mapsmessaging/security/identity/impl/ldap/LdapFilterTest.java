@@ -0,0 +1,36 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.identity.impl.ldap;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class LdapFilterTest {
+
+  @Test
+  void plainValuesAreUnchanged() {
+    Assertions.assertEquals("(uid=fred.bloggs)", LdapFilter.equalTo("uid", "fred.bloggs"));
+    Assertions.assertEquals("j\u00f6rg", LdapFilter.escape("j\u00f6rg"));
+  }
+
+  @Test
+  void specialCharactersAreEscaped() {
+    Assertions.assertEquals("(uid=\\2a\\29\\28uid=\\2a)", LdapFilter.equalTo("uid", "*)(uid=*"));
+    Assertions.assertEquals("a\\5cb", LdapFilter.escape("a\\b"));
+    Assertions.assertEquals("a\\00b", LdapFilter.escape("a\0b"));
+  }
+}
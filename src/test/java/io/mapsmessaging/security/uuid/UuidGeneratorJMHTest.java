@@ -0,0 +1,67 @@
+/*
+ * Copyright [ 2020 - 2024 ] [Matthew Buckton]
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.mapsmessaging.security.uuid;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(Threads.MAX)
+public class UuidGeneratorJMHTest {
+
+  @Param({"1", "64", "1024"})
+  private int blockSize;
+
+  private EpochUuidGenerator generator;
+
+  public static void main(String[] args) throws RunnerException {
+    Options options = new OptionsBuilder()
+        .include(UuidGeneratorJMHTest.class.getSimpleName())
+        .forks(1)
+        .build();
+
+    new Runner(options).run();
+  }
+
+  @Setup
+  public void setup() {
+    generator = new EpochUuidGenerator(blockSize);
+  }
+
+  @Benchmark
+  public UUID epochGenerator() {
+    return generator.generate();
+  }
+
+  @Benchmark
+  public UUID sharedInstance() {
+    return UuidGenerator.getInstance().generate(RandomVersions.TIME_EPOCH);
+  }
+
+  @Benchmark
+  public UUID randomUuid() {
+    return UUID.randomUUID();
+  }
+}
@@ -24,7 +24,9 @@ import org.junit.jupiter.params.provider.MethodSource;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
@@ -75,6 +77,49 @@ public class UuidGeneratorTest {
     assertNotEquals(named, named3);
   }
 
+  @Test
+  void testEpochIsMonotonic() {
+    EpochUuidGenerator generator = new EpochUuidGenerator();
+    UUID previous = generator.generate();
+    for (int x = 0; x < 100_000; x++) {
+      UUID next = generator.generate();
+      assertEquals(7, next.version());
+      assertEquals(2, next.variant());
+      assertTrue(previous.compareTo(next) < 0, "Epoch UUIDs must be strictly increasing");
+      previous = next;
+    }
+  }
+
+  @Test
+  void testEpochBlockAllocationIsUnique() throws InterruptedException {
+    EpochUuidGenerator generator = new EpochUuidGenerator(64);
+    Set<UUID> generated = ConcurrentHashMap.newKeySet();
+    Thread[] threads = new Thread[4];
+    for (int x = 0; x < threads.length; x++) {
+      threads[x] = new Thread(() -> {
+        UUID previous = generator.generate();
+        generated.add(previous);
+        for (int y = 0; y < 25_000; y++) {
+          UUID next = generator.generate();
+          assertTrue(previous.compareTo(next) < 0);
+          generated.add(next);
+          previous = next;
+        }
+      });
+      threads[x].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(threads.length * 25_001, generated.size());
+  }
+
+  @Test
+  void testInvalidBlockSize() {
+    assertThrows(IllegalArgumentException.class, () -> new EpochUuidGenerator(0));
+    assertThrows(IllegalArgumentException.class, () -> new EpochUuidGenerator(EpochUuidGenerator.MAX_BLOCK_SIZE + 1));
+  }
+
 }
 
 